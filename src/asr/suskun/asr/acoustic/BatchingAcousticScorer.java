@@ -0,0 +1,342 @@
+package suskun.asr.acoustic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.audio.SpeechData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scores frames of many concurrent streams together. Requests are queued and a worker thread merges them to a
+ * single matrix, calculates it with one network call and returns the rows of each request to its caller.
+ * <p>
+ * A batch is calculated when queued frames reach `maxBatchFrames` or the oldest request waited `maxWaitMillis`,
+ * whichever comes first. So network weights are streamed once for many requests under load, and added latency
+ * is bounded by maxWaitMillis plus calculation time when load is low. A request larger than maxBatchFrames is
+ * calculated alone.
+ * Usage:
+ * <pre>
+ * BatchingAcousticScorer scorer = BatchingAcousticScorer.builder(model).maxBatchFrames(512).maxWaitMillis(5).build();
+ * // from any thread
+ * SpeechData scores = scorer.score(features);
+ * ...
+ * scorer.close();
+ * </pre>
+ */
+public class BatchingAcousticScorer implements AutoCloseable {
+
+    static final Logger logger = LoggerFactory.getLogger(BatchingAcousticScorer.class);
+
+    final DnnAcousticScorer scorer;
+    final int maxBatchFrames;
+    final long maxWaitNanos;
+    final int dnnBatchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+    private int queuedFrames;
+    private boolean closed;
+    // set if the worker thread stopped because of an unexpected error.
+    private Throwable failure;
+    private final Thread worker;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    BatchingAcousticScorer(Builder builder) {
+        this.scorer = builder.scorer;
+        this.maxBatchFrames = builder.maxBatchFrames;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxWaitMillis);
+        this.dnnBatchSize = builder.dnnBatchSize;
+        this.worker = new Thread(this::run, "batching-acoustic-scorer");
+        worker.setDaemon(true);
+    }
+
+    public static Builder builder(DnnAcousticModel model) {
+        return new Builder(model.getScorer());
+    }
+
+    public static class Builder {
+        DnnAcousticScorer scorer;
+        int maxBatchFrames = 256;
+        int maxWaitMillis = 5;
+        int dnnBatchSize = 32;
+
+        public Builder(DnnAcousticScorer scorer) {
+            this.scorer = scorer;
+        }
+
+        public Builder maxBatchFrames(int maxBatchFrames) {
+            if (maxBatchFrames <= 0) {
+                throw new IllegalArgumentException("Max batch frames must be positive. But it is " + maxBatchFrames);
+            }
+            this.maxBatchFrames = maxBatchFrames;
+            return this;
+        }
+
+        public Builder maxWaitMillis(int maxWaitMillis) {
+            if (maxWaitMillis < 0) {
+                throw new IllegalArgumentException("Max wait cannot be negative. But it is " + maxWaitMillis);
+            }
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * Amount of vectors network calculation processes together inside a batch.
+         */
+        public Builder dnnBatchSize(int dnnBatchSize) {
+            if (dnnBatchSize <= 0) {
+                throw new IllegalArgumentException("Dnn batch size must be positive. But it is " + dnnBatchSize);
+            }
+            this.dnnBatchSize = dnnBatchSize;
+            return this;
+        }
+
+        public BatchingAcousticScorer build() {
+            BatchingAcousticScorer batchingScorer = new BatchingAcousticScorer(this);
+            batchingScorer.worker.start();
+            return batchingScorer;
+        }
+    }
+
+    /**
+     * Queues feature vectors for scoring. Returned future completes with log likelihoods.
+     */
+    public CompletableFuture<SpeechData> submit(SpeechData speechData) {
+        Request request = new Request(speechData);
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new IllegalStateException("Scorer failed.", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Scorer is closed.");
+            }
+            queue.add(request);
+            queuedFrames += request.input.length;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        return request.result;
+    }
+
+    /**
+     * Scores feature vectors and waits for the result.
+     */
+    public SpeechData score(SpeechData speechData) {
+        try {
+            return submit(speechData).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (true) {
+            batch.clear();
+            lock.lock();
+            try {
+                if (!waitForBatch()) {
+                    return;
+                }
+                int frames = 0;
+                while (!queue.isEmpty()) {
+                    int size = queue.peek().input.length;
+                    if (!batch.isEmpty() && frames + size > maxBatchFrames) {
+                        break;
+                    }
+                    batch.add(queue.poll());
+                    frames += size;
+                }
+                queuedFrames -= frames;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                calculate(batch);
+            } catch (Throwable e) {
+                fail(batch, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fails the current batch, all queued requests and later submits. Called when calculation throws an Error,
+     * worker thread stops after this.
+     */
+    private void fail(List<Request> batch, Throwable e) {
+        logger.error("Batch calculation failed, scorer is stopped.", e);
+        for (Request request : batch) {
+            request.result.completeExceptionally(e);
+        }
+        lock.lock();
+        try {
+            failure = e;
+            closed = true;
+            for (Request request : queue) {
+                request.result.completeExceptionally(e);
+            }
+            queue.clear();
+            queuedFrames = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a batch is ready. Returns false if scorer is closed and there is nothing left to calculate.
+     * Must be called while holding the lock.
+     */
+    private boolean waitForBatch() {
+        while (queue.isEmpty()) {
+            if (closed) {
+                return false;
+            }
+            changed.awaitUninterruptibly();
+        }
+        long deadline = queue.peek().createNanos + maxWaitNanos;
+        while (!closed && queuedFrames < maxBatchFrames) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                changed.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                // worker is only stopped with close().
+            }
+        }
+        return true;
+    }
+
+    private void calculate(List<Request> batch) {
+        int frames = 0;
+        for (Request request : batch) {
+            frames += request.input.length;
+        }
+        float[][] input = new float[frames][];
+        int k = 0;
+        for (Request request : batch) {
+            System.arraycopy(request.input, 0, input, k, request.input.length);
+            k += request.input.length;
+        }
+        float[][] output;
+        try {
+            output = frames == 0 ? new float[0][] : scorer.score(input, dnnBatchSize);
+        } catch (RuntimeException e) {
+            logger.warn("Batch calculation failed.", e);
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        k = 0;
+        for (Request request : batch) {
+            float[][] result = new float[request.input.length][];
+            System.arraycopy(output, k, result, 0, result.length);
+            k += result.length;
+            long latency = now - request.createNanos;
+            totalLatencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            request.result.complete(new SpeechData(request.speechData.getSegment(), result));
+        }
+        batchCount.incrementAndGet();
+        requestCount.addAndGet(batch.size());
+        frameCount.addAndGet(frames);
+    }
+
+    public Stats stats() {
+        long batches = batchCount.get();
+        long requests = requestCount.get();
+        return new Stats(
+                batches,
+                requests,
+                frameCount.get(),
+                batches == 0 ? 0 : frameCount.get() / (double) batches,
+                requests == 0 ? 0 : totalLatencyNanos.get() / 1e6 / requests,
+                maxLatencyNanos.get() / 1e6);
+    }
+
+    /**
+     * Calculates queued requests and stops the worker thread.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("Batching scorer is closed. {}", stats());
+    }
+
+    public static final class Stats {
+        public final long batchCount;
+        public final long requestCount;
+        public final long frameCount;
+        public final double meanBatchFrames;
+        // time from submit to result, including waiting in queue and calculation.
+        public final double meanLatencyMillis;
+        public final double maxLatencyMillis;
+
+        Stats(long batchCount,
+              long requestCount,
+              long frameCount,
+              double meanBatchFrames,
+              double meanLatencyMillis,
+              double maxLatencyMillis) {
+            this.batchCount = batchCount;
+            this.requestCount = requestCount;
+            this.frameCount = frameCount;
+            this.meanBatchFrames = meanBatchFrames;
+            this.meanLatencyMillis = meanLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("batches=%d requests=%d frames=%d meanBatchFrames=%.1f meanLatency=%.3fms " +
+                            "maxLatency=%.3fms",
+                    batchCount, requestCount, frameCount, meanBatchFrames, meanLatencyMillis, maxLatencyMillis);
+        }
+    }
+
+    private static final class Request {
+        final SpeechData speechData;
+        final float[][] input;
+        final long createNanos = System.nanoTime();
+        final CompletableFuture<SpeechData> result = new CompletableFuture<>();
+
+        Request(SpeechData speechData) {
+            this.speechData = speechData;
+            this.input = speechData.getContentAsMatrix();
+        }
+    }
+}
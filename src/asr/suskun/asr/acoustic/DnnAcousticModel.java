@@ -92,6 +92,13 @@ public class DnnAcousticModel {
         return transitionToPdfLookup[transitionIndex];
     }
 
+    /**
+     * Returns the amount of transition ids in transition to pdf lookup.
+     */
+    public int transitionCount() {
+        return transitionToPdfLookup.length;
+    }
+
 
     public PhoneLookup getPhoneLookup() {
         return phoneLookup;
@@ -111,6 +118,18 @@ public class DnnAcousticModel {
             this.pdfIndex = pdfIndex;
             this.hmmStateIndex = hmmStateIndex;
         }
+
+        public Phone getPhone() {
+            return phone;
+        }
+
+        public int getPdfIndex() {
+            return pdfIndex;
+        }
+
+        public int getHmmStateIndex() {
+            return hmmStateIndex;
+        }
     }
 
     public static void main(String[] args) throws IOException {
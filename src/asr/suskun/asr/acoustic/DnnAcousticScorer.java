@@ -1,7 +1,6 @@
 package suskun.asr.acoustic;
 
 import suskun.audio.SpeechData;
-import suskun.core.collections.FloatArrays;
 import suskun.core.math.LogMath;
 import suskun.nn.QuantizedDnn;
 
@@ -17,11 +16,114 @@ public class DnnAcousticScorer {
 
     public SpeechData score(SpeechData speechData) {
         float[][] input = speechData.getContentAsMatrix();
-        float[][] result = dnn.calculate(input);
-        for (float[] vec : result) {
-            LogMath.LINEAR_TO_LOG_FLOAT.convertInPlace(vec);
-            FloatArrays.subtractFromFirst(vec, logAlignmentProbabilities);
+        float[][] result = dnn.calculateLogLikelihoods(input, logAlignmentProbabilities);
+        return new SpeechData(speechData.getSegment(), result);
+    }
+
+    /**
+     * Calculates log likelihoods of all frames with `context`, the shared network handle is not used for
+     * calculation.
+     */
+    SpeechData score(SpeechData speechData, QuantizedDnn.LazyContext context) {
+        float[][] result = context.calculateLogLikelihoods(speechData.getContentAsMatrix(), logAlignmentProbabilities);
+        return new SpeechData(speechData.getSegment(), result);
+    }
+
+    /**
+     * Calculates log likelihoods of every `frameSkip`th frame starting from the first one. Result has
+     * ceil(frameCount / frameSkip) vectors.
+     */
+    public SpeechData scoreSubsampled(SpeechData speechData, int frameSkip) {
+        if (frameSkip <= 0) {
+            throw new IllegalArgumentException("Frame skip must be positive. But it is " + frameSkip);
+        }
+        float[][] input = speechData.getContentAsMatrix();
+        float[][] sampled = new float[(input.length + frameSkip - 1) / frameSkip][];
+        for (int i = 0; i < sampled.length; i++) {
+            sampled[i] = input[i * frameSkip];
         }
+        float[][] result = dnn.calculateLogLikelihoods(sampled, logAlignmentProbabilities);
         return new SpeechData(speechData.getSegment(), result);
     }
+
+    /**
+     * Calculates log likelihoods of input vectors, network processes `batchSize` vectors at a time.
+     */
+    float[][] score(float[][] input, int batchSize) {
+        return dnn.calculateLogLikelihoods(input, logAlignmentProbabilities, batchSize);
+    }
+
+    /**
+     * Returns a scorer that calculates hidden layers of all frames at once and output layer
+     * only for the pdfs requested by the caller in each frame.
+     */
+    public LazyAcousticScorer lazyScorer(SpeechData speechData) {
+        float[][] input = speechData.getContentAsMatrix();
+        QuantizedDnn.LazyContext context = dnn.getNewLazyContext(input.length);
+        context.calculateUntilOutput(input);
+        return new LazyDnnScorer(context, input.length, context::delete);
+    }
+
+    /**
+     * Returns a lazy scorer that uses an existing context. `release` is called instead of deleting the context
+     * when the scorer is released.
+     */
+    LazyAcousticScorer lazyScorer(float[][] input, QuantizedDnn.LazyContext context, Runnable release) {
+        context.calculateUntilOutput(input);
+        return new LazyDnnScorer(context, input.length, release);
+    }
+
+    class LazyDnnScorer implements LazyAcousticScorer {
+
+        final QuantizedDnn.LazyContext context;
+        final int frameCount;
+        final float[] logLikelihoods;
+        // activations of active pdfs, reused for every frame.
+        final float[] activations;
+        final Runnable release;
+        long calculatedCount;
+
+        LazyDnnScorer(QuantizedDnn.LazyContext context, int frameCount, Runnable release) {
+            this.context = context;
+            this.frameCount = frameCount;
+            this.release = release;
+            this.logLikelihoods = new float[logAlignmentProbabilities.length];
+            this.activations = new float[logAlignmentProbabilities.length];
+        }
+
+        @Override
+        public int frameCount() {
+            return frameCount;
+        }
+
+        @Override
+        public int pdfCount() {
+            return logLikelihoods.length;
+        }
+
+        @Override
+        public float[] nextFrame(byte[] activePdfMask) {
+            // only the activations of active nodes are written, in pdf index order.
+            context.calculateForOutputNodes(activePdfMask, activations);
+            int k = 0;
+            for (int i = 0; i < logLikelihoods.length; i++) {
+                if (activePdfMask[i] != 0) {
+                    logLikelihoods[i] = LogMath.LINEAR_TO_LOG_FLOAT.convert(activations[k++])
+                            - logAlignmentProbabilities[i];
+                }
+            }
+            calculatedCount += k;
+            return logLikelihoods;
+        }
+
+        @Override
+        public long calculatedCount() {
+            return calculatedCount;
+        }
+
+        @Override
+        public void release() {
+            release.run();
+        }
+    }
 }
@@ -4,6 +4,8 @@ import suskun.audio.SpeechData;
 import suskun.core.FloatData;
 import suskun.dsp.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -48,4 +50,70 @@ public class FeatureExtractors {
             return new SpeechData(input.getSegment(), windowFeatures);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Live version of BatchWindowDeltaMfccExtractor. Audio samples are given in chunks of any size and features are
+     * returned as soon as enough future context is available. After the last chunk flush() returns the remaining
+     * features. Concatenated output is the same as the batch extractor output for the whole audio.
+     * Instances are stateful, they can be reused after flush().
+     */
+    public static class LiveWindowDeltaMfccExtractor {
+
+        final int samplingRate;
+        final int featureSize;
+
+        FrameGenerator generator;
+        DeltaFeatures deltaExtractor;
+        WindowFeatures windowExtractor;
+
+        final Preprocessor preprocessor;
+        final EnergySpectrum spectrogram;
+        final MelFilter filter = new MelFilter(16000, 256, 20, 8000, 23);
+        final MelCepstrum cepstrum = new MelCepstrum(13, 23, 22);
+
+        public LiveWindowDeltaMfccExtractor(int samplingRate, int featureSize) {
+            this.samplingRate = samplingRate;
+            this.featureSize = featureSize;
+            reset();
+            this.preprocessor = Preprocessor.builder(generator.frameSampleSize)
+                    .ditherMultiplier(0)
+                    .windowFunctionType(WindowFunction.Function.POVEY)
+                    .build();
+            this.spectrogram = new EnergySpectrum(new FastFourierTransform(preprocessor.paddedSize), false);
+        }
+
+        public int getSamplingRate() {
+            return samplingRate;
+        }
+
+        private void reset() {
+            this.generator = FrameGenerator.forTime(samplingRate, 25, 10);
+            this.deltaExtractor = new DeltaFeatures(2, true);
+            this.windowExtractor = WindowFeatures.builder(5, 5).setLiveMode(true).paddedSize(featureSize).build();
+        }
+
+        /**
+         * Returns the features that can be calculated after adding `samples`. Result may be empty.
+         */
+        public List<FloatData> process(float[] samples) {
+            List<FloatData> frames = generator.getFrames(new FloatData(samples.clone()));
+            if (frames.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<FloatData> mfccFeatures = frames.stream().map(frame -> cepstrum.process(
+                    filter.process(spectrogram.process(preprocessor.process(frame).data))))
+                    .collect(Collectors.toList());
+            return windowExtractor.get(deltaExtractor.get(mfccFeatures));
+        }
+
+        /**
+         * Returns the remaining features of the stream and resets the extractor.
+         */
+        public List<FloatData> flush() {
+            List<FloatData> features = new ArrayList<>(windowExtractor.get(deltaExtractor.flush()));
+            features.addAll(windowExtractor.flush());
+            reset();
+            return features;
+        }
+    }
+}
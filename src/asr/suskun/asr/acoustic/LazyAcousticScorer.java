@@ -0,0 +1,25 @@
+package suskun.asr.acoustic;
+
+/**
+ * Calculates acoustic scores of an utterance frame by frame, only for the pdfs a decoder asks for.
+ * Frames are scored in order. Instances hold native resources, so release() must be called after use.
+ */
+public interface LazyAcousticScorer {
+
+    int frameCount();
+
+    int pdfCount();
+
+    /**
+     * Calculates log likelihoods of the next frame for pdfs with non zero `activePdfMask` values.
+     * Values of other pdfs in returned array are undefined. Returned array may be reused in the next call.
+     */
+    float[] nextFrame(byte[] activePdfMask);
+
+    /**
+     * Returns the amount of pdf scores calculated so far.
+     */
+    long calculatedCount();
+
+    void release();
+}
@@ -0,0 +1,343 @@
+package suskun.asr.acoustic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.audio.SpeechData;
+import suskun.nn.QuantizedDnn;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe scoring facade of an acoustic model that is loaded once and shared by many concurrent utterances.
+ * <p>
+ * Scoring calls borrow one of `poolSize` slots, so at most poolSize calculations run at the same time and other
+ * callers wait. Each slot keeps a lazy calculation context and reuses it for the next utterances. Java backend
+ * contexts are reused for any utterance, native contexts only for utterances with the same frame count they are
+ * created for, otherwise they are replaced.
+ * <p>
+ * Full scoring also runs in the context of the borrowed slot, so concurrent calculations never share native
+ * calculation state. The shared network is only read. Java backend network is thread safe itself.
+ * <p>
+ * Slots are returned when a lease is closed or a lazy scorer is released. If a caller forgets that, the slot is
+ * returned by a later acquire() call after the lease is garbage collected. Contexts are deleted on close().
+ * Usage:
+ * <pre>
+ * try (SharedAcousticModel shared = new SharedAcousticModel(model, 8)) {
+ *     // from any thread
+ *     SpeechData scores = shared.score(features);
+ * }
+ * </pre>
+ */
+public class SharedAcousticModel implements AutoCloseable {
+
+    static final Logger logger = LoggerFactory.getLogger(SharedAcousticModel.class);
+
+    // waiting callers check for garbage collected leases with this interval.
+    static final long RECLAIM_INTERVAL_MILLIS = 100;
+
+    final DnnAcousticModel model;
+    final DnnAcousticScorer scorer;
+    final Pool pool;
+
+    public SharedAcousticModel(DnnAcousticModel model, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive. But it is " + poolSize);
+        }
+        this.model = model;
+        this.scorer = model.getScorer();
+        this.pool = new Pool(model.getDnn(), poolSize);
+    }
+
+    public static SharedAcousticModel loadFromDirectory(Path root, int poolSize) throws IOException {
+        return new SharedAcousticModel(DnnAcousticModel.loadFromDirectory(root), poolSize);
+    }
+
+    public DnnAcousticModel getModel() {
+        return model;
+    }
+
+    public int getPoolSize() {
+        return pool.slots.length;
+    }
+
+    /**
+     * Calculates log likelihoods of all frames with the context of a slot. Blocks until a slot is available.
+     */
+    public SpeechData score(SpeechData speechData) {
+        Lease lease = acquire();
+        try {
+            return scorer.score(speechData, lease.lazyContext(speechData.vectorCount()));
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * Returns a lazy scorer that keeps a slot until it is released. Blocks until a slot is available.
+     */
+    public LazyAcousticScorer lazyScorer(SpeechData speechData) {
+        float[][] input = speechData.getContentAsMatrix();
+        Lease lease = acquire();
+        try {
+            return scorer.lazyScorer(input, lease.lazyContext(input.length), lease::close);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a slot, blocks until one is available. Lease must be closed after use.
+     */
+    public Lease acquire() {
+        long start = System.nanoTime();
+        Slot slot;
+        try {
+            pool.reclaimLeaked();
+            while ((slot = pool.idle.poll(RECLAIM_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                pool.reclaimLeaked();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for an acoustic model slot is interrupted.", e);
+        }
+        long now = System.nanoTime();
+        if (pool.closed) {
+            pool.idle.add(slot);
+            throw new IllegalStateException("Shared acoustic model is closed.");
+        }
+        pool.acquired(now - start);
+        Lease lease = new Lease();
+        lease.reference = new LeaseReference(lease, pool, slot, now);
+        return lease;
+    }
+
+    public Stats stats() {
+        return pool.stats();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * A borrowed slot of the pool.
+     */
+    public static final class Lease implements AutoCloseable {
+        private LeaseReference reference;
+
+        private Lease() {
+        }
+
+        /**
+         * Returns the lazy context of this slot prepared for `vectorCount` input vectors.
+         */
+        public QuantizedDnn.LazyContext lazyContext(int vectorCount) {
+            return reference.slot.lazyContext(vectorCount);
+        }
+
+        @Override
+        public void close() {
+            reference.release();
+        }
+    }
+
+    public static final class Stats {
+        public final int poolSize;
+        public final int busyCount;
+        public final long acquireCount;
+        public final double meanWaitMillis;
+        public final double maxWaitMillis;
+        // ratio of slot busy time to total slot time since the pool is created.
+        public final double utilization;
+        // amount of lazy contexts created. Lower values mean more reuse.
+        public final long contextCreateCount;
+
+        Stats(int poolSize,
+              int busyCount,
+              long acquireCount,
+              double meanWaitMillis,
+              double maxWaitMillis,
+              double utilization,
+              long contextCreateCount) {
+            this.poolSize = poolSize;
+            this.busyCount = busyCount;
+            this.acquireCount = acquireCount;
+            this.meanWaitMillis = meanWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.utilization = utilization;
+            this.contextCreateCount = contextCreateCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool=%d busy=%d acquired=%d meanWait=%.3fms maxWait=%.3fms utilization=%.2f " +
+                            "contextsCreated=%d",
+                    poolSize, busyCount, acquireCount, meanWaitMillis, maxWaitMillis, utilization,
+                    contextCreateCount);
+        }
+    }
+
+    // Pool state. It does not refer to Lease instances so that leaked leases can be garbage collected.
+    static final class Pool {
+        final QuantizedDnn dnn;
+        final Slot[] slots;
+        final BlockingQueue<Slot> idle;
+        final long createNanos = System.nanoTime();
+        // guards closing and returning slots, so a slot returned during close is not missed.
+        final Object closeLock = new Object();
+        volatile boolean closed;
+        // references of leases that are not closed yet. Garbage collected ones are enqueued to `leaked`.
+        final Set<LeaseReference> leases = ConcurrentHashMap.newKeySet();
+        final ReferenceQueue<Lease> leaked = new ReferenceQueue<>();
+
+        final AtomicInteger busyCount = new AtomicInteger();
+        final LongAdder acquireCount = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final LongAdder busyNanos = new LongAdder();
+        final LongAdder contextCreateCount = new LongAdder();
+
+        Pool(QuantizedDnn dnn, int size) {
+            this.dnn = dnn;
+            this.slots = new Slot[size];
+            this.idle = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot(this);
+                idle.add(slots[i]);
+            }
+        }
+
+        void acquired(long waitedNanos) {
+            busyCount.incrementAndGet();
+            acquireCount.increment();
+            waitNanos.add(waitedNanos);
+            maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+        }
+
+        // returns slots of garbage collected leases that are not closed.
+        void reclaimLeaked() {
+            Reference<? extends Lease> reference;
+            while ((reference = leaked.poll()) != null) {
+                if (((LeaseReference) reference).release()) {
+                    logger.warn("An acoustic model lease is not closed. " +
+                            "Its slot is returned after garbage collection.");
+                }
+            }
+        }
+
+        void release(Slot slot, long acquireNanos) {
+            busyNanos.add(System.nanoTime() - acquireNanos);
+            busyCount.decrementAndGet();
+            synchronized (closeLock) {
+                if (closed) {
+                    slot.delete();
+                }
+                idle.add(slot);
+            }
+        }
+
+        Stats stats() {
+            long acquires = acquireCount.sum();
+            long elapsed = Math.max(1, System.nanoTime() - createNanos);
+            return new Stats(
+                    slots.length,
+                    busyCount.get(),
+                    acquires,
+                    acquires == 0 ? 0 : waitNanos.sum() / 1e6 / acquires,
+                    maxWaitNanos.get() / 1e6,
+                    Math.min(1, busyNanos.sum() / ((double) elapsed * slots.length)),
+                    contextCreateCount.sum());
+        }
+
+        void close() {
+            synchronized (closeLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                // contexts of busy slots are deleted when they are released. Idle slots are put back without
+                // contexts so that waiting callers wake up and fail.
+                List<Slot> idleSlots = new ArrayList<>();
+                idle.drainTo(idleSlots);
+                for (Slot slot : idleSlots) {
+                    slot.delete();
+                }
+                idle.addAll(idleSlots);
+            }
+            if (!leases.isEmpty()) {
+                logger.warn("{} acoustic model leases are not closed. " +
+                        "Their contexts are deleted when they are released.", leases.size());
+            }
+            logger.debug("Shared acoustic model is closed. {}", stats());
+        }
+    }
+
+    static final class Slot {
+        final Pool pool;
+        QuantizedDnn.LazyContext context;
+
+        Slot(Pool pool) {
+            this.pool = pool;
+        }
+
+        QuantizedDnn.LazyContext lazyContext(int vectorCount) {
+            if (context == null || !context.canProcess(vectorCount)) {
+                delete();
+                context = pool.dnn.getNewLazyContext(vectorCount);
+                pool.contextCreateCount.increment();
+            }
+            return context;
+        }
+
+        void delete() {
+            if (context != null) {
+                context.delete();
+                context = null;
+            }
+        }
+    }
+
+    // Returns the slot of a lease once, either when the lease is closed or after it is garbage collected.
+    static final class LeaseReference extends PhantomReference<Lease> {
+        final Pool pool;
+        final Slot slot;
+        final long acquireNanos;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        LeaseReference(Lease lease, Pool pool, Slot slot, long acquireNanos) {
+            super(lease, pool.leaked);
+            this.pool = pool;
+            this.slot = slot;
+            this.acquireNanos = acquireNanos;
+            pool.leases.add(this);
+        }
+
+        // returns false if the slot is already released.
+        boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            pool.leases.remove(this);
+            clear();
+            pool.release(slot, acquireNanos);
+            return true;
+        }
+    }
+}
@@ -43,6 +43,14 @@ class ActiveList {
 
     private int clusterCount = DEFAULT_CLUSTER_COUNT;
 
+    // if positive, histogram pruning is applied in getActiveHypotheses.
+    private int maxActive;
+
+    private ScoreHistogram histogram;
+
+    // reused for histogram pruning results.
+    private List<Hypothesis> survivors;
+
     private Builder builder;
 
     public ActiveList(Builder builder) {
@@ -53,6 +61,11 @@ class ActiveList {
         this.expandLimit = (int) (loadFactor * capacity);
         this.minHypothesisCount = builder.minimumHypothesisCount;
         this.clusterCount = builder.clusterCount;
+        this.maxActive = builder.maxActive;
+        if (maxActive > 0) {
+            this.histogram = new ScoreHistogram(builder.histogramBinCount);
+            this.survivors = new ArrayList<>(maxActive);
+        }
         this.modulo = capacity - 1;
         // save this builder for cloning.
         this.builder = builder;
@@ -99,6 +112,10 @@ class ActiveList {
         return clusterCount;
     }
 
+    public int getMaxActive() {
+        return maxActive;
+    }
+
     public static Builder builder(float beamSize) {
         return new Builder(beamSize);
     }
@@ -109,6 +126,8 @@ class ActiveList {
         float loadFactor = DEFAULT_LOAD_FACTOR;
         int minimumHypothesisCount = DEFAULT_MIN_HYPOTHESIS_COUNT;
         int clusterCount = DEFAULT_CLUSTER_COUNT;
+        int maxActive = 0;
+        int histogramBinCount = ScoreHistogram.DEFAULT_BIN_COUNT;
 
         public Builder(float beamSize) {
             this.beamSize = beamSize;
@@ -137,6 +156,22 @@ class ActiveList {
             return this;
         }
 
+        /**
+         * Enables histogram pruning mode. getActiveHypotheses returns at most `maxActive` best hypotheses in beam.
+         */
+        public Builder maxActive(int maxActive) {
+            if (maxActive <= 0) {
+                throw new IllegalArgumentException("Max active must be positive. But it is " + maxActive);
+            }
+            this.maxActive = maxActive;
+            return this;
+        }
+
+        public Builder histogramBinCount(int histogramBinCount) {
+            this.histogramBinCount = histogramBinCount;
+            return this;
+        }
+
         public ActiveList build() {
             return new ActiveList(this);
         }
@@ -162,20 +197,45 @@ class ActiveList {
      * equal hypothesis's slot index.
      */
     private int locate(Hypothesis hyp) {
+        return locate(hyp.stateId);
+    }
+
+    // Hypotheses are equal if their state ids are equal and hash code of a Hypothesis is its state id.
+    private int locate(int stateId) {
         int count = 0;
-        int slot = firstProbe(hyp.hashCode());
+        int slot = firstProbe(stateId);
         while (true) {
             final Hypothesis h = hypotheses[slot];
             if (h == null) {
                 return (-slot - 1);
             }
-            if (h.equals(hyp)) {
+            if (h.stateId == stateId) {
                 return slot;
             }
             slot = nextProbe(slot, ++count);
         }
     }
 
+    /**
+     * Returns the Hypothesis with given state id. If it does not exist, returns null.
+     */
+    public Hypothesis get(int stateId) {
+        int slot = locate(stateId);
+        return slot < 0 ? null : hypotheses[slot];
+    }
+
+    /**
+     * Checks if a hypothesis with given state id and score would be added to this list.
+     * This allows callers to avoid creating Hypothesis objects that would be discarded anyway.
+     */
+    public boolean canImprove(int stateId, float score) {
+        if (size > minHypothesisCount && max - score > beamSize) {
+            return false;
+        }
+        int slot = locate(stateId);
+        return slot < 0 || hypotheses[slot].score < score;
+    }
+
     public void add(Hypothesis hypothesis) {
 
         // we skip the weak hypotheses if there are already some hypotheses around.
@@ -255,20 +315,30 @@ class ActiveList {
         }
 
         float interval = (max - min) / clusterCount;
+        // if all scores are equal or range is not finite, everything goes to the first cluster.
+        boolean degenerate = !(interval > 0) || Float.isInfinite(interval);
 
         for (int i = 0; i < hypotheses.length; i++) {
             Hypothesis hyp = hypotheses[i];
             if (hyp == null) {
                 continue;
             }
-            int index = (int) ((max - hyp.score) / interval);
-            clusters.get(index).add(hyp);
+            int index = degenerate ? 0 : (int) ((max - hyp.score) / interval);
+            clusters.get(Math.min(Math.max(index, 0), clusterCount + 1)).add(hyp);
         }
         return clusters;
     }
 
 
+    /**
+     * Returns active hypotheses. If max active is set, applies beam and histogram pruning in linear time and returns
+     * at most max active hypotheses in no particular order. In that case the returned list is reused in the next call.
+     * Otherwise hypotheses are roughly sorted by their scores.
+     */
     public List<Hypothesis> getActiveHypotheses() {
+        if (maxActive > 0) {
+            return histogramPrune();
+        }
         if (size < minHypothesisCount) {
             List<Hypothesis> result = getAllHypotheses();
             Collections.sort(result);
@@ -281,4 +351,35 @@ class ActiveList {
         clusters.forEach(result::addAll);
         return result;
     }
+
+    private List<Hypothesis> histogramPrune() {
+        survivors.clear();
+        float threshold = max - beamSize;
+        histogram.reset(max, Math.min(beamSize, max - min));
+        for (Hypothesis hyp : hypotheses) {
+            if (hyp != null && hyp.score >= threshold) {
+                histogram.add(hyp.score);
+            }
+        }
+        int cutoffBin = histogram.cutoffBin(maxActive);
+        // hypotheses in better bins than cut-off bin always survive.
+        for (Hypothesis hyp : hypotheses) {
+            if (hyp != null && hyp.score >= threshold && (cutoffBin < 0 || histogram.bin(hyp.score) < cutoffBin)) {
+                survivors.add(hyp);
+            }
+        }
+        if (cutoffBin < 0) {
+            return survivors;
+        }
+        // fill the rest from the cut-off bin.
+        for (Hypothesis hyp : hypotheses) {
+            if (survivors.size() == maxActive) {
+                break;
+            }
+            if (hyp != null && hyp.score >= threshold && histogram.bin(hyp.score) == cutoffBin) {
+                survivors.add(hyp);
+            }
+        }
+        return survivors;
+    }
 }
@@ -0,0 +1,498 @@
+package suskun.asr.decoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A memory mapped decoding graph with variable length encoded arcs. Most HCLG arcs have no output word and
+ * targets close to their source state, so an arc usually takes 3-6 bytes instead of 16 bytes of the raw format.
+ * States are still randomly accessible.
+ * <p>
+ * Index file `compact-index.bin` (big endian):
+ * [magic][version][state count][transition count][block shift][weight encoding][weight min][weight step]
+ * [byte offset of each state relative to its block]...
+ * [byte offset of each block in data file (long)]... (block count + 1 values)
+ * <p>
+ * Data file `compact-data.bin` contains a record for each state:
+ * varint(arc count << 1 | has final weight) [final weight] arc...
+ * <p>
+ * Arc: varint(zigzag(target - source) << 3 | flags) [varint transition id] [varint word id] [weight]
+ * Flags are EPSILON (transition id 0, not written), NO_WORD (word id 0, not written) and ZERO_WEIGHT (not written).
+ * Weights are written as floats or linearly quantized to 16 or 8 bits in [weight min, weight max] range.
+ * <p>
+ * A block contains 2^blockShift states, so a state is located with one int and one long lookup.
+ */
+public class CompactGraph implements DecodingGraph {
+
+    public static final String INDEX_FILE_NAME = "compact-index.bin";
+    public static final String DATA_FILE_NAME = "compact-data.bin";
+
+    static final int MAGIC = 0x53434746; // "SCGF"
+    static final int VERSION = 1;
+    static final int HEADER_INT_COUNT = 8;
+    static final int DEFAULT_BLOCK_SHIFT = 6;
+
+    // data segments are split at block boundaries. A block is never split, so a segment may be larger than this.
+    static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+    static final int EPSILON = 1;
+    static final int NO_WORD = 2;
+    static final int ZERO_WEIGHT = 4;
+    static final int FLAG_BITS = 3;
+
+    static final Logger logger = LoggerFactory.getLogger(CompactGraph.class);
+
+    public enum WeightEncoding {
+        FLOAT(4, 0),
+        LINEAR16(2, 0xffff),
+        LINEAR8(1, 0xff);
+
+        final int byteCount;
+        final int maxLevel;
+
+        WeightEncoding(int byteCount, int maxLevel) {
+            this.byteCount = byteCount;
+            this.maxLevel = maxLevel;
+        }
+    }
+
+    private final int stateCount;
+    private final int transitionCount;
+    private final int blockShift;
+    private final WeightEncoding weightEncoding;
+    private final float weightMin;
+    private final float weightStep;
+
+    private final IntBuffer stateOffsets;
+    private final ByteBuffer[] segments;
+    // segment index and offset in segment of each block.
+    private final int[] blockSegments;
+    private final int[] blockOffsets;
+
+    private CompactGraph(
+            int stateCount,
+            int transitionCount,
+            int blockShift,
+            WeightEncoding weightEncoding,
+            float weightMin,
+            float weightStep,
+            IntBuffer stateOffsets,
+            ByteBuffer[] segments,
+            int[] blockSegments,
+            int[] blockOffsets) {
+        this.stateCount = stateCount;
+        this.transitionCount = transitionCount;
+        this.blockShift = blockShift;
+        this.weightEncoding = weightEncoding;
+        this.weightMin = weightMin;
+        this.weightStep = weightStep;
+        this.stateOffsets = stateOffsets;
+        this.segments = segments;
+        this.blockSegments = blockSegments;
+        this.blockOffsets = blockOffsets;
+    }
+
+    public static CompactGraph loadFromDirectory(Path dir) throws IOException {
+        return loadFromDirectory(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static CompactGraph loadFromDirectory(Path dir, long segmentSize) throws IOException {
+        Path indexPath = dir.resolve(INDEX_FILE_NAME);
+        Path dataPath = dir.resolve(DATA_FILE_NAME);
+
+        int stateCount;
+        int transitionCount;
+        int blockShift;
+        WeightEncoding weightEncoding;
+        float weightMin;
+        float weightStep;
+        IntBuffer stateOffsets;
+        long[] blockStarts;
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_INT_COUNT * 4);
+            if (header.getInt(0) != MAGIC) {
+                throw new IllegalStateException(indexPath + " is not a compact graph index file.");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IllegalStateException("Unsupported compact graph version " + header.getInt(4) +
+                        " in " + indexPath + ". Expected version is " + VERSION);
+            }
+            stateCount = header.getInt(8);
+            transitionCount = header.getInt(12);
+            blockShift = header.getInt(16);
+            weightEncoding = WeightEncoding.values()[header.getInt(20)];
+            weightMin = header.getFloat(24);
+            weightStep = header.getFloat(28);
+
+            int blockCount = blockCount(stateCount, blockShift);
+            long offsetsStart = HEADER_INT_COUNT * 4;
+            long blocksStart = offsetsStart + stateCount * 4L;
+            long expectedSize = blocksStart + (blockCount + 1) * 8L;
+            if (channel.size() != expectedSize) {
+                throw new IllegalStateException("Index file " + indexPath + " size is " + channel.size() +
+                        " but expected size for " + stateCount + " states is " + expectedSize);
+            }
+            stateOffsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsStart, stateCount * 4L).asIntBuffer();
+            ByteBuffer blockBuffer = channel.map(FileChannel.MapMode.READ_ONLY, blocksStart, (blockCount + 1) * 8L);
+            blockStarts = new long[blockCount + 1];
+            blockBuffer.asLongBuffer().get(blockStarts);
+        }
+
+        int blockCount = blockStarts.length - 1;
+        int[] blockSegments = new int[blockCount];
+        int[] blockOffsets = new int[blockCount];
+        List<ByteBuffer> segments = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            long dataSize = blockStarts[blockCount];
+            if (channel.size() != dataSize) {
+                throw new IllegalStateException("Data file " + dataPath + " size is " + channel.size() +
+                        " but expected size is " + dataSize);
+            }
+            int block = 0;
+            while (block < blockCount) {
+                long start = blockStarts[block];
+                int end = block + 1;
+                while (end < blockCount && blockStarts[end + 1] - start <= segmentSize) {
+                    end++;
+                }
+                for (int i = block; i < end; i++) {
+                    blockSegments[i] = segments.size();
+                    blockOffsets[i] = (int) (blockStarts[i] - start);
+                }
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, blockStarts[end] - start));
+                block = end;
+            }
+        }
+        logger.info("Compact graph with {} states and {} transitions is mapped. Data size = {} bytes",
+                stateCount, transitionCount, blockStarts[blockCount]);
+        return new CompactGraph(stateCount, transitionCount, blockShift, weightEncoding, weightMin, weightStep,
+                stateOffsets, segments.toArray(new ByteBuffer[segments.size()]), blockSegments, blockOffsets);
+    }
+
+    static int blockCount(int stateCount, int blockShift) {
+        return (int) ((stateCount + (1L << blockShift) - 1) >>> blockShift);
+    }
+
+    /**
+     * Writes `graph` in compact format to `outRoot` directory.
+     */
+    public static void convert(DecodingGraph graph, Path outRoot, WeightEncoding weightEncoding)
+            throws IOException {
+        convert(graph, outRoot, weightEncoding, DEFAULT_BLOCK_SHIFT);
+    }
+
+    static void convert(DecodingGraph graph, Path outRoot, WeightEncoding weightEncoding, int blockShift)
+            throws IOException {
+        Files.createDirectories(outRoot);
+        int stateCount = graph.stateCount();
+        DecodingGraph.ArcCursor cursor = graph.newCursor();
+
+        // find weight range for quantization.
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int state = 0; state < stateCount; state++) {
+            float finalScore = graph.finalScore(state);
+            if (finalScore != Float.POSITIVE_INFINITY) {
+                min = Math.min(min, finalScore);
+                max = Math.max(max, finalScore);
+            }
+            cursor.reset(state);
+            while (cursor.next()) {
+                min = Math.min(min, cursor.score());
+                max = Math.max(max, cursor.score());
+            }
+        }
+        if (min > max) {
+            min = max = 0;
+        }
+        WeightWriter weightWriter = new WeightWriter(weightEncoding, min, max);
+
+        int blockCount = blockCount(stateCount, blockShift);
+        long[] blockStarts = new long[blockCount + 1];
+        long arcCount = 0;
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(outRoot.resolve(INDEX_FILE_NAME)), 1 << 20));
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                     Files.newOutputStream(outRoot.resolve(DATA_FILE_NAME)), 1 << 20))) {
+            index.writeInt(MAGIC);
+            index.writeInt(VERSION);
+            index.writeInt(stateCount);
+            index.writeInt(graph.transitionCount());
+            index.writeInt(blockShift);
+            index.writeInt(weightEncoding.ordinal());
+            index.writeFloat(weightWriter.min);
+            index.writeFloat(weightWriter.step);
+
+            // DataOutputStream.size() overflows after 2GB so data size is tracked here.
+            long dataSize = 0;
+            byte[] buffer = new byte[1024];
+            for (int state = 0; state < stateCount; state++) {
+                int block = state >>> blockShift;
+                if ((state & ((1 << blockShift) - 1)) == 0) {
+                    blockStarts[block] = dataSize;
+                }
+                long relative = dataSize - blockStarts[block];
+                if (relative > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Block " + block + " is too large. Use a smaller block shift.");
+                }
+                index.writeInt((int) relative);
+
+                int stateArcCount = 0;
+                cursor.reset(state);
+                while (cursor.next()) {
+                    stateArcCount++;
+                }
+                arcCount += stateArcCount;
+                float finalScore = graph.finalScore(state);
+                boolean isFinal = finalScore != Float.POSITIVE_INFINITY;
+
+                int k = writeVarLong(buffer, 0, ((long) stateArcCount << 1) | (isFinal ? 1 : 0));
+                if (isFinal) {
+                    k = weightWriter.write(buffer, k, finalScore);
+                }
+                cursor.reset(state);
+                while (cursor.next()) {
+                    if (buffer.length - k < 32) {
+                        data.write(buffer, 0, k);
+                        dataSize += k;
+                        k = 0;
+                    }
+                    int transitionId = cursor.transitionId();
+                    int wordId = cursor.wordId();
+                    float score = cursor.score();
+                    int flags = (transitionId == 0 ? EPSILON : 0) |
+                            (wordId == 0 ? NO_WORD : 0) |
+                            (score == 0 ? ZERO_WEIGHT : 0);
+                    long delta = (long) cursor.targetState() - state;
+                    k = writeVarLong(buffer, k, (zigZag(delta) << FLAG_BITS) | flags);
+                    if (transitionId != 0) {
+                        k = writeVarLong(buffer, k, transitionId & 0xffffffffL);
+                    }
+                    if (wordId != 0) {
+                        k = writeVarLong(buffer, k, wordId & 0xffffffffL);
+                    }
+                    if (score != 0) {
+                        k = weightWriter.write(buffer, k, score);
+                    }
+                }
+                data.write(buffer, 0, k);
+                dataSize += k;
+            }
+            blockStarts[blockCount] = dataSize;
+            for (long blockStart : blockStarts) {
+                index.writeLong(blockStart);
+            }
+            logger.info("{} states and {} arcs are written. Data size = {} bytes, {} bytes per arc. " +
+                            "Raw format data size is {} bytes. Max weight quantization error = {}",
+                    stateCount, arcCount, dataSize,
+                    String.format("%.2f", arcCount == 0 ? 0 : dataSize / (double) arcCount),
+                    4L + graph.transitionCount() * (long) MappedGraph.TRANSITION_BYTE_LENGTH,
+                    weightWriter.maxError);
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int writeVarLong(byte[] buffer, int k, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer[k++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[k++] = (byte) value;
+        return k;
+    }
+
+    private static class WeightWriter {
+        final WeightEncoding encoding;
+        final float min;
+        final float step;
+        float maxError;
+
+        WeightWriter(WeightEncoding encoding, float min, float max) {
+            this.encoding = encoding;
+            this.min = encoding == WeightEncoding.FLOAT ? 0 : min;
+            this.step = encoding == WeightEncoding.FLOAT ? 0 : (max - min) / encoding.maxLevel;
+        }
+
+        int write(byte[] buffer, int k, float weight) {
+            if (encoding == WeightEncoding.FLOAT) {
+                int bits = Float.floatToIntBits(weight);
+                buffer[k] = (byte) (bits >>> 24);
+                buffer[k + 1] = (byte) (bits >>> 16);
+                buffer[k + 2] = (byte) (bits >>> 8);
+                buffer[k + 3] = (byte) bits;
+                return k + 4;
+            }
+            int level = step == 0 ? 0 : Math.round((weight - min) / step);
+            level = Math.max(0, Math.min(encoding.maxLevel, level));
+            maxError = Math.max(maxError, Math.abs(min + level * step - weight));
+            if (encoding == WeightEncoding.LINEAR16) {
+                buffer[k] = (byte) (level >>> 8);
+                buffer[k + 1] = (byte) level;
+                return k + 2;
+            }
+            buffer[k] = (byte) level;
+            return k + 1;
+        }
+    }
+
+    @Override
+    public int stateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int transitionCount() {
+        return transitionCount;
+    }
+
+    @Override
+    public int startState() {
+        return 0;
+    }
+
+    public WeightEncoding getWeightEncoding() {
+        return weightEncoding;
+    }
+
+    @Override
+    public float finalScore(int state) {
+        int block = state >>> blockShift;
+        ByteBuffer segment = segments[blockSegments[block]];
+        int k = blockOffsets[block] + stateOffsets.get(state);
+        int header = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = segment.get(k++);
+            header |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return (header & 1) == 0 ? Float.POSITIVE_INFINITY : readWeight(segment, k);
+    }
+
+    @Override
+    public boolean isFinal(int state) {
+        return finalScore(state) != Float.POSITIVE_INFINITY;
+    }
+
+    private float readWeight(ByteBuffer segment, int k) {
+        switch (weightEncoding) {
+            case LINEAR8:
+                return weightMin + (segment.get(k) & 0xff) * weightStep;
+            case LINEAR16:
+                return weightMin + (segment.getShort(k) & 0xffff) * weightStep;
+            default:
+                return segment.getFloat(k);
+        }
+    }
+
+    @Override
+    public ArcCursor newCursor() {
+        return new ArcCursor();
+    }
+
+    public final class ArcCursor implements DecodingGraph.ArcCursor {
+        private ByteBuffer segment;
+        private int position;
+        private int remaining;
+        private int source;
+
+        private int targetState;
+        private int transitionId;
+        private int wordId;
+        private float score;
+
+        private ArcCursor() {
+        }
+
+        private long readVarLong() {
+            long result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = segment.get(position++);
+                result |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        @Override
+        public void reset(int state) {
+            int block = state >>> blockShift;
+            this.segment = segments[blockSegments[block]];
+            this.position = blockOffsets[block] + stateOffsets.get(state);
+            this.source = state;
+            long header = readVarLong();
+            this.remaining = (int) (header >>> 1);
+            if ((header & 1) != 0) {
+                position += weightEncoding.byteCount;
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            long head = readVarLong();
+            int flags = (int) (head & ((1 << FLAG_BITS) - 1));
+            this.targetState = (int) (source + unZigZag(head >>> FLAG_BITS));
+            this.transitionId = (flags & EPSILON) != 0 ? 0 : (int) readVarLong();
+            this.wordId = (flags & NO_WORD) != 0 ? 0 : (int) readVarLong();
+            if ((flags & ZERO_WEIGHT) != 0) {
+                this.score = 0;
+            } else {
+                this.score = readWeight(segment, position);
+                position += weightEncoding.byteCount;
+            }
+            return true;
+        }
+
+        @Override
+        public int targetState() {
+            return targetState;
+        }
+
+        @Override
+        public int transitionId() {
+            return transitionId;
+        }
+
+        @Override
+        public int wordId() {
+            return wordId;
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get("../../data/large-16khz");
+        MappedGraph graph = MappedGraph.loadFromDirectory(root.resolve("fst-bin"));
+        convert(graph, root.resolve("fst-compact"), WeightEncoding.LINEAR16);
+    }
+}
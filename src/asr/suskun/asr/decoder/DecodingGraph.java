@@ -0,0 +1,52 @@
+package suskun.asr.decoder;
+
+/**
+ * A read only HCLG decoding graph. State ids are in [0, stateCount) and weights are costs.
+ * Implementations are thread safe, but ArcCursor instances should not be shared between threads.
+ */
+public interface DecodingGraph {
+
+    int stateCount();
+
+    /**
+     * Returns the amount of transitions. Final weights are counted as transitions.
+     */
+    int transitionCount();
+
+    int startState();
+
+    /**
+     * Returns the final weight of the state. If state is not final, returns Float.POSITIVE_INFINITY
+     */
+    float finalScore(int state);
+
+    boolean isFinal(int state);
+
+    ArcCursor newCursor();
+
+    /**
+     * Iterates over outgoing arcs of a state without creating any objects. Final weights are not iterated.
+     * Usage:
+     * <pre>
+     * cursor.reset(state);
+     * while (cursor.next()) {
+     *     int target = cursor.targetState();
+     *     ...
+     * }
+     * </pre>
+     */
+    interface ArcCursor {
+
+        void reset(int state);
+
+        boolean next();
+
+        int targetState();
+
+        int transitionId();
+
+        int wordId();
+
+        float score();
+    }
+}
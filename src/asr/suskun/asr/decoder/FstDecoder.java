@@ -1,22 +1,555 @@
 package suskun.asr.decoder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.asr.acoustic.DnnAcousticModel;
+import suskun.asr.acoustic.FeatureExtractor;
+import suskun.asr.acoustic.FeatureExtractors;
+import suskun.asr.acoustic.LazyAcousticScorer;
 import suskun.asr.language.WordLexicon;
+import suskun.audio.SpeechData;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * A frame synchronous Viterbi beam search decoder over an HCLG decoding graph.
+ * Tokens are kept in two TokenList instances that are swapped between frames and word histories are kept as
+ * back pointers to traceback records, so after warm up decoding a frame does not allocate memory.
+ * Graph input labels are transition ids and output labels are word ids. Epsilon input label is 0.
+ * Graph weights are costs, so they are subtracted from hypothesis scores, acoustic log likelihoods are added after
+ * scaling with acoustic scale.
+ * Instances are not thread safe.
+ */
 public class FstDecoder {
-    WordLexicon wordLexicon;
 
+    static final Logger logger = LoggerFactory.getLogger(FstDecoder.class);
 
-    public void decode(Path path) {
+    public static final float DEFAULT_BEAM = 13f;
+    public static final int DEFAULT_MAX_ACTIVE = 7000;
+    public static final float DEFAULT_ACOUSTIC_SCALE = 0.1f;
+    public static final int DEFAULT_TRACEBACK_COMPACTION_INTERVAL = 50;
 
+    // feature frame shift. Used for real time factor calculation.
+    public static final float FRAME_SHIFT_SECONDS = 0.01f;
 
+    final DecodingGraph graph;
+    final DnnAcousticModel acousticModel;
+    final WordLexicon wordLexicon;
+    final FeatureExtractor featureExtractor;
 
+    final float beam;
+    final int maxActive;
+    final float acousticScale;
+    // unreachable traceback records are removed in every `tracebackCompactionInterval` frames.
+    final int tracebackCompactionInterval;
+    // if true, only output nodes of pdfs that active tokens can reach are calculated.
+    final boolean lazyScoring;
+    // network is calculated for every `frameSkip`th frame. Scores are reused or interpolated for skipped frames.
+    final int frameSkip;
+    final boolean interpolateSkippedFrames;
 
+    // transition id to pdf index lookup. Value is -1 for epsilon.
+    final int[] pdfIndexes;
 
+    final DecodingGraph.ArcCursor cursor;
+
+    // current and next frame token lists. They are swapped after each frame.
+    private TokenList current;
+    private TokenList next;
+
+    // indexes of tokens that requires epsilon expansion. Reused between frames.
+    private int[] epsilonStack = new int[1024];
+    private int epsilonStackSize;
+
+    // word traceback records. Token back pointers point to the record of the last word on their path.
+    // -1 means no word.
+    private final TracebackArena traceback = new TracebackArena();
+
+    // pdfs reachable from active tokens in lazy scoring. Indexes of non zero mask values are kept for clearing.
+    private byte[] activePdfMask = new byte[0];
+    private int[] activePdfs = new int[0];
+    private int activePdfCount;
+
+    // amount of processed frames and elapsed search time of current search.
+    private int frame;
+    private long searchNanos;
+
+    // scores of skipped frames when interpolation is used. Reused between frames.
+    private float[] interpolatedScores = new float[0];
+
+    FstDecoder(Builder builder) {
+        this.graph = builder.graph;
+        this.acousticModel = builder.acousticModel;
+        this.wordLexicon = builder.wordLexicon;
+        this.beam = builder.beam;
+        this.maxActive = builder.maxActive;
+        this.acousticScale = builder.acousticScale;
+        this.tracebackCompactionInterval = builder.tracebackCompactionInterval;
+        this.lazyScoring = builder.lazyScoring;
+        this.frameSkip = builder.frameSkip;
+        this.interpolateSkippedFrames = builder.interpolateSkippedFrames;
+        this.featureExtractor = builder.featureExtractor != null ? builder.featureExtractor :
+                new FeatureExtractors.BatchWindowDeltaMfccExtractor(16000, acousticModel.getDnn().inputDimension());
+        this.cursor = graph.newCursor();
+        this.current = new TokenList(beam);
+        this.next = new TokenList(beam);
+
+        this.pdfIndexes = new int[acousticModel.transitionCount()];
+        for (int i = 0; i < pdfIndexes.length; i++) {
+            DnnAcousticModel.PdfInformation info = acousticModel.pdfInformation(i);
+            pdfIndexes[i] = info == null ? -1 : info.getPdfIndex();
+        }
+    }
+
+    public static Builder builder(DecodingGraph graph, DnnAcousticModel acousticModel, WordLexicon wordLexicon) {
+        return new Builder(graph, acousticModel, wordLexicon);
+    }
+
+    public static class Builder {
+        DecodingGraph graph;
+        DnnAcousticModel acousticModel;
+        WordLexicon wordLexicon;
+        FeatureExtractor featureExtractor;
+        float beam = DEFAULT_BEAM;
+        int maxActive = DEFAULT_MAX_ACTIVE;
+        float acousticScale = DEFAULT_ACOUSTIC_SCALE;
+        int tracebackCompactionInterval = DEFAULT_TRACEBACK_COMPACTION_INTERVAL;
+        boolean lazyScoring = false;
+        int frameSkip = 1;
+        boolean interpolateSkippedFrames;
+
+        public Builder(DecodingGraph graph, DnnAcousticModel acousticModel, WordLexicon wordLexicon) {
+            this.graph = graph;
+            this.acousticModel = acousticModel;
+            this.wordLexicon = wordLexicon;
+        }
+
+        public Builder beam(float beam) {
+            if (beam <= 0) {
+                throw new IllegalArgumentException("Beam must be positive. But it is " + beam);
+            }
+            this.beam = beam;
+            return this;
+        }
+
+        public Builder maxActive(int maxActive) {
+            if (maxActive <= 0) {
+                throw new IllegalArgumentException("Max active must be positive. But it is " + maxActive);
+            }
+            this.maxActive = maxActive;
+            return this;
+        }
+
+        public Builder acousticScale(float acousticScale) {
+            this.acousticScale = acousticScale;
+            return this;
+        }
+
+        public Builder tracebackCompactionInterval(int frameCount) {
+            if (frameCount <= 0) {
+                throw new IllegalArgumentException("Compaction interval must be positive. But it is " + frameCount);
+            }
+            this.tracebackCompactionInterval = frameCount;
+            return this;
+        }
+
+        /**
+         * If enabled, decode(wavPath) calculates dnn output layer only for the pdfs that are needed by the search.
+         */
+        public Builder lazyScoring(boolean lazyScoring) {
+            this.lazyScoring = lazyScoring;
+            return this;
+        }
+
+        public Builder featureExtractor(FeatureExtractor featureExtractor) {
+            this.featureExtractor = featureExtractor;
+            return this;
+        }
+
+        /**
+         * Acoustic model is calculated only for every `frameSkip`th frame when decoding wav files. Scores of a
+         * calculated frame are used for the skipped frames after it. Cannot be used with lazy scoring.
+         */
+        public Builder frameSkip(int frameSkip) {
+            if (frameSkip <= 0) {
+                throw new IllegalArgumentException("Frame skip must be positive. But it is " + frameSkip);
+            }
+            this.frameSkip = frameSkip;
+            return this;
+        }
+
+        /**
+         * If true, scores of skipped frames are linearly interpolated between the calculated frames around them
+         * instead of reusing the previous calculated frame.
+         */
+        public Builder interpolateSkippedFrames(boolean interpolateSkippedFrames) {
+            this.interpolateSkippedFrames = interpolateSkippedFrames;
+            return this;
+        }
+
+        public FstDecoder build() {
+            if (lazyScoring && frameSkip > 1) {
+                throw new IllegalArgumentException("Frame skip cannot be used with lazy scoring.");
+            }
+            return new FstDecoder(this);
+        }
     }
 
+    public static class Result {
+        public final List<String> words;
+        public final float score;
+        public final int frameCount;
+        public final double realTimeFactor;
+        // ratio of pdf scores that are not calculated. It is 0 if lazy scoring is not used.
+        public final float skippedOutputRatio;
+
+        public Result(List<String> words, float score, int frameCount, double realTimeFactor) {
+            this(words, score, frameCount, realTimeFactor, 0);
+        }
 
+        public Result(List<String> words, float score, int frameCount, double realTimeFactor,
+                      float skippedOutputRatio) {
+            this.words = words;
+            this.score = score;
+            this.frameCount = frameCount;
+            this.realTimeFactor = realTimeFactor;
+            this.skippedOutputRatio = skippedOutputRatio;
+        }
 
+        @Override
+        public String toString() {
+            return String.join(" ", words);
+        }
+    }
+
+    /**
+     * Extracts features from wav file, scores them with acoustic model and decodes.
+     * Real time factor of the result includes feature extraction and scoring.
+     */
+    public Result decode(Path wavPath) throws IOException {
+        long start = System.nanoTime();
+        SpeechData wavSamples = SpeechData.fromWavfile(wavPath);
+        SpeechData features = featureExtractor.extract(wavSamples);
+        Result result;
+        if (lazyScoring) {
+            LazyAcousticScorer scorer = acousticModel.getScorer().lazyScorer(features);
+            try {
+                result = search(scorer.frameCount(), null, 1, scorer);
+            } finally {
+                scorer.release();
+            }
+        } else if (frameSkip > 1) {
+            SpeechData acousticScores = acousticModel.getScorer().scoreSubsampled(features, frameSkip);
+            result = search(features.vectorCount(), acousticScores, frameSkip, null);
+        } else {
+            SpeechData acousticScores = acousticModel.getScorer().score(features);
+            result = search(acousticScores.vectorCount(), acousticScores, 1, null);
+        }
+        double realTimeFactor = realTimeFactor(System.nanoTime() - start, result.frameCount);
+        logger.info("{} decoded. Frame count = {}, RTF = {}, Skipped output ratio = {}",
+                wavPath, result.frameCount, String.format("%.3f", realTimeFactor),
+                String.format("%.3f", result.skippedOutputRatio));
+        return new Result(result.words, result.score, result.frameCount, realTimeFactor,
+                result.skippedOutputRatio);
+    }
+
+    /**
+     * Decodes acoustic scores. Each vector in input contains log likelihoods of pdfs for a frame.
+     */
+    public Result decode(SpeechData acousticScores) {
+        Result result = search(acousticScores.vectorCount(), acousticScores, 1, null);
+        logger.info("Decoded. Frame count = {}, RTF = {}",
+                result.frameCount, String.format("%.3f", result.realTimeFactor));
+        return result;
+    }
+
+    /**
+     * Decodes `frameCount` frames with scores of every `frameSkip`th frame, like the output of
+     * DnnAcousticScorer.scoreSubsampled(). Scores are reused or interpolated for skipped frames.
+     */
+    public Result decode(SpeechData subsampledScores, int frameSkip, int frameCount) {
+        int vectorCount = subsampledScores.vectorCount();
+        if (frameSkip <= 0 || frameCount > vectorCount * frameSkip || frameCount <= (vectorCount - 1) * frameSkip) {
+            throw new IllegalArgumentException(String.format(
+                    "%d score vectors with frame skip %d cannot cover %d frames", vectorCount, frameSkip, frameCount));
+        }
+        Result result = search(frameCount, subsampledScores, frameSkip, null);
+        logger.info("Decoded. Frame count = {}, Frame skip = {}, RTF = {}",
+                result.frameCount, frameSkip, String.format("%.3f", result.realTimeFactor));
+        return result;
+    }
 
+    /**
+     * Decodes by requesting scores of only the pdfs that active tokens can reach in each frame.
+     * Scorer is not released.
+     */
+    public Result decode(LazyAcousticScorer scorer) {
+        Result result = search(scorer.frameCount(), null, 1, scorer);
+        logger.info("Decoded. Frame count = {}, RTF = {}, Skipped output ratio = {}",
+                result.frameCount, String.format("%.3f", result.realTimeFactor),
+                String.format("%.3f", result.skippedOutputRatio));
+        return result;
+    }
+
+    /**
+     * Searches the graph. Scores are read from `acousticScores` or, if `lazyScorer` is not null, requested
+     * from the lazy scorer in every frame. Score vector i of acousticScores is for frame i * frameSkip.
+     */
+    private Result search(int frameCount, SpeechData acousticScores, int frameSkip, LazyAcousticScorer lazyScorer) {
+        begin();
+        long calculatedStart = 0;
+        if (lazyScorer != null) {
+            calculatedStart = lazyScorer.calculatedCount();
+            if (activePdfMask.length != lazyScorer.pdfCount()) {
+                activePdfMask = new byte[lazyScorer.pdfCount()];
+                activePdfs = new int[lazyScorer.pdfCount()];
+            }
+            activePdfCount = 0;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frameCount; i++) {
+            processFrame(lazyScorer == null ? frameScores(acousticScores, i, frameSkip) : null, lazyScorer);
+        }
+        searchNanos += System.nanoTime() - start;
+        Result result = end();
+        if (lazyScorer == null || frameCount == 0) {
+            return result;
+        }
+        long calculated = lazyScorer.calculatedCount() - calculatedStart;
+        float skippedOutputRatio = 1 - (float) (calculated / ((double) frameCount * lazyScorer.pdfCount()));
+        return new Result(result.words, result.score, result.frameCount, result.realTimeFactor,
+                skippedOutputRatio);
+    }
+
+    /**
+     * Returns the scores of a frame when only every `frameSkip`th frame is scored.
+     */
+    private float[] frameScores(SpeechData acousticScores, int frameIndex, int frameSkip) {
+        int k = frameIndex / frameSkip;
+        int offset = frameIndex % frameSkip;
+        float[] scores = acousticScores.get(k).getData();
+        if (offset == 0 || !interpolateSkippedFrames || k + 1 >= acousticScores.vectorCount()) {
+            return scores;
+        }
+        float[] nextScores = acousticScores.get(k + 1).getData();
+        if (interpolatedScores.length != scores.length) {
+            interpolatedScores = new float[scores.length];
+        }
+        float t = offset / (float) frameSkip;
+        for (int i = 0; i < scores.length; i++) {
+            interpolatedScores[i] = scores[i] + t * (nextScores[i] - scores[i]);
+        }
+        return interpolatedScores;
+    }
+
+    /**
+     * Starts an incremental search. Frames are given with advance() calls and search is finished with end().
+     * Only one search can be active in a decoder instance.
+     */
+    public void begin() {
+        long start = System.nanoTime();
+        frame = 0;
+        current.clear();
+        traceback.clear();
+        pushEpsilon(current.add(graph.startState(), 0, -1));
+        expandEpsilons(current, 0);
+        searchNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Advances the incremental search with acoustic scores of new frames.
+     */
+    public void advance(SpeechData acousticScores) {
+        long start = System.nanoTime();
+        for (int i = 0; i < acousticScores.vectorCount(); i++) {
+            processFrame(acousticScores.get(i).getData(), null);
+        }
+        searchNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the best hypothesis of the incremental search so far. Final states are not considered.
+     */
+    public Result partialResult() {
+        int best = -1;
+        for (int i = 0; i < current.size(); i++) {
+            if (best < 0 || current.scores[i] > current.scores[best]) {
+                best = i;
+            }
+        }
+        float score = best < 0 ? Float.NEGATIVE_INFINITY : current.scores[best];
+        List<String> words = best < 0 ? Collections.emptyList() : traceback(current.backPointers[best]);
+        return new Result(words, score, frame, realTimeFactor(searchNanos, frame));
+    }
+
+    /**
+     * Finishes the incremental search and returns the best hypothesis that ends in a final state.
+     */
+    public Result end() {
+        int best = bestToken(current);
+        float score = best < 0 ? Float.NEGATIVE_INFINITY :
+                current.scores[best] - finalCost(current.states[best]);
+        List<String> words = best < 0 ? Collections.emptyList() : traceback(current.backPointers[best]);
+        return new Result(words, score, frame, realTimeFactor(searchNanos, frame));
+    }
+
+    /**
+     * Expands tokens of current frame with emitting arcs and then with epsilon arcs. If `lazyScorer` is not null,
+     * `logLikelihoods` is ignored and scores of required pdfs are requested from it.
+     */
+    private void processFrame(float[] logLikelihoods, LazyAcousticScorer lazyScorer) {
+        next.clear();
+        float threshold = current.threshold(maxActive);
+        if (lazyScorer != null) {
+            markActivePdfs(threshold);
+            logLikelihoods = lazyScorer.nextFrame(activePdfMask);
+        }
+        for (int i = 0; i < current.size(); i++) {
+            float tokenScore = current.scores[i];
+            if (tokenScore < threshold) {
+                continue;
+            }
+            int backPointer = current.backPointers[i];
+            cursor.reset(current.states[i]);
+            while (cursor.next()) {
+                int transitionId = cursor.transitionId();
+                if (transitionId == 0) {
+                    continue;
+                }
+                int pdfIndex = pdfIndexes[transitionId];
+                if (pdfIndex < 0) {
+                    continue;
+                }
+                float score = tokenScore - cursor.score() + acousticScale * logLikelihoods[pdfIndex];
+                int target = cursor.targetState();
+                if (next.canImprove(target, score)) {
+                    int wordId = cursor.wordId();
+                    int bp = wordId > 0 ? traceback.add(wordId, frame, backPointer) : backPointer;
+                    pushEpsilon(next.add(target, score, bp));
+                }
+            }
+        }
+        expandEpsilons(next, frame);
+        TokenList tmp = current;
+        current = next;
+        next = tmp;
+        frame++;
+        if (frame % tracebackCompactionInterval == 0) {
+            traceback.compact(current.backPointers, current.size());
+        }
+    }
+
+    /**
+     * Sets mask values of pdfs on emitting arcs of tokens that survive pruning. Mask is cleared first.
+     */
+    private void markActivePdfs(float threshold) {
+        for (int i = 0; i < activePdfCount; i++) {
+            activePdfMask[activePdfs[i]] = 0;
+        }
+        activePdfCount = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (current.scores[i] < threshold) {
+                continue;
+            }
+            cursor.reset(current.states[i]);
+            while (cursor.next()) {
+                int transitionId = cursor.transitionId();
+                if (transitionId == 0) {
+                    continue;
+                }
+                int pdfIndex = pdfIndexes[transitionId];
+                if (pdfIndex >= 0 && activePdfMask[pdfIndex] == 0) {
+                    activePdfMask[pdfIndex] = 1;
+                    activePdfs[activePdfCount++] = pdfIndex;
+                }
+            }
+        }
+    }
+
+    private void pushEpsilon(int tokenIndex) {
+        if (tokenIndex < 0) {
+            return;
+        }
+        if (epsilonStackSize == epsilonStack.length) {
+            epsilonStack = Arrays.copyOf(epsilonStack, epsilonStack.length * 2);
+        }
+        epsilonStack[epsilonStackSize++] = tokenIndex;
+    }
+
+    /**
+     * Follows epsilon input arcs from tokens in epsilon stack until no token can be added or improved.
+     * A token may be pushed more than once if it is improved, it is expanded with its latest score.
+     */
+    private void expandEpsilons(TokenList list, int frame) {
+        while (epsilonStackSize > 0) {
+            int tokenIndex = epsilonStack[--epsilonStackSize];
+            float tokenScore = list.scores[tokenIndex];
+            int backPointer = list.backPointers[tokenIndex];
+            cursor.reset(list.states[tokenIndex]);
+            while (cursor.next()) {
+                if (cursor.transitionId() != 0) {
+                    continue;
+                }
+                float score = tokenScore - cursor.score();
+                int target = cursor.targetState();
+                if (list.canImprove(target, score)) {
+                    int wordId = cursor.wordId();
+                    int bp = wordId > 0 ? traceback.add(wordId, frame, backPointer) : backPointer;
+                    pushEpsilon(list.add(target, score, bp));
+                }
+            }
+        }
+    }
+
+    private float finalCost(int state) {
+        float cost = graph.finalScore(state);
+        return cost == Float.POSITIVE_INFINITY ? 0 : cost;
+    }
+
+    /**
+     * Returns the index of best token that is in a final state. If there is no such token, best of all is returned.
+     * Returns -1 if list is empty.
+     */
+    private int bestToken(TokenList list) {
+        int bestFinal = -1;
+        float bestFinalScore = Float.NEGATIVE_INFINITY;
+        int best = -1;
+        for (int i = 0; i < list.size(); i++) {
+            if (best < 0 || list.scores[i] > list.scores[best]) {
+                best = i;
+            }
+            float finalScore = graph.finalScore(list.states[i]);
+            if (finalScore != Float.POSITIVE_INFINITY && list.scores[i] - finalScore > bestFinalScore) {
+                bestFinal = i;
+                bestFinalScore = list.scores[i] - finalScore;
+            }
+        }
+        if (bestFinal < 0) {
+            logger.warn("No token reached a final state. Best partial hypothesis is used.");
+            return best;
+        }
+        return bestFinal;
+    }
+
+    private List<String> traceback(int record) {
+        List<String> words = new ArrayList<>();
+        while (record >= 0) {
+            words.add(wordLexicon.getWord(traceback.wordId(record)));
+            record = traceback.parent(record);
+        }
+        Collections.reverse(words);
+        return words;
+    }
+
+    private static double realTimeFactor(long elapsedNanos, int frameCount) {
+        if (frameCount == 0) {
+            return 0;
+        }
+        return (elapsedNanos / 1e9) / (frameCount * FRAME_SHIFT_SECONDS);
+    }
 }
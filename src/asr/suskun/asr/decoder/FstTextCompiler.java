@@ -0,0 +1,441 @@
+package suskun.asr.decoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.core.text.AsciiNumbers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts a text fst (output of Kaldi fstprint) to `offsets.bin` and `data.bin` files with multiple threads.
+ * Output is the same as DecodingFst.convertRawBinary output, so it can be loaded with MappedGraph.
+ * <p>
+ * Text file is memory mapped and split to chunks at line boundaries so that all lines of a state are in the same
+ * chunk. First pass counts lines of each chunk in parallel, this gives the location of each chunk's transitions in
+ * the output. Second pass parses lines directly from bytes and writes records to their final positions.
+ * <p>
+ * Lines must be sorted by state id. Offsets are indexed with state ids, states that do not appear in the file
+ * have no transitions.
+ */
+public class FstTextCompiler {
+
+    static final Logger logger = LoggerFactory.getLogger(FstTextCompiler.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 1 << 26;
+    // initial size of the mapped window used for finding chunk boundaries.
+    static final int BOUNDARY_WINDOW_SIZE = 1 << 16;
+    static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    public static void compile(Path fstPath, Path outRoot) throws IOException {
+        compile(fstPath, outRoot, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void compile(Path fstPath, Path outRoot, int threadCount) throws IOException {
+        compile(fstPath, outRoot, threadCount, DEFAULT_CHUNK_SIZE);
+    }
+
+    static void compile(Path fstPath, Path outRoot, int threadCount, int chunkSize) throws IOException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(outRoot);
+        Path offsetPath = outRoot.resolve("offsets.bin");
+        Path dataPath = outRoot.resolve("data.bin");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try (FileChannel input = FileChannel.open(fstPath, StandardOpenOption.READ);
+             FileChannel offsetChannel = FileChannel.open(offsetPath,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel dataChannel = FileChannel.open(dataPath,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            List<Chunk> chunks = split(input, chunkSize);
+            logger.info("{} is split to {} chunks.", fstPath, chunks.size());
+
+            // first pass, count lines.
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                tasks.add(() -> {
+                    chunk.count(input);
+                    return null;
+                });
+            }
+            runAll(executor, tasks);
+
+            // calculate transition offsets of chunks and check state order.
+            long transitionCount = 0;
+            Chunk previous = null;
+            for (Chunk chunk : chunks) {
+                chunk.firstTransition = transitionCount;
+                transitionCount += chunk.lineCount;
+                if (chunk.lineCount == 0) {
+                    continue;
+                }
+                if (previous == null) {
+                    chunk.fillFrom = 0;
+                } else {
+                    if (chunk.firstState <= previous.lastState) {
+                        throw new IllegalStateException("Fst lines are not sorted by state. State " +
+                                chunk.firstState + " comes after " + previous.lastState);
+                    }
+                    previous.nextFirstState = chunk.firstState;
+                }
+                previous = chunk;
+            }
+            if (transitionCount > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many transitions: " + transitionCount);
+            }
+            int stateCount = previous == null ? 0 : previous.lastState + 1;
+            if (previous != null) {
+                previous.nextFirstState = stateCount;
+            }
+
+            writeInt(offsetChannel, 0, stateCount);
+            writeInt(dataChannel, 0, (int) transitionCount);
+
+            // second pass, parse and write.
+            tasks.clear();
+            for (Chunk chunk : chunks) {
+                if (chunk.lineCount == 0) {
+                    continue;
+                }
+                tasks.add(() -> {
+                    chunk.convert(input, offsetChannel, dataChannel);
+                    return null;
+                });
+            }
+            runAll(executor, tasks);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            logger.info("{} lines, {} states converted in {} seconds. {} lines per second.",
+                    transitionCount, stateCount, String.format("%.2f", seconds),
+                    String.format("%.0f", transitionCount / seconds));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void runAll(ExecutorService executor, List<Callable<Void>> tasks) throws IOException {
+        List<Future<Void>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Conversion is interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static void writeInt(FileChannel channel, long position, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(value).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Splits the file to chunks of approximately `chunkSize` bytes. Chunk boundaries are moved forward until a
+     * line of a different state starts.
+     */
+    static List<Chunk> split(FileChannel input, int chunkSize) throws IOException {
+        long size = input.size();
+        List<Chunk> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : findBoundary(input, start + chunkSize, size);
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long findBoundary(FileChannel input, long position, long size) throws IOException {
+        long windowSize = BOUNDARY_WINDOW_SIZE;
+        while (true) {
+            long mapStart = position - 1;
+            long mapEnd = Math.min(size, position + windowSize);
+            MappedByteBuffer buffer = input.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            int boundary = findBoundary(buffer, mapEnd == size);
+            if (boundary >= 0) {
+                return mapStart + boundary;
+            }
+            if (windowSize >= Integer.MAX_VALUE / 2) {
+                throw new IllegalStateException("Cannot find a chunk boundary after " + position);
+            }
+            windowSize *= 2;
+        }
+    }
+
+    /**
+     * Finds the first line start after position 1 that belongs to a different state than the previous
+     * non empty line. If buffer is not large enough for the decision, returns -1.
+     */
+    private static int findBoundary(ByteBuffer buffer, boolean endOfFile) {
+        int limit = buffer.limit();
+        int i = 1;
+        if (buffer.get(0) != '\n') {
+            i = nextLineStart(buffer, 1);
+        }
+        int state = -1;
+        while (i >= 0 && i < limit) {
+            int tokenStart = skipSpaces(buffer, i, limit);
+            int tokenEnd = tokenEnd(buffer, tokenStart, limit);
+            if (tokenEnd == limit && !endOfFile) {
+                return -1;
+            }
+            if (tokenEnd > tokenStart) {
+                int s = AsciiNumbers.parseInt(buffer, tokenStart, tokenEnd);
+                if (state == -1) {
+                    state = s;
+                } else if (s != state) {
+                    return i;
+                }
+            }
+            i = nextLineStart(buffer, i);
+        }
+        return endOfFile && (i < 0 || i == limit) ? limit : -1;
+    }
+
+    // returns the index after the next new line character. If there is no new line, returns -1
+    private static int nextLineStart(ByteBuffer buffer, int from) {
+        int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // skips spaces and tabs, but not new lines.
+    private static int skipSpaces(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        while (i < limit && (buffer.get(i) == ' ' || buffer.get(i) == '\t' || buffer.get(i) == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int tokenEnd(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        while (i < limit && !AsciiNumbers.isWhiteSpace(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    static class Chunk {
+        final long start;
+        final long end;
+
+        int lineCount;
+        int firstState = -1;
+        int lastState = -1;
+
+        // index of the first transition of this chunk in data file.
+        long firstTransition;
+        // offsets of states in [fillFrom, nextFirstState) are written by this chunk.
+        int fillFrom = -1;
+        int nextFirstState;
+
+        // start and end positions of the tokens of the current line.
+        private final int[] tokens = new int[10];
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        private MappedByteBuffer map(FileChannel input) throws IOException {
+            return input.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+
+        void count(FileChannel input) throws IOException {
+            MappedByteBuffer buffer = map(input);
+            int limit = buffer.limit();
+            int i = 0;
+            int previousState = -1;
+            while (i < limit) {
+                int lineEnd = lineEnd(buffer, i, limit);
+                int tokenStart = skipSpaces(buffer, i, lineEnd);
+                int tokenEnd = tokenEnd(buffer, tokenStart, lineEnd);
+                if (tokenEnd > tokenStart) {
+                    int state = AsciiNumbers.parseInt(buffer, tokenStart, tokenEnd);
+                    if (state < previousState) {
+                        throw new IllegalStateException("Fst lines are not sorted by state. State " +
+                                state + " comes after " + previousState);
+                    }
+                    if (firstState == -1) {
+                        firstState = state;
+                    }
+                    previousState = state;
+                    lineCount++;
+                }
+                i = lineEnd + 1;
+            }
+            lastState = previousState;
+            fillFrom = firstState;
+        }
+
+        void convert(FileChannel input, FileChannel offsetChannel, FileChannel dataChannel) throws IOException {
+            MappedByteBuffer buffer = map(input);
+            BufferedWriter offsets = new BufferedWriter(offsetChannel, 4 + fillFrom * 4L);
+            BufferedWriter data = new BufferedWriter(dataChannel,
+                    4 + firstTransition * MappedGraph.TRANSITION_BYTE_LENGTH);
+
+            int limit = buffer.limit();
+            int transition = (int) firstTransition;
+            int nextOffsetState = fillFrom;
+            int i = 0;
+            while (i < limit) {
+                int lineEnd = lineEnd(buffer, i, limit);
+                int tokenCount = tokenize(buffer, i, lineEnd);
+                i = lineEnd + 1;
+                if (tokenCount == 0) {
+                    continue;
+                }
+                int state = AsciiNumbers.parseInt(buffer, tokens[0], tokens[1]);
+                while (nextOffsetState <= state) {
+                    offsets.putInt(transition);
+                    nextOffsetState++;
+                }
+                int targetState = -1;
+                int transitionId = -1;
+                int wordId = -1;
+                float score = 0;
+                switch (tokenCount) {
+                    case 1:
+                        // final state without weight.
+                        break;
+                    case 2:
+                        score = AsciiNumbers.parseFloat(buffer, tokens[2], tokens[3]);
+                        break;
+                    case 4:
+                    case 5:
+                        targetState = AsciiNumbers.parseInt(buffer, tokens[2], tokens[3]);
+                        transitionId = AsciiNumbers.parseInt(buffer, tokens[4], tokens[5]);
+                        wordId = AsciiNumbers.parseInt(buffer, tokens[6], tokens[7]);
+                        if (tokenCount == 5) {
+                            score = AsciiNumbers.parseFloat(buffer, tokens[8], tokens[9]);
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Cannot identify line with " + tokenCount +
+                                " tokens at position " + (start + tokens[0]));
+                }
+                data.putInt(targetState);
+                data.putInt(transitionId);
+                data.putInt(wordId);
+                data.putFloat(score);
+                transition++;
+            }
+            // states without transitions after the last state of this chunk.
+            while (nextOffsetState < nextFirstState) {
+                offsets.putInt(transition);
+                nextOffsetState++;
+            }
+            offsets.flush();
+            data.flush();
+        }
+
+        // finds token start and end positions of a line. Returns token count.
+        private int tokenize(ByteBuffer buffer, int from, int lineEnd) {
+            int count = 0;
+            int i = from;
+            while (i < lineEnd) {
+                while (i < lineEnd && AsciiNumbers.isWhiteSpace(buffer.get(i))) {
+                    i++;
+                }
+                if (i == lineEnd) {
+                    break;
+                }
+                int tokenEnd = tokenEnd(buffer, i, lineEnd);
+                if (count == 5) {
+                    // let the caller report the line as invalid.
+                    return count + 1;
+                }
+                tokens[count * 2] = i;
+                tokens[count * 2 + 1] = tokenEnd;
+                count++;
+                i = tokenEnd;
+            }
+            return count;
+        }
+
+        private static int lineEnd(ByteBuffer buffer, int from, int limit) {
+            int i = from;
+            while (i < limit && buffer.get(i) != '\n') {
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Writes big endian values to a fixed position of a file channel through a buffer.
+     * Positional writes allow chunks to write to the same file concurrently.
+     */
+    static class BufferedWriter {
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        long position;
+
+        BufferedWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putFloat(value);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        compile(Paths.get("../../data/large-16khz/HCLG.fst.txt"), Paths.get("../../data/large-16khz/fst-bin"));
+    }
+}
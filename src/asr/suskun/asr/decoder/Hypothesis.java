@@ -5,6 +5,8 @@ public class Hypothesis implements Comparable<Hypothesis> {
     Hypothesis previous;
     int stateId;
     float score;
+    // word id of the arc that generated this hypothesis. 0 if there is no word output.
+    int wordId;
 
     public Hypothesis(Hypothesis previous, int stateId, float score) {
         this.previous = previous;
@@ -12,6 +14,13 @@ public class Hypothesis implements Comparable<Hypothesis> {
         this.score = score;
     }
 
+    public Hypothesis(Hypothesis previous, int stateId, float score, int wordId) {
+        this.previous = previous;
+        this.stateId = stateId;
+        this.score = score;
+        this.wordId = wordId;
+    }
+
     public float getScore() {
         return score;
     }
@@ -0,0 +1,221 @@
+package suskun.asr.decoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A decoding graph that memory maps `offsets.bin` and `data.bin` files generated with
+ * DecodingFst.convertRawBinary. Nothing is copied to the heap, so loading is almost instant and
+ * several processes that use the same graph share the operating system page cache.
+ * <p>
+ * File layout (big endian):
+ * offsets.bin : [state count] [index of the first transition of each state]...
+ * data.bin    : [transition count] [target state, transition id, word id, score]...
+ * <p>
+ * Final state weights are stored as transitions with target state -1. State ids are the indexes of the offsets.
+ */
+public class MappedGraph implements DecodingGraph {
+
+    public static final int TRANSITION_BYTE_LENGTH = 16;
+
+    // amount of transitions in a mapped data segment is 2^DEFAULT_SEGMENT_SHIFT (1GB per segment).
+    // A single MappedByteBuffer cannot be larger than 2GB so large graphs are mapped with multiple segments.
+    static final int DEFAULT_SEGMENT_SHIFT = 26;
+
+    static final Logger logger = LoggerFactory.getLogger(MappedGraph.class);
+
+    private final IntBuffer offsets;
+    private final ByteBuffer[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final int stateCount;
+    private final int transitionCount;
+
+    private MappedGraph(IntBuffer offsets, ByteBuffer[] segments, int segmentShift, int transitionCount) {
+        this.offsets = offsets;
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.stateCount = offsets.limit();
+        this.transitionCount = transitionCount;
+    }
+
+    public static MappedGraph loadFromDirectory(Path dir) throws IOException {
+        return loadFromDirectory(dir, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    static MappedGraph loadFromDirectory(Path dir, int segmentShift) throws IOException {
+        Path offsetPath = dir.resolve("offsets.bin");
+        Path dataPath = dir.resolve("data.bin");
+
+        IntBuffer offsets;
+        try (FileChannel channel = FileChannel.open(offsetPath, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4);
+            int stateCount = header.getInt(0);
+            long expectedSize = 4L + stateCount * 4L;
+            if (channel.size() != expectedSize) {
+                throw new IllegalStateException("Offset file " + offsetPath + " size is " + channel.size() +
+                        " but expected size for " + stateCount + " states is " + expectedSize);
+            }
+            offsets = channel.map(FileChannel.MapMode.READ_ONLY, 4, stateCount * 4L).asIntBuffer();
+        }
+
+        ByteBuffer[] segments;
+        int transitionCount;
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4);
+            transitionCount = header.getInt(0);
+            long expectedSize = 4L + (long) transitionCount * TRANSITION_BYTE_LENGTH;
+            if (channel.size() != expectedSize) {
+                throw new IllegalStateException("Data file " + dataPath + " size is " + channel.size() +
+                        " but expected size for " + transitionCount + " transitions is " + expectedSize);
+            }
+            long segmentTransitionCount = 1L << segmentShift;
+            segments = new ByteBuffer[(int) ((transitionCount + segmentTransitionCount - 1) / segmentTransitionCount)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * segmentTransitionCount;
+                long count = Math.min(segmentTransitionCount, transitionCount - start);
+                segments[i] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        4 + start * TRANSITION_BYTE_LENGTH,
+                        count * TRANSITION_BYTE_LENGTH);
+            }
+        }
+        logger.info("Graph with {} states and {} transitions is mapped.", offsets.limit(), transitionCount);
+        return new MappedGraph(offsets, segments, segmentShift, transitionCount);
+    }
+
+    @Override
+    public int stateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int transitionCount() {
+        return transitionCount;
+    }
+
+    @Override
+    public int startState() {
+        return 0;
+    }
+
+    /**
+     * Returns the amount of transitions of a state, including the final weight transition if there is any.
+     */
+    public int transitionCount(int state) {
+        return transitionEnd(state) - offsets.get(state);
+    }
+
+    private int transitionEnd(int state) {
+        return state == stateCount - 1 ? transitionCount : offsets.get(state + 1);
+    }
+
+    /**
+     * Returns the final weight of the state. If state is not final, returns Float.POSITIVE_INFINITY
+     */
+    @Override
+    public float finalScore(int state) {
+        int end = transitionEnd(state);
+        for (int i = offsets.get(state); i < end; i++) {
+            if (targetState(i) == -1) {
+                return score(i);
+            }
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public boolean isFinal(int state) {
+        return finalScore(state) != Float.POSITIVE_INFINITY;
+    }
+
+    private int targetState(int transitionIndex) {
+        return segments[transitionIndex >>> segmentShift]
+                .getInt((transitionIndex & segmentMask) * TRANSITION_BYTE_LENGTH);
+    }
+
+    private float score(int transitionIndex) {
+        return segments[transitionIndex >>> segmentShift]
+                .getFloat((transitionIndex & segmentMask) * TRANSITION_BYTE_LENGTH + 12);
+    }
+
+    @Override
+    public ArcCursor newCursor() {
+        return new ArcCursor();
+    }
+
+    public final class ArcCursor implements DecodingGraph.ArcCursor {
+        private int index;
+        private int end;
+        private int targetState;
+        private int transitionId;
+        private int wordId;
+        private float score;
+
+        private ArcCursor() {
+        }
+
+        @Override
+        public void reset(int state) {
+            this.index = offsets.get(state);
+            this.end = transitionEnd(state);
+        }
+
+        @Override
+        public boolean next() {
+            while (index < end) {
+                ByteBuffer segment = segments[index >>> segmentShift];
+                int k = (index & segmentMask) * TRANSITION_BYTE_LENGTH;
+                index++;
+                int target = segment.getInt(k);
+                if (target == -1) {
+                    continue;
+                }
+                this.targetState = target;
+                this.transitionId = segment.getInt(k + 4);
+                this.wordId = segment.getInt(k + 8);
+                this.score = segment.getFloat(k + 12);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int targetState() {
+            return targetState;
+        }
+
+        @Override
+        public int transitionId() {
+            return transitionId;
+        }
+
+        @Override
+        public int wordId() {
+            return wordId;
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        MappedGraph graph = loadFromDirectory(Paths.get("../../data/large-16khz/fst-bin"));
+        ArcCursor cursor = graph.newCursor();
+        cursor.reset(graph.stateCount() - 1);
+        while (cursor.next()) {
+            logger.info("{} {} {} {}", cursor.targetState(), cursor.transitionId(), cursor.wordId(), cursor.score());
+        }
+    }
+}
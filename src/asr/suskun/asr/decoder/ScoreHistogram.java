@@ -0,0 +1,76 @@
+package suskun.asr.decoder;
+
+import java.util.Arrays;
+
+/**
+ * A reusable score histogram for finding max-active pruning cut-off in linear time.
+ * Scores in range [max - range, max] are placed to equal width bins, bin 0 contains the best scores.
+ * After scores are added, cutoffBin(k) returns the bin that contains the k-th best score. All scores in better bins
+ * survive pruning, scores in the cut-off bin partially survive.
+ * <p>
+ * If range is zero or not finite (for example all scores are equal), all scores are placed in bin 0.
+ */
+class ScoreHistogram {
+
+    public static final int DEFAULT_BIN_COUNT = 256;
+
+    private final int[] counts;
+    private float max;
+    private float inverseBinWidth;
+
+    ScoreHistogram() {
+        this(DEFAULT_BIN_COUNT);
+    }
+
+    ScoreHistogram(int binCount) {
+        if (binCount < 1) {
+            throw new IllegalArgumentException("Bin count must be positive. But it is " + binCount);
+        }
+        this.counts = new int[binCount];
+    }
+
+    public int binCount() {
+        return counts.length;
+    }
+
+    /**
+     * Clears the counts and sets the score range of the histogram.
+     */
+    public void reset(float max, float range) {
+        Arrays.fill(counts, 0);
+        this.max = max;
+        float width = range / counts.length;
+        this.inverseBinWidth = (width > 0 && !Float.isInfinite(width) && !Float.isNaN(width)) ? 1f / width : 0;
+    }
+
+    /**
+     * Returns the bin index of the score. Values outside of the range are placed to first or last bin.
+     */
+    public int bin(float score) {
+        float d = (max - score) * inverseBinWidth;
+        // this check also covers NaN values.
+        if (!(d > 0)) {
+            return 0;
+        }
+        return d >= counts.length ? counts.length - 1 : (int) d;
+    }
+
+    public void add(float score) {
+        counts[bin(score)]++;
+    }
+
+    /**
+     * Returns the index of the bin that contains the `maxCount`-th best score.
+     * If there are less than `maxCount` scores in histogram, returns -1
+     */
+    public int cutoffBin(int maxCount) {
+        int total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            if (total >= maxCount) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
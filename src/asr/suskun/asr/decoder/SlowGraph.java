@@ -12,7 +12,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
-// Used for fast loading very large fsts. Should not be used in actual system.
+// Used for fast loading very large fsts. Should not be used in actual system, use MappedGraph instead.
 public class SlowGraph {
 
     public static final int TRANSITION_BYTE_LENGTH = 16;
@@ -0,0 +1,108 @@
+package suskun.asr.decoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.asr.acoustic.FeatureExtractors;
+import suskun.audio.SpeechData;
+import suskun.audio.SpeechSegment;
+import suskun.core.FloatData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Recognizes speech from audio chunks as they arrive. Features are extracted in live mode, scored and decoded
+ * incrementally, so a partial hypothesis is available after each chunk.
+ * Usage:
+ * <pre>
+ * StreamingRecognizer recognizer = new StreamingRecognizer(decoder, 16000);
+ * while (...) {
+ *     FstDecoder.Result partial = recognizer.accept(samples);
+ * }
+ * FstDecoder.Result result = recognizer.finish();
+ * </pre>
+ * Instances use the decoder for a single stream at a time. After finish(), a new stream can be started.
+ * Instances are not thread safe.
+ */
+public class StreamingRecognizer {
+
+    static final Logger logger = LoggerFactory.getLogger(StreamingRecognizer.class);
+
+    final FstDecoder decoder;
+    final FeatureExtractors.LiveWindowDeltaMfccExtractor featureExtractor;
+    // converts feature vectors to acoustic score vectors.
+    final UnaryOperator<SpeechData> scorer;
+
+    private boolean started;
+    private int sampleCount;
+
+    public StreamingRecognizer(FstDecoder decoder, int samplingRate) {
+        this(decoder,
+                new FeatureExtractors.LiveWindowDeltaMfccExtractor(
+                        samplingRate, decoder.acousticModel.getDnn().inputDimension()),
+                decoder.acousticModel.getScorer()::score);
+    }
+
+    StreamingRecognizer(
+            FstDecoder decoder,
+            FeatureExtractors.LiveWindowDeltaMfccExtractor featureExtractor,
+            UnaryOperator<SpeechData> scorer) {
+        this.decoder = decoder;
+        this.featureExtractor = featureExtractor;
+        this.scorer = scorer;
+    }
+
+    /**
+     * Processes a chunk of audio samples and returns the partial hypothesis.
+     */
+    public FstDecoder.Result accept(float[] samples) {
+        if (!started) {
+            decoder.begin();
+            started = true;
+            sampleCount = 0;
+        }
+        sampleCount += samples.length;
+        advance(featureExtractor.process(samples));
+        return decoder.partialResult();
+    }
+
+    /**
+     * Processes the remaining features of the stream and returns the final hypothesis.
+     */
+    public FstDecoder.Result finish() {
+        if (!started) {
+            decoder.begin();
+            sampleCount = 0;
+        }
+        advance(featureExtractor.flush());
+        started = false;
+        FstDecoder.Result result = decoder.end();
+        logger.debug("Stream with {} samples is decoded. Frame count = {}, Search RTF = {}",
+                sampleCount, result.frameCount, String.format("%.3f", result.realTimeFactor));
+        return result;
+    }
+
+    private void advance(List<FloatData> features) {
+        if (features.isEmpty()) {
+            return;
+        }
+        decoder.advance(scorer.apply(new SpeechData(SpeechSegment.unknown("stream"), features)));
+    }
+
+    /**
+     * Recognizes a wav file by feeding it in chunks of `chunkDurationMs` milliseconds. Partial results are logged.
+     */
+    public FstDecoder.Result recognize(Path wavPath, int chunkDurationMs) throws IOException {
+        float[] samples = SpeechData.fromWavfile(wavPath).get(0).getData();
+        int chunkSize = (int) (featureExtractor.getSamplingRate() * chunkDurationMs / 1000L);
+        for (int i = 0; i < samples.length; i += chunkSize) {
+            float[] chunk = new float[Math.min(chunkSize, samples.length - i)];
+            System.arraycopy(samples, i, chunk, 0, chunk.length);
+            FstDecoder.Result partial = accept(chunk);
+            logger.info("{} ms : {}", (i + chunk.length) * 1000L / featureExtractor.getSamplingRate(), partial);
+        }
+        return finish();
+    }
+}
@@ -0,0 +1,221 @@
+package suskun.asr.decoder;
+
+import com.google.common.math.IntMath;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * An active list that keeps tokens in parallel primitive arrays instead of Hypothesis objects.
+ * A token is represented with its index and has a state, a score and a back pointer value.
+ * Tokens are located by state ids with a linear probing hash table that keeps token indexes.
+ * <p>
+ * Viterbi merge semantics is the same as ActiveList: there is only one token for a state and it carries the
+ * best score. After initial expansions, clear() and add() calls do not allocate memory, so two instances can be
+ * used as current and next frame lists.
+ */
+class TokenList {
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 4096 * 2;
+    public static final float LOAD_FACTOR = 0.5f;
+    public static final int DEFAULT_MIN_TOKEN_COUNT = 1000;
+
+    final float beamSize;
+    final int minTokenCount;
+
+    int[] states;
+    float[] scores;
+    int[] backPointers;
+    // hash table slot of each token. Used for clearing the table quickly.
+    private int[] slots;
+    private int size;
+
+    // hash table contains token index + 1. 0 means empty slot.
+    private int[] table;
+    private int modulo;
+    private int expandLimit;
+
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+
+    // used for finding the histogram pruning threshold.
+    private final ScoreHistogram histogram = new ScoreHistogram();
+
+    TokenList(float beamSize) {
+        this(beamSize, DEFAULT_INITIAL_CAPACITY, DEFAULT_MIN_TOKEN_COUNT);
+    }
+
+    TokenList(float beamSize, int initialCapacity, int minTokenCount) {
+        this.beamSize = beamSize;
+        this.minTokenCount = minTokenCount;
+        int capacity = IntMath.isPowerOfTwo(initialCapacity) ?
+                initialCapacity : IntMath.pow(2, IntMath.log2(initialCapacity, RoundingMode.UP));
+        this.table = new int[capacity];
+        this.modulo = capacity - 1;
+        this.expandLimit = (int) (capacity * LOAD_FACTOR);
+        this.states = new int[expandLimit];
+        this.scores = new float[expandLimit];
+        this.backPointers = new int[expandLimit];
+        this.slots = new int[expandLimit];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    int capacity() {
+        return table.length;
+    }
+
+    private int firstProbe(int hashCode) {
+        return (hashCode ^ ((hashCode << 5) + (hashCode >>> 2))) & modulo;
+    }
+
+    private int nextProbe(int previous, int count) {
+        return (previous + count) & modulo;
+    }
+
+    /**
+     * Returns the slot of the token with given state. If there is no such token, returns -(empty slot index)-1
+     */
+    private int locate(int state) {
+        int count = 0;
+        int slot = firstProbe(state);
+        while (true) {
+            int t = table[slot];
+            if (t == 0) {
+                return -slot - 1;
+            }
+            if (states[t - 1] == state) {
+                return slot;
+            }
+            slot = nextProbe(slot, ++count);
+        }
+    }
+
+    /**
+     * Returns index of the token for the state. If there is no such token, returns -1
+     */
+    public int indexOf(int state) {
+        int slot = locate(state);
+        return slot < 0 ? -1 : table[slot] - 1;
+    }
+
+    /**
+     * Checks if a token with given state and score would be added or would improve an existing one.
+     */
+    public boolean canImprove(int state, float score) {
+        if (size > minTokenCount && max - score > beamSize) {
+            return false;
+        }
+        int slot = locate(state);
+        return slot < 0 || scores[table[slot] - 1] < score;
+    }
+
+    /**
+     * Adds a token or updates the existing token for the state if score is better (Viterbi merge).
+     *
+     * @return index of the added or updated token. If token is pruned or it is worse than the existing one, -1.
+     */
+    public int add(int state, float score, int backPointer) {
+        if (size > minTokenCount && max - score > beamSize) {
+            return -1;
+        }
+        int slot = locate(state);
+        int index;
+        if (slot < 0) {
+            slot = -slot - 1;
+            index = size;
+            states[index] = state;
+            scores[index] = score;
+            backPointers[index] = backPointer;
+            slots[index] = slot;
+            table[slot] = index + 1;
+            size++;
+        } else {
+            index = table[slot] - 1;
+            if (scores[index] >= score) {
+                return -1;
+            }
+            scores[index] = score;
+            backPointers[index] = backPointer;
+        }
+        if (min > score) {
+            min = score;
+        }
+        if (max < score) {
+            max = score;
+        }
+        if (size == expandLimit) {
+            expand();
+        }
+        return index;
+    }
+
+    private void expand() {
+        int capacity = table.length * 2;
+        this.table = new int[capacity];
+        this.modulo = capacity - 1;
+        this.expandLimit = (int) (capacity * LOAD_FACTOR);
+        this.states = Arrays.copyOf(states, expandLimit);
+        this.scores = Arrays.copyOf(scores, expandLimit);
+        this.backPointers = Arrays.copyOf(backPointers, expandLimit);
+        this.slots = Arrays.copyOf(slots, expandLimit);
+        for (int i = 0; i < size; i++) {
+            int slot = -locate(states[i]) - 1;
+            table[slot] = i + 1;
+            slots[i] = slot;
+        }
+    }
+
+    /**
+     * Removes all tokens. Only used slots of the hash table are cleared.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            table[slots[i]] = 0;
+        }
+        size = 0;
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Returns the pruning threshold. Tokens with scores lower than threshold should be discarded.
+     * Threshold is max - beam. If there are more than maxActive tokens in beam, it is the lowest score in the
+     * histogram bin that contains the maxActive-th best score. So slightly more than maxActive tokens may survive.
+     * This is done in linear time.
+     */
+    public float threshold(int maxActive) {
+        float threshold = max - beamSize;
+        if (size <= maxActive) {
+            return threshold;
+        }
+        histogram.reset(max, Math.min(beamSize, max - min));
+        for (int i = 0; i < size; i++) {
+            if (scores[i] >= threshold) {
+                histogram.add(scores[i]);
+            }
+        }
+        int cutoffBin = histogram.cutoffBin(maxActive);
+        if (cutoffBin < 0) {
+            return threshold;
+        }
+        float cutoff = max;
+        for (int i = 0; i < size; i++) {
+            float score = scores[i];
+            if (score >= threshold && score < cutoff && histogram.bin(score) == cutoffBin) {
+                cutoff = score;
+            }
+        }
+        return cutoff;
+    }
+}
@@ -0,0 +1,109 @@
+package suskun.asr.decoder;
+
+import java.util.Arrays;
+
+/**
+ * Keeps word level back pointer records of a decoder in a single int array.
+ * Each record contains a word id, frame index and parent record index (-1 for no parent). Records are only
+ * appended, so parent of a record always has a smaller index.
+ * <p>
+ * Records that are not reachable from active tokens are garbage. compact() removes them with a mark and compact
+ * pass and rewrites token back pointers, so memory use depends on the amount of active paths, not on the
+ * length of the audio.
+ */
+class TracebackArena {
+
+    static final int RECORD_SIZE = 3;
+
+    private int[] records;
+    private int size;
+
+    // Used in compaction. Contains new index of a record or -1 if record is not reachable.
+    private int[] remap;
+
+    TracebackArena() {
+        this(1024);
+    }
+
+    TracebackArena(int initialCapacity) {
+        records = new int[initialCapacity * RECORD_SIZE];
+        remap = new int[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a record and returns its index.
+     */
+    public int add(int wordId, int frame, int parent) {
+        int k = size * RECORD_SIZE;
+        if (k + RECORD_SIZE > records.length) {
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+        records[k] = wordId;
+        records[k + 1] = frame;
+        records[k + 2] = parent;
+        return size++;
+    }
+
+    public int wordId(int index) {
+        return records[index * RECORD_SIZE];
+    }
+
+    public int frame(int index) {
+        return records[index * RECORD_SIZE + 1];
+    }
+
+    public int parent(int index) {
+        return records[index * RECORD_SIZE + 2];
+    }
+
+    /**
+     * Removes records that are not reachable from the first `rootCount` values of `roots`.
+     * Root values are record indexes and they are rewritten in place with indexes after compaction.
+     * Negative root values are ignored.
+     */
+    public void compact(int[] roots, int rootCount) {
+        if (remap.length < size) {
+            remap = new int[records.length / RECORD_SIZE];
+        }
+        Arrays.fill(remap, 0, size, -1);
+
+        // mark. Walking stops when an already marked record is reached.
+        for (int i = 0; i < rootCount; i++) {
+            int r = roots[i];
+            while (r >= 0 && remap[r] == -1) {
+                remap[r] = 0;
+                r = records[r * RECORD_SIZE + 2];
+            }
+        }
+
+        // compact. Parents have smaller indexes so they are already moved when a child is processed.
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (remap[i] == -1) {
+                continue;
+            }
+            int from = i * RECORD_SIZE;
+            int to = newSize * RECORD_SIZE;
+            int parent = records[from + 2];
+            records[to] = records[from];
+            records[to + 1] = records[from + 1];
+            records[to + 2] = parent < 0 ? -1 : remap[parent];
+            remap[i] = newSize++;
+        }
+
+        for (int i = 0; i < rootCount; i++) {
+            if (roots[i] >= 0) {
+                roots[i] = remap[roots[i]];
+            }
+        }
+        size = newSize;
+    }
+}
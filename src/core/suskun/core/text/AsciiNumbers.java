@@ -0,0 +1,153 @@
+package suskun.core.text;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses numbers directly from ASCII bytes of a ByteBuffer without creating String objects.
+ * All methods use absolute positions, so buffer state is not changed and a buffer can be shared between threads.
+ */
+public final class AsciiNumbers {
+
+    // powers of ten that are exact in float. 5^10 is smaller than 2^24.
+    private static final float[] FLOAT_POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f,
+            1e10f};
+
+    // mantissas up to this value are exact in float.
+    private static final long MAX_EXACT_MANTISSA = 1 << 24;
+
+    // more digits than this may overflow the long mantissa. Remaining digits only change the exponent.
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private AsciiNumbers() {
+    }
+
+    public static boolean isWhiteSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Parses an int value from bytes in [start, end).
+     *
+     * @throws NumberFormatException if bytes do not represent an integer.
+     */
+    public static int parseInt(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Cannot parse integer from [" + asString(buffer, start, end) + "]");
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Cannot parse integer from [" + asString(buffer, start, end) + "]");
+            }
+            result = result * 10 + digit;
+            if (result > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("Integer overflow in [" + asString(buffer, start, end) + "]");
+            }
+        }
+        result = negative ? -result : result;
+        if (result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Integer overflow in [" + asString(buffer, start, end) + "]");
+        }
+        return (int) result;
+    }
+
+    /**
+     * Parses a float value from bytes in [start, end). Decimal and scientific notations are parsed directly.
+     * Other representations (like "Infinity" or "NaN") are passed to Float.parseFloat.
+     * If the digits without the decimal point are at most 2^24 and the decimal exponent is in [-10, 10], the value
+     * is calculated with a single float operation of exact operands, which is correctly rounded. Other values are
+     * passed to Float.parseFloat too, so the result is always the same as Float.parseFloat.
+     *
+     * @throws NumberFormatException if bytes do not represent a float.
+     */
+    public static float parseFloat(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int exponent = 0;
+        boolean hasDigit = false;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                hasDigit = true;
+                if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        mantissaDigits++;
+                    }
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else if (!fraction) {
+                    exponent++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!hasDigit) {
+            return Float.parseFloat(asString(buffer, start, end));
+        }
+        if (i < end) {
+            byte b = buffer.get(i);
+            if (b != 'e' && b != 'E') {
+                return Float.parseFloat(asString(buffer, start, end));
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == end) {
+                throw new NumberFormatException("Cannot parse float from [" + asString(buffer, start, end) + "]");
+            }
+            int e = 0;
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("Cannot parse float from [" + asString(buffer, start, end) + "]");
+                }
+                // large exponents overflow or underflow anyway.
+                if (e < 10000) {
+                    e = e * 10 + digit;
+                }
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (mantissa > MAX_EXACT_MANTISSA || Math.abs(exponent) >= FLOAT_POWERS_OF_TEN.length) {
+            return mantissa == 0 ? (negative ? -0f : 0f) : Float.parseFloat(asString(buffer, start, end));
+        }
+        float value = mantissa;
+        if (exponent < 0) {
+            value /= FLOAT_POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            value *= FLOAT_POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    private static String asString(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -76,6 +76,28 @@ public class DeltaFeatures {
         if (current.size() < size * 2 + 1) {
             return new ArrayList<>(0);
         }
+        return calculate();
+    }
+
+    /**
+     * In live mode, last frame is repeated `size` times and delta features of remaining frames are returned.
+     * After this, instance can be used for a new input stream. In batch mode, returns an empty list.
+     */
+    public List<FloatData> flush() {
+        if (!live || current.isEmpty()) {
+            current = new ArrayList<>();
+            return new ArrayList<>(0);
+        }
+        FloatData last = current.get(current.size() - 1);
+        for (int i = 0; i < size; i++) {
+            current.add(last);
+        }
+        List<FloatData> result = current.size() < size * 2 + 1 ? new ArrayList<>(0) : calculate();
+        current = new ArrayList<>();
+        return result;
+    }
+
+    private List<FloatData> calculate() {
 
         int inputVectorLength = current.get(0).length();
 
@@ -4,6 +4,10 @@ import suskun.core.FloatData;
 import suskun.core.FloatDataProcessor;
 import suskun.core.math.LogMath;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Calculates energy spectrum values. Adapted from Kaldi code.
  */
@@ -12,9 +16,12 @@ public class EnergySpectrum implements FloatDataProcessor {
     public final FastFourierTransform fft;
     public final boolean applyLog;
 
+    // complex transform of twice the size, used for calculating two frames at once. Created on first batch call.
+    // It is immutable, so creating it more than once in concurrent calls is harmless.
+    private volatile RealFastFourierTransform packedFft;
+
     public EnergySpectrum(FastFourierTransform fft) {
-        this.fft = fft;
-        this.applyLog = false;
+        this(fft, false);
     }
 
     public EnergySpectrum(FastFourierTransform fft, boolean applyLog) {
@@ -29,6 +36,20 @@ public class EnergySpectrum implements FloatDataProcessor {
 
         float[] fftValues = input.getData();
         float[] energy = new float[fftValues.length / 2 + 1];
+        energy(fftValues, energy);
+        return input.copyFor(energy);
+    }
+
+    /**
+     * Writes energy values of interleaved FFT values to `energy` array. Length of `energy` must be
+     * fftValues.length / 2 + 1. Log is applied if `applyLog` is set.
+     */
+    public void energy(float[] fftValues, float[] energy) {
+
+        if (energy.length != fftValues.length / 2 + 1) {
+            throw new IllegalArgumentException("Energy array length must be " + (fftValues.length / 2 + 1) +
+                    ". But it is " + energy.length);
+        }
 
         float first = fftValues[0] * fftValues[0];
         float last = fftValues[1] * fftValues[1];
@@ -44,7 +65,80 @@ public class EnergySpectrum implements FloatDataProcessor {
         if (applyLog) {
             LogMath.LINEAR_TO_LOG_FLOAT.convertInPlace(energy);
         }
+    }
+
+    /**
+     * Calculates energy spectrum of all frames. Two frames are calculated with a single complex FFT, so results
+     * are not bit identical to calling process for each frame. They match within float rounding, about 1e-4
+     * relative error (1e-2 absolute for values near zero, 1e-3 after log). Input is not modified.
+     */
+    public List<FloatData> processAll(List<FloatData> input) {
+        float[][] frames = new float[input.size()][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = input.get(i).getData();
+        }
+        float[][] energies = process(frames);
+        List<FloatData> result = new ArrayList<>(energies.length);
+        for (int i = 0; i < energies.length; i++) {
+            result.add(input.get(i).copyFor(energies[i]));
+        }
+        return result;
+    }
 
-        return input.copyFor(energy);
+    /**
+     * Calculates energy spectrum of all frames. Frames can be shorter than FFT size, they are padded with zeroes.
+     * Frame pairs are packed as real and imaginary parts of a complex input and separated after the transform
+     * using the conjugate symmetry of the transform of real data. Results match {@link #process(FloatData)}
+     * within float rounding, see {@link #processAll(List)}.
+     */
+    public float[][] process(float[][] frames) {
+        int size = fft.size;
+        float[][] result = new float[frames.length][];
+        float[] packed = new float[size * 2];
+        RealFastFourierTransform packedFft = this.packedFft;
+        if (packedFft == null && frames.length > 1) {
+            packedFft = new RealFastFourierTransform(size * 2);
+            this.packedFft = packedFft;
+        }
+        int i = 0;
+        for (; i + 1 < frames.length; i += 2) {
+            float[] first = frames[i];
+            float[] second = frames[i + 1];
+            if (first.length > size || second.length > size) {
+                throw new IllegalArgumentException("Frame size is larger than FFT size=" + size);
+            }
+            Arrays.fill(packed, 0f);
+            for (int j = 0; j < first.length; j++) {
+                packed[2 * j] = first[j];
+            }
+            for (int j = 0; j < second.length; j++) {
+                packed[2 * j + 1] = second[j];
+            }
+            packedFft.complexTransform(packed);
+
+            float[] firstEnergy = new float[size / 2 + 1];
+            float[] secondEnergy = new float[size / 2 + 1];
+            for (int k = 0; k <= size / 2; k++) {
+                int m = k == 0 ? 0 : size - k;
+                float zkr = packed[2 * k], zki = packed[2 * k + 1];
+                float zmr = packed[2 * m], zmi = packed[2 * m + 1];
+                // X[k] = (Z[k] + conj(Z[N-k])) / 2, Y[k] = (Z[k] - conj(Z[N-k])) / 2i
+                float xr = zkr + zmr, xi = zki - zmi;
+                float yr = zki + zmi, yi = zmr - zkr;
+                firstEnergy[k] = 0.25f * (xr * xr + xi * xi);
+                secondEnergy[k] = 0.25f * (yr * yr + yi * yi);
+            }
+            if (applyLog) {
+                LogMath.LINEAR_TO_LOG_FLOAT.convertInPlace(firstEnergy);
+                LogMath.LINEAR_TO_LOG_FLOAT.convertInPlace(secondEnergy);
+            }
+            result[i] = firstEnergy;
+            result[i + 1] = secondEnergy;
+        }
+        if (i < frames.length) {
+            result[i] = new float[size / 2 + 1];
+            energy(fft.realFft(frames[i]), result[i]);
+        }
+        return result;
     }
 }
@@ -95,6 +95,22 @@ public class FastFourierTransform implements FloatDataProcessor {
         }
         // make a copy and apply padding if necessary
         float data[] = Arrays.copyOf(input, size);
+        realFftInPlace(data);
+        return data;
+    }
+
+    /**
+     * Same as realFft but transforms `data` in place, so no memory is allocated. Length of `data` must be FFT size,
+     * padding values must be zero.
+     *
+     * @param data real valued input. After the call it contains the interleaved complex values.
+     * @throws IllegalArgumentException if data size is not the FFT size
+     */
+    public void realFftInPlace(float[] data) {
+
+        if (data.length != size) {
+            throw new IllegalArgumentException("data length " + data.length + " is not equal to FFT size " + size);
+        }
 
         tableFFT(data);
 
@@ -134,7 +150,6 @@ public class FastFourierTransform implements FloatDataProcessor {
         float temp = data[0];
         data[0] += data[1];
         data[1] = temp - data[1];
-        return data;
     }
 
     /**
@@ -4,7 +4,9 @@ import suskun.core.FloatData;
 import suskun.core.FloatDataProcessor;
 import suskun.core.collections.FloatArrays;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.cos;
@@ -34,6 +36,14 @@ public class MelCepstrum implements FloatDataProcessor {
 
     private float[] lifteringWeights;
 
+    /**
+     * mel cosine matrix with liftering weights multiplied in. Row i is at [i * numberOfMelFilters]
+     */
+    private float[] liftedCosine;
+
+    // frame count of the blocks processed together in batch mode.
+    static final int BLOCK_SIZE = 128;
+
     public MelCepstrum(int cepstrumSize, int numberOfMelFilters, int lifteringCoefficient) {
         this.cepstrumSize = cepstrumSize;
         this.numberOfMelFilters = numberOfMelFilters;
@@ -55,6 +65,13 @@ public class MelCepstrum implements FloatDataProcessor {
                 melCosine[i][j] = (float) (normScale * cos(frequency * (j + 0.5)));
             }
         }
+        this.liftedCosine = new float[cepstrumSize * numberOfMelFilters];
+        for (int i = 0; i < cepstrumSize; i++) {
+            float weight = lifteringCoefficient != 0 ? lifteringWeights[i] : 1;
+            for (int j = 0; j < numberOfMelFilters; j++) {
+                liftedCosine[i * numberOfMelFilters + j] = melCosine[i][j] * weight;
+            }
+        }
     }
 
     public FloatData process(FloatData input) throws IllegalArgumentException {
@@ -66,6 +83,77 @@ public class MelCepstrum implements FloatDataProcessor {
         return input.copyFor(cepstrum);
     }
 
+    /**
+     * Writes liftered cepstrum of `melSpectrum` to `cepstrum`. Length of `cepstrum` must be cepstrum size.
+     */
+    public void apply(float[] melSpectrum, float[] cepstrum) {
+        if (cepstrum.length != cepstrumSize) {
+            throw new IllegalArgumentException("Cepstrum array length must be " + cepstrumSize +
+                    ". But it is " + cepstrum.length);
+        }
+        applyMelCosine(melSpectrum, cepstrum);
+        if (lifteringCoefficient != 0) {
+            applyLiftering(cepstrum);
+        }
+    }
+
+    /**
+     * Calculates cepstrum of all mel spectra with block operations.
+     */
+    public List<FloatData> processAll(List<FloatData> melSpectra) {
+        float[] block = new float[melSpectra.size() * numberOfMelFilters];
+        for (int i = 0; i < melSpectra.size(); i++) {
+            System.arraycopy(melSpectra.get(i).getData(), 0, block, i * numberOfMelFilters, numberOfMelFilters);
+        }
+        float[] output = new float[melSpectra.size() * cepstrumSize];
+        applyBlock(block, melSpectra.size(), output);
+        List<FloatData> result = new ArrayList<>(melSpectra.size());
+        for (int i = 0; i < melSpectra.size(); i++) {
+            result.add(melSpectra.get(i).copyFor(
+                    Arrays.copyOfRange(output, i * cepstrumSize, (i + 1) * cepstrumSize)));
+        }
+        return result;
+    }
+
+    /**
+     * Writes liftered cepstrum of `frameCount` mel spectra to `output`. Mel spectrum i starts at
+     * `i * numberOfMelFilters` in `melSpectra` and its cepstrum is written starting from `i * cepstrumSize`.
+     * <p>
+     * Liftering is folded into the cosine matrix, so results may differ from {@link #apply(float[], float[])}
+     * in the last bits. Frames are processed in transposed blocks so that inner loops run over consecutive frames.
+     */
+    public void applyBlock(float[] melSpectra, int frameCount, float[] output) {
+        if (melSpectra.length < frameCount * numberOfMelFilters || output.length < frameCount * cepstrumSize) {
+            throw new IllegalArgumentException("Mel spectra or output array is too small for " + frameCount +
+                    " frames.");
+        }
+        float[][] transposed = new float[numberOfMelFilters][BLOCK_SIZE];
+        float[] sums = new float[BLOCK_SIZE];
+        for (int blockStart = 0; blockStart < frameCount; blockStart += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, frameCount - blockStart);
+            for (int t = 0; t < n; t++) {
+                int offset = (blockStart + t) * numberOfMelFilters;
+                for (int j = 0; j < numberOfMelFilters; j++) {
+                    transposed[j][t] = melSpectra[offset + j];
+                }
+            }
+            for (int i = 0; i < cepstrumSize; i++) {
+                Arrays.fill(sums, 0, n, 0f);
+                int row = i * numberOfMelFilters;
+                for (int j = 0; j < numberOfMelFilters; j++) {
+                    float weight = liftedCosine[row + j];
+                    float[] column = transposed[j];
+                    for (int t = 0; t < n; t++) {
+                        sums[t] += column[t] * weight;
+                    }
+                }
+                for (int t = 0; t < n; t++) {
+                    output[(blockStart + t) * cepstrumSize + i] = sums[t];
+                }
+            }
+        }
+    }
+
     protected void applyLiftering(float[] values) {
         FloatArrays.multiplyToFirst(values, lifteringWeights);
     }
@@ -73,12 +161,18 @@ public class MelCepstrum implements FloatDataProcessor {
     private float[] applyMelCosine(float[] melSpectrum) {
         // create the cepstrum
         float[] cepstrum = new float[cepstrumSize];
+        applyMelCosine(melSpectrum, cepstrum);
+        return cepstrum;
+    }
+
+    private void applyMelCosine(float[] melSpectrum, float[] cepstrum) {
         for (int i = 0; i < cepstrum.length; i++) {
+            float sum = 0;
             for (int j = 0; j < numberOfMelFilters; j++) {
-                cepstrum[i] += melSpectrum[j] * melCosine[i][j];
+                sum += melSpectrum[j] * melCosine[i][j];
             }
+            cepstrum[i] = sum;
         }
-        return cepstrum;
     }
 
 }
@@ -18,6 +18,14 @@ public class MelFilter implements FloatDataProcessor {
 
     List<Filter> filters = new ArrayList<>();
 
+    // filters as a compressed sparse row matrix. Weights of filter i are in [rowStarts[i], rowStarts[i + 1])
+    int[] rowStarts;
+    int[] columns;
+    float[] values;
+
+    // frame count of the blocks processed together in batch mode.
+    static final int BLOCK_SIZE = 128;
+
     public MelFilter(int samplingRate,
                      int spectrogramSize,
                      float minimumFrequency,
@@ -29,6 +37,7 @@ public class MelFilter implements FloatDataProcessor {
         this.maximumFrequency = maximumFrequency;
         this.filterCount = filterCount;
         generateFilters();
+        generateSparseMatrix();
     }
 
     public static final MelFilter KALDI_DEFAULT_16KHZ = new MelFilter(16000, 256, 20, 8000, 23);
@@ -78,15 +87,112 @@ public class MelFilter implements FloatDataProcessor {
         }
     }
 
+    private void generateSparseMatrix() {
+        rowStarts = new int[filterCount + 1];
+        for (int i = 0; i < filterCount; i++) {
+            rowStarts[i + 1] = rowStarts[i] + filters.get(i).weights.length;
+        }
+        columns = new int[rowStarts[filterCount]];
+        values = new float[rowStarts[filterCount]];
+        for (int i = 0; i < filterCount; i++) {
+            Filter filter = filters.get(i);
+            for (int j = 0; j < filter.weights.length; j++) {
+                columns[rowStarts[i] + j] = filter.sampleStart + j;
+                values[rowStarts[i] + j] = filter.weights[j];
+            }
+        }
+    }
+
     @Override
     public FloatData process(FloatData data) {
         float[] binEnergies = new float[filterCount];
+        apply(data.getData(), binEnergies);
+        return data.copyFor(binEnergies);
+    }
+
+    /**
+     * Writes log mel bin energies of `spectrum` to `binEnergies`. Length of `binEnergies` must be filter count.
+     */
+    public void apply(float[] spectrum, float[] binEnergies) {
+        if (binEnergies.length != filterCount) {
+            throw new IllegalArgumentException("Bin energy array length must be " + filterCount +
+                    ". But it is " + binEnergies.length);
+        }
         int i = 0;
         for (Filter filter : filters) {
-            binEnergies[i++] = filter.apply(data.getData());
+            binEnergies[i++] = filter.apply(spectrum);
         }
         LogMath.LINEAR_TO_LOG_FLOAT.convertInPlace(binEnergies);
-        return data.copyFor(binEnergies);
+    }
+
+    public int getFilterCount() {
+        return filterCount;
+    }
+
+    /**
+     * Calculates log mel bin energies of all spectra with block operations. Result is same as calling process for
+     * each spectrum.
+     */
+    public List<FloatData> processAll(List<FloatData> spectra) {
+        if (spectra.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int stride = spectra.get(0).length();
+        float[] block = new float[spectra.size() * stride];
+        for (int i = 0; i < spectra.size(); i++) {
+            if (spectra.get(i).length() != stride) {
+                throw new IllegalArgumentException("All spectra must have the same length " + stride);
+            }
+            System.arraycopy(spectra.get(i).getData(), 0, block, i * stride, stride);
+        }
+        float[] output = new float[spectra.size() * filterCount];
+        applyBlock(block, stride, spectra.size(), output);
+        List<FloatData> result = new ArrayList<>(spectra.size());
+        for (int i = 0; i < spectra.size(); i++) {
+            result.add(spectra.get(i).copyFor(Arrays.copyOfRange(output, i * filterCount, (i + 1) * filterCount)));
+        }
+        return result;
+    }
+
+    /**
+     * Writes log mel bin energies of `frameCount` spectra to `output`. Spectrum i starts at `i * stride` in `spectra`
+     * and bin energies of it are written starting from `i * filterCount`. Result is the same as
+     * {@link #apply(float[], float[])} for each spectrum.
+     * <p>
+     * Frames are processed in blocks. A block of spectra is transposed so that, for each filter weight,
+     * the inner loop is a multiply-add over consecutive frames which can be vectorized by the compiler.
+     */
+    public void applyBlock(float[] spectra, int stride, int frameCount, float[] output) {
+        if (stride < spectrogramSize) {
+            throw new IllegalArgumentException("Stride must be at least " + spectrogramSize + ". But it is " + stride);
+        }
+        if (spectra.length < frameCount * stride || output.length < frameCount * filterCount) {
+            throw new IllegalArgumentException("Spectra or output array is too small for " + frameCount + " frames.");
+        }
+        float[][] transposed = new float[spectrogramSize][BLOCK_SIZE];
+        float[] sums = new float[BLOCK_SIZE];
+        for (int blockStart = 0; blockStart < frameCount; blockStart += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, frameCount - blockStart);
+            for (int t = 0; t < n; t++) {
+                int offset = (blockStart + t) * stride;
+                for (int c = 0; c < spectrogramSize; c++) {
+                    transposed[c][t] = spectra[offset + c];
+                }
+            }
+            for (int f = 0; f < filterCount; f++) {
+                Arrays.fill(sums, 0, n, 0f);
+                for (int k = rowStarts[f]; k < rowStarts[f + 1]; k++) {
+                    float weight = values[k];
+                    float[] column = transposed[columns[k]];
+                    for (int t = 0; t < n; t++) {
+                        sums[t] += column[t] * weight;
+                    }
+                }
+                for (int t = 0; t < n; t++) {
+                    output[(blockStart + t) * filterCount + f] = LogMath.LINEAR_TO_LOG_FLOAT.convert(sums[t]);
+                }
+            }
+        }
     }
 
     private static class Filter {
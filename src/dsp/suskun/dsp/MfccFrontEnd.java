@@ -0,0 +1,198 @@
+package suskun.dsp;
+
+import suskun.core.FloatData;
+
+/**
+ * Streaming MFCC calculator that allocates all working buffers once. Audio samples are given in chunks of any size
+ * with {@link #accept(float[], int, int)} and cepstrum vectors are written to caller arrays with
+ * {@link #nextFrame(float[])}. Buffers only grow if a chunk is larger than any previous chunk, so steady state
+ * processing creates no garbage. Output is the same as FrameGenerator, Preprocessor, EnergySpectrum, MelFilter and
+ * MelCepstrum chain with the same parameters.
+ * Instances are stateful and not thread safe. Use {@link #reset()} before a new stream.
+ */
+public class MfccFrontEnd {
+
+    public final int samplingRate;
+    public final int frameSampleSize;
+    public final int shiftSampleSize;
+
+    final Preprocessor preprocessor;
+    final FastFourierTransform fft;
+    final EnergySpectrum spectrum;
+    final MelFilter melFilter;
+    final MelCepstrum cepstrum;
+
+    final StreamingFrameGenerator generator;
+
+    final float[] frameData;
+    final FloatData frame;
+    final float[] fftBuffer;
+    final float[] energyBuffer;
+    final float[] melBuffer;
+
+    float logEnergy;
+
+    private MfccFrontEnd(Builder builder) {
+        this.generator = StreamingFrameGenerator.forTime(
+                builder.samplingRate, builder.frameLength, builder.shiftLength);
+        this.samplingRate = builder.samplingRate;
+        this.frameSampleSize = generator.frameSampleSize;
+        this.shiftSampleSize = generator.shiftSampleSize;
+        this.preprocessor = Preprocessor.builder(frameSampleSize)
+                .ditherMultiplier(builder.ditherMultiplier)
+                .windowFunctionType(builder.windowFunctionType)
+                .build();
+        this.fft = new FastFourierTransform(preprocessor.paddedSize);
+        this.spectrum = new EnergySpectrum(fft, false);
+        this.melFilter = builder.melFilter != null ? builder.melFilter :
+                new MelFilter(samplingRate, preprocessor.paddedSize / 2, 20, samplingRate / 2f, 23);
+        this.cepstrum = new MelCepstrum(builder.cepstrumSize, melFilter.getFilterCount(), builder.lifteringCoefficient);
+
+        this.frameData = new float[frameSampleSize];
+        this.frame = new FloatData(frameData);
+        this.fftBuffer = new float[preprocessor.paddedSize];
+        this.energyBuffer = new float[preprocessor.paddedSize / 2 + 1];
+        this.melBuffer = new float[melFilter.getFilterCount()];
+    }
+
+    public static Builder builder(int samplingRate) {
+        return new Builder(samplingRate);
+    }
+
+    public static class Builder {
+        int samplingRate;
+        float frameLength = 25;
+        float shiftLength = 10;
+        float ditherMultiplier = 0;
+        WindowFunction.Function windowFunctionType = WindowFunction.Function.POVEY;
+        MelFilter melFilter;
+        int cepstrumSize = 13;
+        int lifteringCoefficient = 22;
+
+        public Builder(int samplingRate) {
+            if (samplingRate <= 0) {
+                throw new IllegalArgumentException("Sampling rate must be positive. But it is " + samplingRate);
+            }
+            this.samplingRate = samplingRate;
+        }
+
+        public Builder frameLength(float frameLengthInMs, float shiftInMs) {
+            this.frameLength = frameLengthInMs;
+            this.shiftLength = shiftInMs;
+            return this;
+        }
+
+        public Builder ditherMultiplier(float multiplier) {
+            this.ditherMultiplier = multiplier;
+            return this;
+        }
+
+        public Builder windowFunctionType(WindowFunction.Function type) {
+            this.windowFunctionType = type;
+            return this;
+        }
+
+        /**
+         * Default filter has 23 bins between 20Hz and Nyquist frequency.
+         */
+        public Builder melFilter(MelFilter melFilter) {
+            this.melFilter = melFilter;
+            return this;
+        }
+
+        public Builder cepstrum(int cepstrumSize, int lifteringCoefficient) {
+            if (cepstrumSize <= 0) {
+                throw new IllegalArgumentException("Cepstrum size must be positive. But it is " + cepstrumSize);
+            }
+            this.cepstrumSize = cepstrumSize;
+            this.lifteringCoefficient = lifteringCoefficient;
+            return this;
+        }
+
+        public MfccFrontEnd build() {
+            return new MfccFrontEnd(this);
+        }
+    }
+
+    public int getCepstrumSize() {
+        return cepstrum.cepstrumSize;
+    }
+
+    /**
+     * Index of the next frame.
+     */
+    public int getFrameCounter() {
+        return generator.getFrameCounter();
+    }
+
+    /**
+     * Log energy of the last calculated frame.
+     */
+    public float getLogEnergy() {
+        return logEnergy;
+    }
+
+    public void accept(float[] input) {
+        accept(input, 0, input.length);
+    }
+
+    /**
+     * Adds `length` samples of `input` starting from `offset` to the stream. Input is not modified.
+     */
+    public void accept(float[] input, int offset, int length) {
+        generator.accept(input, offset, length);
+    }
+
+    /**
+     * Adds 16 bit little endian mono PCM samples to the stream. A sample can be split between two chunks.
+     */
+    public void acceptPcm16(byte[] bytes, int offset, int length) {
+        generator.acceptPcm16(bytes, offset, length);
+    }
+
+    /**
+     * Number of frames that can be calculated with the samples given so far.
+     */
+    public int availableFrameCount() {
+        return generator.availableFrameCount();
+    }
+
+    /**
+     * Calculates the cepstrum of the next frame into `output` if there are enough samples.
+     * Length of `output` must be cepstrum size.
+     *
+     * @return false if there are not enough samples for a frame.
+     */
+    public boolean nextFrame(float[] output) {
+        if (!generator.nextFrame(frameData)) {
+            return false;
+        }
+        logEnergy = preprocessor.process(frame, fftBuffer);
+        fft.realFftInPlace(fftBuffer);
+        spectrum.energy(fftBuffer, energyBuffer);
+        melFilter.apply(energyBuffer, melBuffer);
+        cepstrum.apply(melBuffer, output);
+        return true;
+    }
+
+    /**
+     * Calculates all available frames into rows of `output` starting from `outputIndex`.
+     * Rows must be cepstrum size long.
+     *
+     * @return amount of calculated frames. It is limited by the row count of `output`.
+     */
+    public int nextFrames(float[][] output, int outputIndex) {
+        int count = 0;
+        while (outputIndex + count < output.length && nextFrame(output[outputIndex + count])) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Discards unprocessed samples and resets the frame counter. Buffers are kept.
+     */
+    public void reset() {
+        generator.reset();
+    }
+}
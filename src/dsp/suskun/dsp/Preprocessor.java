@@ -7,6 +7,7 @@ import suskun.core.collections.FloatArrays;
 
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -102,6 +103,37 @@ public class Preprocessor {
 
     public Result process(FloatData input) {
 
+        float logEnergy = processFrame(input);
+
+        input.resizeInPlace(paddedSize);
+
+        if (!useRawEnergy) {
+            logEnergy = logEnergy(input);
+        }
+
+        return new Result(input, logEnergy);
+    }
+
+    /**
+     * Processes `frame` in place and copies the result to `padded` with zero padding. No memory is allocated.
+     * Length of `frame` must be input size and length of `padded` must be padded size.
+     *
+     * @return log energy of the frame.
+     */
+    public float process(FloatData frame, float[] padded) {
+        if (frame.length() != inputSize || padded.length != paddedSize) {
+            throw new IllegalArgumentException("Frame and padded array lengths must be " + inputSize + " and " +
+                    paddedSize + ". But they are " + frame.length() + " and " + padded.length);
+        }
+        float logEnergy = processFrame(frame);
+        System.arraycopy(frame.getData(), 0, padded, 0, inputSize);
+        Arrays.fill(padded, inputSize, paddedSize, 0f);
+        // padding values do not change the energy.
+        return useRawEnergy ? logEnergy : logEnergy(frame);
+    }
+
+    private float processFrame(FloatData input) {
+
         dither.process(input);
 
         if (removeDcOffset) {
@@ -117,13 +149,7 @@ public class Preprocessor {
 
         windowFunction.process(input);
 
-        input.resizeInPlace(paddedSize);
-
-        if (!useRawEnergy) {
-            logEnergy = logEnergy(input);
-        }
-
-        return new Result(input, logEnergy);
+        return logEnergy;
     }
 
     public List<Result> processAll(List<FloatData> input) {
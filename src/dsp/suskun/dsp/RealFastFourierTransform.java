@@ -0,0 +1,216 @@
+package suskun.dsp;
+
+/**
+ * Fourier transform of real valued data. Works in place on caller arrays and does not allocate memory.
+ * Input of size N is transformed as N/2 complex values with a radix-4 core (with one radix-2 stage if needed) and
+ * then separated with precomputed twiddle factors. Bit reversal permutation and all twiddle factors are calculated
+ * once in double precision.
+ * <p>
+ * Output layout is the same as {@link FastFourierTransform#realFft(float[])}:
+ * real[0] real[N/2] real[1] imaginary[1] ... real[N/2-1] imaginary[N/2-1]
+ * Instances are immutable and can be shared between threads.
+ */
+public class RealFastFourierTransform {
+
+    public final int size;
+
+    // complex value count of the core transform.
+    private final int n;
+    // index pairs to swap for bit reversal permutation.
+    private final int[] swaps;
+    // w^k, w^2k, w^3k values of radix-4 stages as real, imaginary pairs.
+    private final float[] stageTwiddles;
+    // twiddle factors of real value separation step for j = 0..N/4
+    private final float[] cos;
+    private final float[] sin;
+
+    public RealFastFourierTransform(int size) {
+        if (size < 4 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of 2 and at least 4. But it is " + size);
+        }
+        this.size = size;
+        this.n = size / 2;
+
+        int bits = Integer.numberOfTrailingZeros(n);
+        int swapCount = 0;
+        int[] pairs = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            if (i < j) {
+                pairs[swapCount++] = i;
+                pairs[swapCount++] = j;
+            }
+        }
+        this.swaps = new int[swapCount];
+        System.arraycopy(pairs, 0, swaps, 0, swapCount);
+
+        int twiddleCount = 0;
+        for (int m = firstRadix4Length(); m < n; m *= 4) {
+            twiddleCount += m * 6;
+        }
+        this.stageTwiddles = new float[twiddleCount];
+        int t = 0;
+        for (int m = firstRadix4Length(); m < n; m *= 4) {
+            for (int k = 0; k < m; k++) {
+                for (int p = 1; p <= 3; p++) {
+                    double theta = 2 * Math.PI * p * k / (4 * m);
+                    stageTwiddles[t++] = (float) Math.cos(theta);
+                    stageTwiddles[t++] = (float) Math.sin(theta);
+                }
+            }
+        }
+
+        this.cos = new float[size / 4 + 1];
+        this.sin = new float[size / 4 + 1];
+        for (int j = 0; j < cos.length; j++) {
+            double theta = 2 * Math.PI * j / size;
+            cos[j] = (float) Math.cos(theta);
+            sin[j] = (float) Math.sin(theta);
+        }
+    }
+
+    // sub transform length of the first radix-4 stage. If n is not a power of 4, a radix-2 stage is applied first.
+    private int firstRadix4Length() {
+        return Integer.numberOfTrailingZeros(n) % 2 == 0 ? 1 : 2;
+    }
+
+    /**
+     * Transforms real values in `data` in place. Length of `data` must be FFT size, padding values must be zero.
+     */
+    public void transform(float[] data) {
+        checkLength(data);
+        complexTransform(data);
+
+        for (int j = 1; j <= size / 4; ++j) {
+            int k = n - j;
+            float tkr = data[2 * k];
+            float tki = data[2 * k + 1];
+            float tjr = data[2 * j];
+            float tji = data[2 * j + 1];
+
+            float e = tjr + tkr;
+            float f = tji - tki;
+            float g = tjr - tkr;
+            float h = tji + tki;
+            float a = g * sin[j] + h * cos[j];
+            float b = h * sin[j] - g * cos[j];
+
+            data[2 * j] = 0.5f * (e + a);
+            data[2 * j + 1] = 0.5f * (f + b);
+            data[2 * k] = 0.5f * (e - a);
+            data[2 * k + 1] = 0.5f * (b - f);
+        }
+
+        float temp = data[0];
+        data[0] += data[1];
+        data[1] = temp - data[1];
+    }
+
+    /**
+     * Calculates power spectrum of real values in `data` and writes it to `power`. Contents of `data` are used as
+     * working space and destroyed. Length of `data` must be FFT size, padding values must be zero.
+     * Length of `power` must be FFT size / 2 + 1.
+     */
+    public void powerSpectrum(float[] data, float[] power) {
+        checkLength(data);
+        if (power.length != n + 1) {
+            throw new IllegalArgumentException("Power array length must be " + (n + 1) + ". But it is " + power.length);
+        }
+        complexTransform(data);
+
+        for (int j = 1; j <= size / 4; ++j) {
+            int k = n - j;
+            float tkr = data[2 * k];
+            float tki = data[2 * k + 1];
+            float tjr = data[2 * j];
+            float tji = data[2 * j + 1];
+
+            float e = tjr + tkr;
+            float f = tji - tki;
+            float g = tjr - tkr;
+            float h = tji + tki;
+            float a = g * sin[j] + h * cos[j];
+            float b = h * sin[j] - g * cos[j];
+
+            float jr = 0.5f * (e + a), ji = 0.5f * (f + b);
+            float kr = 0.5f * (e - a), ki = 0.5f * (b - f);
+            power[j] = jr * jr + ji * ji;
+            power[k] = kr * kr + ki * ki;
+        }
+        float first = data[0] + data[1];
+        float last = data[0] - data[1];
+        power[0] = first * first;
+        power[n] = last * last;
+    }
+
+    private void checkLength(float[] data) {
+        if (data.length != size) {
+            throw new IllegalArgumentException("data length " + data.length + " is not equal to FFT size " + size);
+        }
+    }
+
+    /**
+     * In place transform of size / 2 complex values stored as alternating real and imaginary parts.
+     */
+    void complexTransform(float[] data) {
+        for (int i = 0; i < swaps.length; i += 2) {
+            int a = swaps[i] * 2, b = swaps[i + 1] * 2;
+            float t = data[a];
+            data[a] = data[b];
+            data[b] = t;
+            t = data[a + 1];
+            data[a + 1] = data[b + 1];
+            data[b + 1] = t;
+        }
+
+        if (firstRadix4Length() == 2) {
+            for (int i = 0; i < 2 * n; i += 4) {
+                float r = data[i + 2], im = data[i + 3];
+                data[i + 2] = data[i] - r;
+                data[i + 3] = data[i + 1] - im;
+                data[i] += r;
+                data[i + 1] += im;
+            }
+        }
+
+        int t = 0;
+        for (int m = firstRadix4Length(); m < n; m *= 4) {
+            // combines 4 consecutive sub transforms of length m to a transform of length 4m.
+            for (int k = 0; k < m; k++, t += 6) {
+                float w1r = stageTwiddles[t], w1i = stageTwiddles[t + 1];
+                float w2r = stageTwiddles[t + 2], w2i = stageTwiddles[t + 3];
+                float w3r = stageTwiddles[t + 4], w3i = stageTwiddles[t + 5];
+                for (int base = 0; base < n; base += 4 * m) {
+                    int i0 = 2 * (base + k);
+                    int i1 = i0 + 2 * m;
+                    int i2 = i1 + 2 * m;
+                    int i3 = i2 + 2 * m;
+
+                    float t0r = data[i0], t0i = data[i0 + 1];
+                    // sub transforms are in bit reversed order: i1 holds odd-even, i2 holds even-odd indexes.
+                    float t1r = w2r * data[i1] - w2i * data[i1 + 1];
+                    float t1i = w2i * data[i1] + w2r * data[i1 + 1];
+                    float t2r = w1r * data[i2] - w1i * data[i2 + 1];
+                    float t2i = w1i * data[i2] + w1r * data[i2 + 1];
+                    float t3r = w3r * data[i3] - w3i * data[i3 + 1];
+                    float t3i = w3i * data[i3] + w3r * data[i3 + 1];
+
+                    float s01r = t0r + t1r, s01i = t0i + t1i;
+                    float d01r = t0r - t1r, d01i = t0i - t1i;
+                    float s23r = t2r + t3r, s23i = t2i + t3i;
+                    float d23r = t2r - t3r, d23i = t2i - t3i;
+
+                    data[i0] = s01r + s23r;
+                    data[i0 + 1] = s01i + s23i;
+                    data[i2] = s01r - s23r;
+                    data[i2 + 1] = s01i - s23i;
+                    // multiplication by i
+                    data[i1] = d01r - d23i;
+                    data[i1 + 1] = d01i + d23r;
+                    data[i3] = d01r + d23i;
+                    data[i3 + 1] = d01i - d23r;
+                }
+            }
+        }
+    }
+}
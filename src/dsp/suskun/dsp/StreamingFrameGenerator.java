@@ -0,0 +1,198 @@
+package suskun.dsp;
+
+import suskun.core.FloatData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates shifted frames from a continuous stream of audio chunks of any size. Samples are kept in a circular
+ * buffer, so unlike {@link FrameGenerator} incoming data is not copied or prepended with the leftover of the
+ * previous chunk. Every sample is written twice, to its position and to position + capacity, so every frame is a
+ * contiguous range of the buffer and can be used as a view without copying.
+ * <p>
+ * Buffer only grows if a chunk does not fit to it. Frame counter is kept across chunks.
+ * Instances are stateful and not thread safe. Use {@link #reset()} before a new stream.
+ */
+public class StreamingFrameGenerator {
+
+    public final int samplingRate;
+    public final int frameSampleSize;
+    public final int shiftSampleSize;
+
+    // mirrored circular buffer. Its length is 2 * capacity.
+    float[] buffer;
+    int capacity;
+    // absolute index of the next sample to write.
+    long sampleCounter;
+    // absolute index of the first sample of the next frame.
+    long frameStart;
+    int frameCounter;
+    // low byte of a 16 bit sample that is split between chunks. -1 if there is none.
+    int pendingByte = -1;
+
+    private StreamingFrameGenerator(int samplingRate, float frameLength, float shiftLength) {
+        this.samplingRate = samplingRate;
+        this.frameSampleSize = (int) (samplingRate * frameLength / 1000d);
+        this.shiftSampleSize = (int) (samplingRate * shiftLength / 1000d);
+        if (frameSampleSize <= 0 || shiftSampleSize <= 0) {
+            throw new IllegalArgumentException("Frame and shift sample sizes must be positive. But they are " +
+                    frameSampleSize + " and " + shiftSampleSize);
+        }
+        this.capacity = frameSampleSize * 4;
+        this.buffer = new float[capacity * 2];
+    }
+
+    /**
+     * Generates an instance.
+     *
+     * @param samplingRate    sampling Rate in hertz.
+     * @param frameLengthInMs frame length in milliseconds. 25ms is typical.
+     * @param shiftInMs       frame shift in milliseconds. 10ms is typical.
+     * @return a StreamingFrameGenerator instance.
+     */
+    public static StreamingFrameGenerator forTime(int samplingRate, float frameLengthInMs, float shiftInMs) {
+        return new StreamingFrameGenerator(samplingRate, frameLengthInMs, shiftInMs);
+    }
+
+    /**
+     * Receives frame views. `data` is valid only during the call and must not be modified.
+     */
+    public interface FrameConsumer {
+        void accept(int frameIndex, float[] data, int offset);
+    }
+
+    /**
+     * Index of the next frame.
+     */
+    public int getFrameCounter() {
+        return frameCounter;
+    }
+
+    public void accept(float[] samples) {
+        accept(samples, 0, samples.length);
+    }
+
+    /**
+     * Adds `length` samples of `samples` starting from `offset` to the stream. Input is not modified.
+     */
+    public void accept(float[] samples, int offset, int length) {
+        ensureCapacity(length);
+        for (int i = offset; i < offset + length; i++) {
+            write(samples[i]);
+        }
+    }
+
+    /**
+     * Adds 16 bit little endian mono PCM samples to the stream. A sample can be split between two chunks.
+     */
+    public void acceptPcm16(byte[] bytes, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        ensureCapacity((length + 1) / 2);
+        if (pendingByte >= 0 && i < end) {
+            write((short) ((bytes[i++] << 8) | pendingByte));
+            pendingByte = -1;
+        }
+        for (; i + 1 < end; i += 2) {
+            write((short) ((bytes[i + 1] << 8) | (bytes[i] & 0xff)));
+        }
+        if (i < end) {
+            pendingByte = bytes[i] & 0xff;
+        }
+    }
+
+    private void write(float sample) {
+        // samples before the next frame start are skipped. This only happens if shift is larger than frame size.
+        if (sampleCounter >= frameStart) {
+            int position = (int) (sampleCounter % capacity);
+            buffer[position] = sample;
+            buffer[position + capacity] = sample;
+        }
+        sampleCounter++;
+    }
+
+    private void ensureCapacity(int incoming) {
+        // only samples from the next frame start are kept.
+        long required = sampleCounter + incoming - frameStart;
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = (int) Math.max(capacity * 2L, required);
+        float[] newBuffer = new float[newCapacity * 2];
+        for (long i = frameStart; i < sampleCounter; i++) {
+            float sample = buffer[(int) (i % capacity)];
+            int position = (int) (i % newCapacity);
+            newBuffer[position] = sample;
+            newBuffer[position + newCapacity] = sample;
+        }
+        this.buffer = newBuffer;
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Number of frames that can be generated with the samples given so far.
+     */
+    public int availableFrameCount() {
+        long buffered = sampleCounter - frameStart;
+        return buffered < frameSampleSize ? 0 : (int) ((buffered - frameSampleSize) / shiftSampleSize + 1);
+    }
+
+    /**
+     * Copies the next frame to `output` if there are enough samples. Length of `output` must be frame sample size.
+     *
+     * @return false if there are not enough samples for a frame.
+     */
+    public boolean nextFrame(float[] output) {
+        if (output.length != frameSampleSize) {
+            throw new IllegalArgumentException("Output length must be " + frameSampleSize + ". But it is " +
+                    output.length);
+        }
+        if (sampleCounter - frameStart < frameSampleSize) {
+            return false;
+        }
+        System.arraycopy(buffer, (int) (frameStart % capacity), output, 0, frameSampleSize);
+        frameStart += shiftSampleSize;
+        frameCounter++;
+        return true;
+    }
+
+    /**
+     * Passes views of all available frames to `consumer` without copying.
+     *
+     * @return amount of frames.
+     */
+    public int nextFrames(FrameConsumer consumer) {
+        int count = 0;
+        while (sampleCounter - frameStart >= frameSampleSize) {
+            consumer.accept(frameCounter, buffer, (int) (frameStart % capacity));
+            frameStart += shiftSampleSize;
+            frameCounter++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns copies of all available frames. Ids of the frames are frame indexes.
+     */
+    public List<FloatData> getFrames() {
+        List<FloatData> frames = new ArrayList<>(availableFrameCount());
+        nextFrames((index, data, offset) -> {
+            float[] frame = new float[frameSampleSize];
+            System.arraycopy(data, offset, frame, 0, frameSampleSize);
+            frames.add(new FloatData(index, frame));
+        });
+        return frames;
+    }
+
+    /**
+     * Discards unprocessed samples and resets the frame counter. Buffer is kept.
+     */
+    public void reset() {
+        sampleCounter = 0;
+        frameStart = 0;
+        frameCounter = 0;
+        pendingByte = -1;
+    }
+}
@@ -78,8 +78,30 @@ public class WindowFeatures {
         if (current.size() < past + future + 1) {
             return new ArrayList<>(0);
         }
+        return calculate();
+    }
+
+    /**
+     * In live mode, last frame is repeated `future` times and window features of remaining frames are returned.
+     * After this, instance can be used for a new input stream. In batch mode, returns an empty list.
+     */
+    public List<FloatData> flush() {
+        if (!live || current.isEmpty()) {
+            current = new ArrayList<>();
+            return new ArrayList<>(0);
+        }
+        FloatData last = current.get(current.size() - 1);
+        for (int i = 0; i < future; i++) {
+            current.add(last);
+        }
+        List<FloatData> result = current.size() < past + future + 1 ? new ArrayList<>(0) : calculate();
+        current = new ArrayList<>();
+        return result;
+    }
+
+    private List<FloatData> calculate() {
 
-        int inputVectorLength = input.get(0).length();
+        int inputVectorLength = current.get(0).length();
         int outputVectorLength = (past + future + 1) * inputVectorLength;
 
         // if set, use padded size.
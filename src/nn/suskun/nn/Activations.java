@@ -0,0 +1,105 @@
+package suskun.nn;
+
+/**
+ * Table based activation functions and the fused log soft-max output stage.
+ * <p>
+ * Sigmoid and exp are read from lookup tables with linear interpolation. Absolute sigmoid error is below 1e-6 and
+ * relative exp error is below 2e-6, which is far below the quantization errors of the networks.
+ */
+public final class Activations {
+
+    static final float SIGMOID_LIMIT = 16f;
+    static final float SIGMOID_SCALE = 256f;
+    // sigmoid values for [-SIGMOID_LIMIT, SIGMOID_LIMIT] with 1/SIGMOID_SCALE steps.
+    static final float[] SIGMOID_TABLE = new float[(int) (2 * SIGMOID_LIMIT * SIGMOID_SCALE) + 1];
+
+    static final float EXP_LIMIT = 32f;
+    static final float EXP_SCALE = 256f;
+    // exp values for [-EXP_LIMIT, 0] with 1/EXP_SCALE steps. Index i contains exp(-i / EXP_SCALE).
+    static final float[] EXP_TABLE = new float[(int) (EXP_LIMIT * EXP_SCALE) + 1];
+
+    static {
+        for (int i = 0; i < SIGMOID_TABLE.length; i++) {
+            double x = i / (double) SIGMOID_SCALE - SIGMOID_LIMIT;
+            SIGMOID_TABLE[i] = (float) (1 / (1 + Math.exp(-x)));
+        }
+        for (int i = 0; i < EXP_TABLE.length; i++) {
+            EXP_TABLE[i] = (float) Math.exp(-i / (double) EXP_SCALE);
+        }
+    }
+
+    private Activations() {
+    }
+
+    public static float sigmoid(float x) {
+        float f = (x + SIGMOID_LIMIT) * SIGMOID_SCALE;
+        if (f <= 0) {
+            return SIGMOID_TABLE[0];
+        }
+        int i = (int) f;
+        if (i >= SIGMOID_TABLE.length - 1) {
+            return SIGMOID_TABLE[SIGMOID_TABLE.length - 1];
+        }
+        float a = SIGMOID_TABLE[i];
+        return a + (f - i) * (SIGMOID_TABLE[i + 1] - a);
+    }
+
+    /**
+     * Applies sigmoid to values in [offset, offset + length)
+     */
+    public static void sigmoid(float[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            values[i] = sigmoid(values[i]);
+        }
+    }
+
+    /**
+     * Calculates exp(x) for x <= 0. Values smaller than -EXP_LIMIT return 0.
+     */
+    public static float expNegative(float x) {
+        float f = -x * EXP_SCALE;
+        int i = (int) f;
+        if (i >= EXP_TABLE.length - 1) {
+            return 0;
+        }
+        float a = EXP_TABLE[i];
+        return a + (f - i) * (EXP_TABLE[i + 1] - a);
+    }
+
+    /**
+     * Converts logits in [offset, offset + length) to log soft-max values in a single pass after finding the maximum,
+     * log(softMax(x_i)) = x_i - max - log(sum(exp(x_j - max))). If `logPriors` is not null, logPriors[i - offset] is
+     * also subtracted from each value, so the result is the scaled log likelihood used by decoders.
+     */
+    public static void logSoftMax(float[] values, int offset, int length, float[] logPriors) {
+        int end = offset + length;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = offset; i < end; i++) {
+            max = Math.max(max, values[i]);
+        }
+        float total = 0;
+        for (int i = offset; i < end; i++) {
+            total += expNegative(values[i] - max);
+        }
+        float logSum = max + (float) Math.log(total);
+        if (logPriors == null) {
+            for (int i = offset; i < end; i++) {
+                values[i] -= logSum;
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                values[i] = values[i] - logSum - logPriors[i - offset];
+            }
+        }
+    }
+
+    /**
+     * Converts soft-max outputs to scaled log likelihoods, log(p_i) - logPriors[i], in place.
+     * This is for outputs that are already normalized, like the outputs of native calculations.
+     */
+    public static void toLogLikelihoods(float[] posteriors, float[] logPriors) {
+        for (int i = 0; i < posteriors.length; i++) {
+            posteriors[i] = (float) Math.log(posteriors[i]) - logPriors[i];
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package suskun.nn;
+
+/**
+ * Cache blocked matrix multiplication kernels for layer calculations.
+ * <p>
+ * Input matrix X is [rows x k] and weight matrix W is [columns x k], both row major. Each row of W contains the
+ * weights of a node, so the result is X * W^T, [rows x columns] row major, plus bias.
+ * <p>
+ * Columns are processed in blocks so that a block of weights stays in cache while all input rows use it.
+ * Inside a block, 4 rows and 4 columns are calculated together with 16 accumulators, so every loaded value is
+ * used four times.
+ */
+final class BlockedGemm {
+
+    // amount of weight rows processed together. 64 rows of 512 floats is 128KB.
+    static final int COLUMN_BLOCK = 64;
+    // dot products are split to blocks of this length so that input row parts stay in L1 cache.
+    static final int K_BLOCK = 256;
+
+    private BlockedGemm() {
+    }
+
+    /**
+     * Calculates out[r * columns + c] = bias[c] + dot(x row r, w row c) for r in [0, rows) and c in [0, columns)
+     */
+    static void multiplyTransposed(
+            float[] x, int rows, float[] w, int columns, int k, float[] bias, float[] out) {
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(bias, 0, out, r * columns, columns);
+        }
+        for (int c0 = 0; c0 < columns; c0 += COLUMN_BLOCK) {
+            int cEnd = Math.min(columns, c0 + COLUMN_BLOCK);
+            for (int k0 = 0; k0 < k; k0 += K_BLOCK) {
+                int kEnd = Math.min(k, k0 + K_BLOCK);
+                int r = 0;
+                for (; r + 4 <= rows; r += 4) {
+                    int c = c0;
+                    for (; c + 4 <= cEnd; c += 4) {
+                        kernel4x4(x, r, w, c, k, k0, kEnd, out, columns);
+                    }
+                    for (; c < cEnd; c++) {
+                        for (int i = r; i < r + 4; i++) {
+                            out[i * columns + c] += dot(x, i * k, w, c * k, k0, kEnd);
+                        }
+                    }
+                }
+                for (; r < rows; r++) {
+                    for (int c = c0; c < cEnd; c++) {
+                        out[r * columns + c] += dot(x, r * k, w, c * k, k0, kEnd);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates out[r * columns + c] += dot(x row r, w row c) in [k0, kEnd) for rows [r, r + 4) and
+     * columns [c, c + 4)
+     */
+    private static void kernel4x4(
+            float[] x, int r, float[] w, int c, int k, int k0, int kEnd, float[] out, int columns) {
+        int x0 = r * k;
+        int x1 = x0 + k;
+        int x2 = x1 + k;
+        int x3 = x2 + k;
+        int w0 = c * k;
+        int w1 = w0 + k;
+        int w2 = w1 + k;
+        int w3 = w2 + k;
+        float s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+        float s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+        float s20 = 0, s21 = 0, s22 = 0, s23 = 0;
+        float s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+        for (int i = k0; i < kEnd; i++) {
+            float a0 = x[x0 + i];
+            float a1 = x[x1 + i];
+            float a2 = x[x2 + i];
+            float a3 = x[x3 + i];
+            float b0 = w[w0 + i];
+            float b1 = w[w1 + i];
+            float b2 = w[w2 + i];
+            float b3 = w[w3 + i];
+            s00 += a0 * b0;
+            s01 += a0 * b1;
+            s02 += a0 * b2;
+            s03 += a0 * b3;
+            s10 += a1 * b0;
+            s11 += a1 * b1;
+            s12 += a1 * b2;
+            s13 += a1 * b3;
+            s20 += a2 * b0;
+            s21 += a2 * b1;
+            s22 += a2 * b2;
+            s23 += a2 * b3;
+            s30 += a3 * b0;
+            s31 += a3 * b1;
+            s32 += a3 * b2;
+            s33 += a3 * b3;
+        }
+        int o = r * columns + c;
+        out[o] += s00;
+        out[o + 1] += s01;
+        out[o + 2] += s02;
+        out[o + 3] += s03;
+        o += columns;
+        out[o] += s10;
+        out[o + 1] += s11;
+        out[o + 2] += s12;
+        out[o + 3] += s13;
+        o += columns;
+        out[o] += s20;
+        out[o + 1] += s21;
+        out[o + 2] += s22;
+        out[o + 3] += s23;
+        o += columns;
+        out[o] += s30;
+        out[o + 1] += s31;
+        out[o + 2] += s32;
+        out[o + 3] += s33;
+    }
+
+    static float dot(float[] x, int xOffset, float[] w, int wOffset, int start, int end) {
+        float sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += x[xOffset + i] * w[wOffset + i];
+        }
+        return sum;
+    }
+}
@@ -3,18 +3,16 @@ package suskun.nn;
 import suskun.core.FloatData;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Used for neural network file plumbing and verification.
+ * Used for neural network file plumbing and verification. For fast calculation of many vectors
+ * use BatchCalculator.
  */
 public class FeedForwardNetwork {
     // layers contain all weight and bias values.
@@ -37,6 +35,18 @@ public class FeedForwardNetwork {
         this.scaleVector = scaleVector;
     }
 
+    public int layerCount() {
+        return layers.size();
+    }
+
+    public float[] getShiftVector() {
+        return shiftVector;
+    }
+
+    public float[] getScaleVector() {
+        return scaleVector;
+    }
+
     public Layer getLayer(int layerIndex) {
         if (layerIndex < 0 || layerIndex >= layers.size())
             throw new IllegalArgumentException("Illegal layer index " + layerIndex);
@@ -76,7 +86,7 @@ public class FeedForwardNetwork {
 
 
     public static FeedForwardNetwork loadFromTextFile(Path networkFile, Path transformationFile) throws IOException {
-        return loadFromTextFile(networkFile.toFile(), transformationFile.toFile());
+        return loadFromTextFile(networkFile, transformationFile, 1);
     }
 
     /**
@@ -85,27 +95,19 @@ public class FeedForwardNetwork {
      * @throws IOException
      */
     public static FeedForwardNetwork loadFromTextFile(File networkFile, File transformationFile) throws IOException {
-        List<Layer> layers = loadLayersFromTextFile(networkFile);
-
-        List<String> lines = Files.readAllLines(transformationFile.toPath(), StandardCharsets.UTF_8);
-        String wholeThing = String.join(" ", lines);
-        List<String> featureBlocks = new ArrayList<>();
-        Matcher m = FEATURE_LINES_PATTERN.matcher(wholeThing);
-        while (m.find()) {
-            featureBlocks.add(m.group(1).trim());
-        }
-
-        // if there is <Splice> block, omit it.
-        if (featureBlocks.size() == 3) {
-            featureBlocks = new ArrayList<>(featureBlocks.subList(1, featureBlocks.size()));
-        }
+        return loadFromTextFile(networkFile.toPath(), transformationFile.toPath(), 1);
+    }
 
-        if (featureBlocks.size() != 2) {
-            throw new IllegalStateException("Unexpected feature transformation vector size : "
-                    + featureBlocks.size());
-        }
-        float[] shiftVector = fromString(featureBlocks.get(0));
-        float[] scaleVector = fromString(featureBlocks.get(1));
+    /**
+     * Generates an instance from Kaldi text network and feature transformation files. Layers are parsed with
+     * `threadCount` threads.
+     */
+    public static FeedForwardNetwork loadFromTextFile(Path networkFile, Path transformationFile, int threadCount)
+            throws IOException {
+        List<Layer> layers = KaldiTextParser.parseLayers(networkFile, threadCount);
+        float[][] transform = KaldiTextParser.parseTransform(transformationFile);
+        float[] shiftVector = transform[0];
+        float[] scaleVector = transform[1];
 
         int inputDimension = layers.get(0).inputDimension;
         if (shiftVector.length != inputDimension) {
@@ -148,62 +150,255 @@ public class FeedForwardNetwork {
         throw new IllegalStateException("Output layer cannot be reached!");
     }
 
-    public static float[] fromString(String str) {
-        String[] tokens = str.split("[ ]+");
-        float[] result = new float[tokens.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = Float.parseFloat(tokens[i]);
-        }
-        return result;
+    /**
+     * Creates a calculator that processes up to `maxBatchSize` vectors at a time with blocked matrix multiplications.
+     * Calculator keeps a copy of the weights, so later changes to the network (like align()) do not affect it.
+     */
+    public BatchCalculator batchCalculator(int maxBatchSize) {
+        return new BatchCalculator(maxBatchSize);
     }
 
-    private static List<Layer> loadLayersFromTextFile(File networkFile) throws IOException {
-        List<Layer> layers = new ArrayList<>();
+    /**
+     * Calculates network outputs for a row major matrix of input vectors. Layer activation buffers are allocated once
+     * and reused. Not thread safe, each thread should use its own instance.
+     */
+    public class BatchCalculator {
+        final int maxBatchSize;
+        final float[][] layerWeights;
+        final float[][] layerBiases;
+        final int[] inputDimensions;
+        final int[] outputDimensions;
+        final int inputDimension;
+        final int outputDimension;
+
+        // shifted and scaled input and layer activations. Activations of layers use two buffers alternately.
+        final float[] input;
+        final float[] first;
+        final float[] second;
+
+        // last hidden layer activations kept by calculateHidden().
+        private float[] hidden;
+        private int hiddenVectorCount;
+
+        BatchCalculator(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("Max batch size must be positive. But it is " + maxBatchSize);
+            }
+            this.maxBatchSize = maxBatchSize;
+            int layerCount = layers.size();
+            this.layerWeights = new float[layerCount][];
+            this.layerBiases = new float[layerCount][];
+            this.inputDimensions = new int[layerCount];
+            this.outputDimensions = new int[layerCount];
+            int maxDimension = 0;
+            for (int i = 0; i < layerCount; i++) {
+                Layer layer = layers.get(i);
+                layerWeights[i] = layer.flatWeights();
+                layerBiases[i] = layer.bias.clone();
+                inputDimensions[i] = layer.inputDimension;
+                outputDimensions[i] = layer.outputDimension;
+                maxDimension = Math.max(maxDimension, layer.outputDimension);
+            }
+            this.inputDimension = inputDimensions[0];
+            this.outputDimension = outputDimensions[layerCount - 1];
+            this.input = new float[maxBatchSize * inputDimension];
+            this.first = new float[maxBatchSize * maxDimension];
+            this.second = new float[maxBatchSize * maxDimension];
+        }
 
-        try (BufferedReader reader = Files.newBufferedReader(networkFile.toPath(), StandardCharsets.UTF_8)) {
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
 
-            String line;
-            int nodeCount = -1;
-            int inputCount = -1;
+        /**
+         * Calculates soft-max outputs of `vectorCount` input vectors in row major `inputMatrix` starting from
+         * vector `offset`. Returned array is reused in next calls, it contains outputs in row major order and
+         * only the first vectorCount * outputDimension values are valid.
+         */
+        public float[] calculate(float[] inputMatrix, int offset, int vectorCount) {
+            return calculate(inputMatrix, offset, vectorCount, false, null);
+        }
 
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.length() == 0)
-                    continue;
+        /**
+         * Calculates scaled log likelihoods, log(softMax(x_i)) - logPriors[i], of `vectorCount` input vectors.
+         * Output logits are converted with a fused log soft-max so exp and log are not calculated per output.
+         * If logPriors is null, log soft-max values are returned. Returned array is reused as in calculate().
+         */
+        public float[] calculateLogLikelihoods(float[] inputMatrix, int offset, int vectorCount, float[] logPriors) {
+            if (logPriors != null && logPriors.length != outputDimension) {
+                throw new IllegalArgumentException("Prior count " + logPriors.length +
+                        " must be equal with network output size " + outputDimension);
+            }
+            return calculate(inputMatrix, offset, vectorCount, true, logPriors);
+        }
 
-                if (line.startsWith("<AffineTransform>")) {
-                    String layerCountInfo = line.substring(line.indexOf('>') + 1).trim();
-                    String[] split = layerCountInfo.split("[ ]+");
-                    nodeCount = Integer.parseInt(split[0]);
-                    inputCount = Integer.parseInt(split[1]);
+        private float[] calculate(float[] inputMatrix, int offset, int vectorCount, boolean log, float[] logPriors) {
+            float[] x = calculateHiddenLayers(inputMatrix, offset, vectorCount);
+            float[] out = x == first ? second : first;
+            int last = layerWeights.length - 1;
+            BlockedGemm.multiplyTransposed(
+                    x, vectorCount, layerWeights[last], outputDimension, inputDimensions[last], layerBiases[last], out);
+            for (int v = 0; v < vectorCount; v++) {
+                if (log) {
+                    Activations.logSoftMax(out, v * outputDimension, outputDimension, logPriors);
+                } else {
+                    softMax(out, v * outputDimension, outputDimension);
                 }
+            }
+            hiddenVectorCount = 0;
+            return out;
+        }
 
-                if (nodeCount == -1 || line.startsWith("<"))
-                    continue;
+        // calculates all layers except the output layer and returns the buffer that contains last hidden layer
+        // activations. For a network with a single layer it is the shifted and scaled input.
+        private float[] calculateHiddenLayers(float[] inputMatrix, int offset, int vectorCount) {
+            if (vectorCount > maxBatchSize) {
+                throw new IllegalArgumentException("Vector count " + vectorCount +
+                        " is larger than max batch size " + maxBatchSize);
+            }
+            int start = offset * inputDimension;
+            for (int v = 0; v < vectorCount; v++) {
+                int k = v * inputDimension;
+                for (int i = 0; i < inputDimension; i++) {
+                    input[k + i] = (inputMatrix[start + k + i] + shiftVector[i]) * scaleVector[i];
+                }
+            }
+            float[] x = input;
+            float[] out = first;
+            for (int l = 0; l < layerWeights.length - 1; l++) {
+                int dimension = outputDimensions[l];
+                BlockedGemm.multiplyTransposed(
+                        x, vectorCount, layerWeights[l], dimension, inputDimensions[l], layerBiases[l], out);
+                Activations.sigmoid(out, 0, vectorCount * dimension);
+                x = out;
+                out = out == first ? second : first;
+            }
+            return x;
+        }
 
-                float[][] weights = new float[nodeCount][inputCount];
-                float[] bias = new float[nodeCount];
+        /**
+         * Calculates hidden layers of `vectorCount` input vectors starting from vector `offset` and keeps last hidden
+         * layer activations, so that output logits can be calculated only for required nodes with outputLogits().
+         * A later calculate() call invalidates kept activations.
+         */
+        public void calculateHidden(float[] inputMatrix, int offset, int vectorCount) {
+            hidden = calculateHiddenLayers(inputMatrix, offset, vectorCount);
+            hiddenVectorCount = vectorCount;
+        }
 
-                // load weights. we read one more line for the bias vector.
-                for (int i = 0; i < nodeCount + 1; i++) {
-                    String l = i == 0 ? line : reader.readLine();
-                    String[] weightStrings = l.replaceAll("\\[|\\]", "").trim().split("[ ]+");
-                    int weightAmount = i < nodeCount ? inputCount : nodeCount;
-                    float[] weightLine = new float[weightAmount];
-                    for (int j = 0; j < weightLine.length; j++) {
-                        weightLine[j] = Float.parseFloat(weightStrings[j]);
-                    }
-                    if (i < nodeCount) {
-                        weights[i] = weightLine;
-                    } else {
-                        bias = weightLine;
+        private int hiddenOffset(int vectorIndex) {
+            if (vectorIndex < 0 || vectorIndex >= hiddenVectorCount) {
+                throw new IllegalArgumentException("Vector index " + vectorIndex + " is out of range. Vector count = "
+                        + hiddenVectorCount);
+            }
+            return vectorIndex * inputDimensions[layerWeights.length - 1];
+        }
+
+        /**
+         * Calculates output logits of a vector for the first `nodeCount` node indexes in `nodes`.
+         * logits[k] is set to the logit of node nodes[k]. Logits are not normalized.
+         */
+        public void outputLogits(int vectorIndex, int[] nodes, int nodeCount, float[] logits) {
+            int offset = hiddenOffset(vectorIndex);
+            int last = layerWeights.length - 1;
+            int k = inputDimensions[last];
+            for (int i = 0; i < nodeCount; i++) {
+                int node = nodes[i];
+                logits[i] = layerBiases[last][node] +
+                        BlockedGemm.dot(hidden, offset, layerWeights[last], node * k, 0, k);
+            }
+        }
+
+        /**
+         * Calculates output logits of a vector for nodes with non zero mask values. logits[node] is set for those
+         * nodes, other values are not changed. Logits are not normalized.
+         */
+        public void outputLogits(int vectorIndex, byte[] activeNodesMask, float[] logits) {
+            int offset = hiddenOffset(vectorIndex);
+            int last = layerWeights.length - 1;
+            int k = inputDimensions[last];
+            for (int node = 0; node < outputDimension; node++) {
+                if (activeNodesMask[node] != 0) {
+                    logits[node] = layerBiases[last][node] +
+                            BlockedGemm.dot(hidden, offset, layerWeights[last], node * k, 0, k);
+                }
+            }
+        }
+
+        /**
+         * Returns log(sum(exp(logit))) over all output nodes of a vector. Subtracting it from logits gives log
+         * soft-max values. This calculates the whole output layer for the vector, so it should be used only when
+         * normalized values are required. For Viterbi search it is not required, it is the same for all nodes of a
+         * frame.
+         */
+        public float logSumExp(int vectorIndex) {
+            int offset = hiddenOffset(vectorIndex);
+            int last = layerWeights.length - 1;
+            int k = inputDimensions[last];
+            // single pass log-sum-exp. When a new maximum is found, total is rescaled to it.
+            float max = Float.NEGATIVE_INFINITY;
+            float total = 0;
+            for (int node = 0; node < outputDimension; node++) {
+                float logit = layerBiases[last][node] +
+                        BlockedGemm.dot(hidden, offset, layerWeights[last], node * k, 0, k);
+                if (logit > max) {
+                    total = total * Activations.expNegative(max - logit) + 1;
+                    max = logit;
+                } else {
+                    total += Activations.expNegative(logit - max);
+                }
+            }
+            return max + (float) Math.log(total);
+        }
+
+        /**
+         * Calculates soft-max outputs of all input vectors, `maxBatchSize` vectors at a time.
+         */
+        public float[][] calculate(float[][] inputVectors) {
+            float[][] result = new float[inputVectors.length][];
+            float[] batch = new float[maxBatchSize * inputDimension];
+            for (int start = 0; start < inputVectors.length; start += maxBatchSize) {
+                int count = Math.min(maxBatchSize, inputVectors.length - start);
+                for (int v = 0; v < count; v++) {
+                    if (inputVectors[start + v].length != inputDimension) {
+                        throw new IllegalArgumentException(String.format(
+                                "Input vector size %d must be equal with network input size %d",
+                                inputVectors[start + v].length, inputDimension));
                     }
+                    System.arraycopy(inputVectors[start + v], 0, batch, v * inputDimension, inputDimension);
+                }
+                float[] output = calculate(batch, 0, count);
+                for (int v = 0; v < count; v++) {
+                    result[start + v] = Arrays.copyOfRange(output, v * outputDimension, (v + 1) * outputDimension);
                 }
-                Layer l = new Layer(weights, bias);
-                layers.add(l);
             }
+            return result;
+        }
+    }
+
+    static void softMax(float[] values, int offset, int length) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + length; i++) {
+            max = Math.max(max, values[i]);
+        }
+        float total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            values[i] = (float) Math.exp(values[i] - max);
+            total += values[i];
+        }
+        float inverse = 1f / total;
+        for (int i = offset; i < offset + length; i++) {
+            values[i] *= inverse;
         }
-        return layers;
+    }
+
+    public static float[] fromString(String str) {
+        String[] tokens = str.split("[ ]+");
+        float[] result = new float[tokens.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Float.parseFloat(tokens[i]);
+        }
+        return result;
     }
 
     public static FeedForwardNetwork loadFromBinary(File file) throws IOException {
@@ -354,6 +549,17 @@ public class FeedForwardNetwork {
             }
         }
 
+        /**
+         * Returns a copy of the weights in a single row major array. Weights of a node are consecutive.
+         */
+        public float[] flatWeights() {
+            float[] result = new float[inputDimension * outputDimension];
+            for (int i = 0; i < outputDimension; i++) {
+                System.arraycopy(weights[i], 0, result, i * inputDimension, inputDimension);
+            }
+            return result;
+        }
+
         /**
          * Calculates layer activations.
          */
@@ -402,15 +608,7 @@ public class FeedForwardNetwork {
     }
 
     public static void softMax(float[] f) {
-        float total = 0;
-        float[] expArray = new float[f.length];
-        for (int i = 0; i < expArray.length; i++) {
-            expArray[i] = (float) Math.exp(f[i]);
-            total += expArray[i];
-        }
-        for (int i = 0; i < f.length; i++) {
-            f[i] = expArray[i] / total;
-        }
+        softMax(f, 0, f.length);
     }
 
     public static void main(String[] args) throws IOException {
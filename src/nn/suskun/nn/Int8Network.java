@@ -0,0 +1,364 @@
+package suskun.nn;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A feed forward network with 8 bit weights and 8 bit activations, generated from a FeedForwardNetwork.
+ * <p>
+ * Weights of each node (a row of a layer) are linearly quantized to [-127, 127] with their own scale, so a few
+ * large weights in a layer do not reduce the precision of other nodes. Layer inputs are quantized to [-127, 127]
+ * too. Network input vectors use a scale calculated from their maximum magnitude, sigmoid activations use a
+ * fixed scale of 127. Dot products are calculated as int8 x int8 -> int32 and converted to float with the
+ * weight and input scales. Biases are floats.
+ * <p>
+ * Weights take a quarter of the float network memory. Instances are thread safe.
+ * <p>
+ * File format (big endian):
+ * [magic][version][layer count]
+ * layer: [input dimension][output dimension][row scales (float)]...[weights (byte)]...[bias (float)]...
+ * [shift vector (float)]...[scale vector (float)]...
+ */
+public class Int8Network {
+
+    static final Logger logger = LoggerFactory.getLogger(Int8Network.class);
+
+    static final int MAGIC = 0x53513849; // "SQ8I"
+    static final int VERSION = 1;
+    static final int LEVELS = 127;
+
+    final Layer[] layers;
+    final float[] shiftVector;
+    final float[] scaleVector;
+    final int inputDimension;
+    final int outputDimension;
+    final int maxDimension;
+
+    Int8Network(Layer[] layers, float[] shiftVector, float[] scaleVector) {
+        this.layers = layers;
+        this.shiftVector = shiftVector;
+        this.scaleVector = scaleVector;
+        this.inputDimension = layers[0].inputDimension;
+        this.outputDimension = layers[layers.length - 1].outputDimension;
+        int max = 0;
+        for (Layer layer : layers) {
+            max = Math.max(max, Math.max(layer.inputDimension, layer.outputDimension));
+        }
+        this.maxDimension = max;
+    }
+
+    public static Int8Network quantize(FeedForwardNetwork network) {
+        Layer[] layers = new Layer[network.layerCount()];
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = Layer.quantize(network.getLayer(i));
+        }
+        return new Int8Network(layers, network.getShiftVector().clone(), network.getScaleVector().clone());
+    }
+
+    public int inputDimension() {
+        return inputDimension;
+    }
+
+    public int outputDimension() {
+        return outputDimension;
+    }
+
+    public int layerCount() {
+        return layers.length;
+    }
+
+    /**
+     * Returns the amount of bytes used by quantized weights.
+     */
+    public long weightByteCount() {
+        long total = 0;
+        for (Layer layer : layers) {
+            total += layer.weights.length;
+        }
+        return total;
+    }
+
+    static final class Layer {
+        final int inputDimension;
+        final int outputDimension;
+        // row major, weights of a node are consecutive.
+        final byte[] weights;
+        // quantized weight = weight * rowScale.
+        final float[] rowScales;
+        final float[] bias;
+
+        Layer(int inputDimension, int outputDimension, byte[] weights, float[] rowScales, float[] bias) {
+            this.inputDimension = inputDimension;
+            this.outputDimension = outputDimension;
+            this.weights = weights;
+            this.rowScales = rowScales;
+            this.bias = bias;
+        }
+
+        static Layer quantize(FeedForwardNetwork.Layer layer) {
+            int in = layer.inputDimension;
+            int out = layer.outputDimension;
+            byte[] weights = new byte[in * out];
+            float[] rowScales = new float[out];
+            for (int i = 0; i < out; i++) {
+                float[] row = layer.weights[i];
+                float max = 0;
+                for (float w : row) {
+                    max = Math.max(max, Math.abs(w));
+                }
+                float scale = max == 0 ? 1 : LEVELS / max;
+                rowScales[i] = scale;
+                for (int j = 0; j < in; j++) {
+                    weights[i * in + j] = (byte) Math.round(row[j] * scale);
+                }
+            }
+            return new Layer(in, out, weights, rowScales, layer.bias.clone());
+        }
+
+        float weight(int node, int input) {
+            return weights[node * inputDimension + input] / rowScales[node];
+        }
+
+        /**
+         * Returns bias + dot(weights of node, input) / (row scale * input scale)
+         */
+        float activation(int node, byte[] input, int inputOffset, float inputScale) {
+            int k = node * inputDimension;
+            int sum = 0;
+            for (int i = 0; i < inputDimension; i++) {
+                sum += weights[k + i] * input[inputOffset + i];
+            }
+            return sum / (rowScales[node] * inputScale) + bias[node];
+        }
+    }
+
+    /**
+     * Calculates soft-max outputs of input vectors. Vectors are processed `batchSize` at a time, so weights of a node
+     * are read once for all vectors of a batch.
+     */
+    public float[][] calculate(float[][] input, int batchSize) {
+        float[][] result = new float[input.length][outputDimension];
+        byte[] current = new byte[batchSize * maxDimension];
+        byte[] next = new byte[batchSize * maxDimension];
+        float[] inputScales = new float[batchSize];
+        float[] activations = new float[batchSize * maxDimension];
+        for (int start = 0; start < input.length; start += batchSize) {
+            int count = Math.min(batchSize, input.length - start);
+            for (int v = 0; v < count; v++) {
+                inputScales[v] = quantizeInput(input[start + v], current, v * inputDimension);
+            }
+            for (int l = 0; l < layers.length; l++) {
+                Layer layer = layers[l];
+                boolean output = l == layers.length - 1;
+                int in = layer.inputDimension;
+                int out = layer.outputDimension;
+                for (int node = 0; node < out; node++) {
+                    for (int v = 0; v < count; v++) {
+                        float inputScale = l == 0 ? inputScales[v] : LEVELS;
+                        float a = layer.activation(node, current, v * in, inputScale);
+                        if (output) {
+                            result[start + v][node] = a;
+                        } else {
+                            activations[v * out + node] = a;
+                        }
+                    }
+                }
+                if (output) {
+                    for (int v = 0; v < count; v++) {
+                        FeedForwardNetwork.softMax(result[start + v], 0, out);
+                    }
+                } else {
+                    for (int i = 0; i < count * out; i++) {
+                        float sigmoid = (float) (1 / (1 + Math.exp(-activations[i])));
+                        next[i] = (byte) (int) (sigmoid * LEVELS + 0.5f);
+                    }
+                    byte[] tmp = current;
+                    current = next;
+                    next = tmp;
+                }
+            }
+        }
+        return result;
+    }
+
+    public float[][] calculate(float[][] input) {
+        return calculate(input, 8);
+    }
+
+    /**
+     * Applies shift and scale to input vector and quantizes it to [-127, 127]. Returns the quantization scale.
+     */
+    private float quantizeInput(float[] input, byte[] out, int offset) {
+        if (input.length != inputDimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Input vector size %d must be equal with network input size %d", input.length, inputDimension));
+        }
+        float max = 0;
+        for (int i = 0; i < inputDimension; i++) {
+            max = Math.max(max, Math.abs((input[i] + shiftVector[i]) * scaleVector[i]));
+        }
+        float scale = max == 0 ? 1 : LEVELS / max;
+        for (int i = 0; i < inputDimension; i++) {
+            out[offset + i] = (byte) Math.round((input[i] + shiftVector[i]) * scaleVector[i] * scale);
+        }
+        return scale;
+    }
+
+    /**
+     * Quantization error of a layer.
+     */
+    public static class LayerReport {
+        public final int layerIndex;
+        public final int inputDimension;
+        public final int outputDimension;
+        public final float maxWeightError;
+        public final float meanWeightError;
+        // root mean square of weight errors divided by root mean square of weights.
+        public final float relativeWeightError;
+
+        LayerReport(int layerIndex, int inputDimension, int outputDimension,
+                    float maxWeightError, float meanWeightError, float relativeWeightError) {
+            this.layerIndex = layerIndex;
+            this.inputDimension = inputDimension;
+            this.outputDimension = outputDimension;
+            this.maxWeightError = maxWeightError;
+            this.meanWeightError = meanWeightError;
+            this.relativeWeightError = relativeWeightError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Layer %d [%dx%d] max error = %.6f, mean error = %.6f, relative error = %.4f%%",
+                    layerIndex, inputDimension, outputDimension,
+                    maxWeightError, meanWeightError, relativeWeightError * 100);
+        }
+    }
+
+    /**
+     * Compares quantized weights with the weights of the original network.
+     */
+    public List<LayerReport> weightErrors(FeedForwardNetwork original) {
+        if (original.layerCount() != layers.length) {
+            throw new IllegalArgumentException("Layer count of original network " + original.layerCount() +
+                    " is not equal to " + layers.length);
+        }
+        List<LayerReport> reports = new ArrayList<>();
+        for (int l = 0; l < layers.length; l++) {
+            Layer layer = layers[l];
+            FeedForwardNetwork.Layer originalLayer = original.getLayer(l);
+            double max = 0;
+            double errorSum = 0;
+            double squareErrorSum = 0;
+            double squareSum = 0;
+            for (int i = 0; i < layer.outputDimension; i++) {
+                for (int j = 0; j < layer.inputDimension; j++) {
+                    double w = originalLayer.weights[i][j];
+                    double error = Math.abs(layer.weight(i, j) - w);
+                    max = Math.max(max, error);
+                    errorSum += error;
+                    squareErrorSum += error * error;
+                    squareSum += w * w;
+                }
+            }
+            int count = layer.inputDimension * layer.outputDimension;
+            reports.add(new LayerReport(l, layer.inputDimension, layer.outputDimension,
+                    (float) max, (float) (errorSum / count),
+                    squareSum == 0 ? 0 : (float) Math.sqrt(squareErrorSum / squareSum)));
+        }
+        return reports;
+    }
+
+    /**
+     * Returns the mean of maximum absolute output differences of this and the original network for `input` vectors.
+     */
+    public float meanOutputError(FeedForwardNetwork original, float[][] input) {
+        if (input.length == 0) {
+            return 0;
+        }
+        float[][] expected = original.batchCalculator(16).calculate(input);
+        float[][] actual = calculate(input);
+        double total = 0;
+        for (int i = 0; i < input.length; i++) {
+            float max = 0;
+            for (int j = 0; j < outputDimension; j++) {
+                max = Math.max(max, Math.abs(expected[i][j] - actual[i][j]));
+            }
+            total += max;
+        }
+        return (float) (total / input.length);
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(layers.length);
+            for (Layer layer : layers) {
+                dos.writeInt(layer.inputDimension);
+                dos.writeInt(layer.outputDimension);
+                FeedForwardNetwork.serializeRaw(dos, layer.rowScales);
+                dos.write(layer.weights);
+                FeedForwardNetwork.serializeRaw(dos, layer.bias);
+            }
+            FeedForwardNetwork.serializeRaw(dos, shiftVector);
+            FeedForwardNetwork.serializeRaw(dos, scaleVector);
+        }
+    }
+
+    public static Int8Network load(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (dis.readInt() != MAGIC) {
+                throw new IllegalStateException(file + " is not an int8 network file.");
+            }
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported int8 network version " + version + " in " + file);
+            }
+            Layer[] layers = new Layer[dis.readInt()];
+            for (int i = 0; i < layers.length; i++) {
+                int in = dis.readInt();
+                int out = dis.readInt();
+                float[] rowScales = FeedForwardNetwork.deserializeRaw(dis, out);
+                byte[] weights = new byte[in * out];
+                dis.readFully(weights);
+                float[] bias = FeedForwardNetwork.deserializeRaw(dis, out);
+                layers[i] = new Layer(in, out, weights, rowScales, bias);
+            }
+            int inputDimension = layers[0].inputDimension;
+            float[] shiftVector = FeedForwardNetwork.deserializeRaw(dis, inputDimension);
+            float[] scaleVector = FeedForwardNetwork.deserializeRaw(dis, inputDimension);
+            return new Int8Network(layers, shiftVector, scaleVector);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File root = new File("../../data/large-16khz");
+        FeedForwardNetwork network = FeedForwardNetwork.loadFromBinary(new File(root, "nnet.bin"));
+        Int8Network quantized = quantize(network);
+        for (LayerReport report : quantized.weightErrors(network)) {
+            logger.info(report.toString());
+        }
+        Random random = new Random(1);
+        float[][] input = new float[100][quantized.inputDimension()];
+        for (float[] vector : input) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        logger.info("Mean output error for random input = {}", quantized.meanOutputError(network, input));
+        logger.info("Weight bytes = {}", quantized.weightByteCount());
+        quantized.save(new File(root, "nnet.int8"));
+    }
+}
@@ -0,0 +1,284 @@
+package suskun.nn;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Pure Java implementation of the quantized network calculation of QuantizedDnn native code.
+ * <p>
+ * First layer weights and all bias values are floats. Weights of other layers are linearly quantized to
+ * [-127, 127] per layer after trimming them to [-weightCutOffValue, weightCutOffValue]. Sigmoid activations
+ * are quantized to [0, 255], so hidden layer dot products are calculated with integers.
+ * <p>
+ * Inputs are processed in batches, for each node weights are read once and applied to all vectors of a batch.
+ * Inner loops are simple array loops so that JIT compiler can vectorize them.
+ * Instances are thread safe.
+ */
+final class JavaQuantizedDnn {
+
+    static final int ACTIVATION_LEVELS = 255;
+
+    final int inputDimension;
+    final int outputDimension;
+    final float[] shiftVector;
+    final float[] scaleVector;
+
+    final FloatLayer firstLayer;
+    // layers after the first layer. Last one is the output layer.
+    final QuantizedLayer[] layers;
+    final QuantizedLayer outputLayer;
+    // size of the largest hidden layer.
+    final int maxHiddenDimension;
+
+    JavaQuantizedDnn(FeedForwardNetwork network, float weightCutOffValue) {
+        if (network.layerCount() < 2) {
+            throw new IllegalArgumentException("Network must have at least two layers. But it has " +
+                    network.layerCount());
+        }
+        this.firstLayer = new FloatLayer(network.getLayer(0));
+        this.inputDimension = firstLayer.inputDimension;
+        this.shiftVector = network.getShiftVector().clone();
+        this.scaleVector = network.getScaleVector().clone();
+        this.layers = new QuantizedLayer[network.layerCount() - 1];
+        int max = firstLayer.outputDimension;
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = new QuantizedLayer(network.getLayer(i + 1), weightCutOffValue);
+            max = Math.max(max, layers[i].inputDimension);
+        }
+        this.outputLayer = layers[layers.length - 1];
+        this.outputDimension = outputLayer.outputDimension;
+        this.maxHiddenDimension = max;
+    }
+
+    static JavaQuantizedDnn loadFromFile(File dnnFile, float weightCutOffValue) throws IOException {
+        return new JavaQuantizedDnn(FeedForwardNetwork.loadFromBinary(dnnFile), weightCutOffValue);
+    }
+
+    int layerCount() {
+        return layers.length + 1;
+    }
+
+    int layerDimension(int layerIndex) {
+        return layerIndex == 0 ? firstLayer.inputDimension : layers[layerIndex - 1].inputDimension;
+    }
+
+    /**
+     * Calculates soft-max outputs of input vectors. Vectors are processed `batchSize` at a time.
+     */
+    float[][] calculate(float[][] input, int batchSize) {
+        return calculate(input, batchSize, false, null);
+    }
+
+    /**
+     * Calculates scaled log likelihoods, log(softMax(x_i)) - logPriors[i], with a fused log soft-max.
+     */
+    float[][] calculateLogLikelihoods(float[][] input, int batchSize, float[] logPriors) {
+        return calculate(input, batchSize, true, logPriors);
+    }
+
+    private float[][] calculate(float[][] input, int batchSize, boolean log, float[] logPriors) {
+        float[][] result = new float[input.length][outputDimension];
+        Buffers buffers = new Buffers(batchSize);
+        for (int start = 0; start < input.length; start += batchSize) {
+            int count = Math.min(batchSize, input.length - start);
+            byte[] hidden = calculateHidden(input, start, count, buffers);
+            for (int node = 0; node < outputDimension; node++) {
+                for (int v = 0; v < count; v++) {
+                    result[start + v][node] = outputLayer.activation(node, hidden, v * outputLayer.inputDimension);
+                }
+            }
+            for (int v = 0; v < count; v++) {
+                if (log) {
+                    Activations.logSoftMax(result[start + v], 0, outputDimension, logPriors);
+                } else {
+                    FeedForwardNetwork.softMax(result[start + v], 0, outputDimension);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates quantized activations of last hidden layer for vectors in [start, start + count) and returns the
+     * buffer that contains them. Activations of vector i are at [i * hiddenDimension, (i + 1) * hiddenDimension)
+     */
+    private byte[] calculateHidden(float[][] input, int start, int count, Buffers buffers) {
+        float[] x = buffers.input;
+        for (int v = 0; v < count; v++) {
+            float[] in = input[start + v];
+            if (in.length != inputDimension) {
+                throw new IllegalArgumentException(String.format(
+                        "Input vector size %d must be equal with network input size %d", in.length, inputDimension));
+            }
+            int k = v * inputDimension;
+            for (int i = 0; i < inputDimension; i++) {
+                x[k + i] = (in[i] + shiftVector[i]) * scaleVector[i];
+            }
+        }
+        byte[] current = buffers.first;
+        byte[] next = buffers.second;
+        int dimension = firstLayer.outputDimension;
+        for (int node = 0; node < dimension; node++) {
+            for (int v = 0; v < count; v++) {
+                current[v * dimension + node] = quantize(sigmoid(firstLayer.activation(node, x, v * inputDimension)));
+            }
+        }
+        for (int l = 0; l < layers.length - 1; l++) {
+            QuantizedLayer layer = layers[l];
+            int in = layer.inputDimension;
+            int out = layer.outputDimension;
+            for (int node = 0; node < out; node++) {
+                for (int v = 0; v < count; v++) {
+                    next[v * out + node] = quantize(sigmoid(layer.activation(node, current, v * in)));
+                }
+            }
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        return current;
+    }
+
+    static float sigmoid(float x) {
+        return Activations.sigmoid(x);
+    }
+
+    static byte quantize(float activation) {
+        return (byte) (int) (activation * ACTIVATION_LEVELS + 0.5f);
+    }
+
+    private class Buffers {
+        final float[] input;
+        final byte[] first;
+        final byte[] second;
+
+        Buffers(int batchSize) {
+            this.input = new float[batchSize * inputDimension];
+            this.first = new byte[batchSize * maxHiddenDimension];
+            this.second = new byte[batchSize * maxHiddenDimension];
+        }
+    }
+
+    static final class FloatLayer {
+        final int inputDimension;
+        final int outputDimension;
+        // row major, weights of a node are consecutive.
+        final float[] weights;
+        final float[] bias;
+
+        FloatLayer(FeedForwardNetwork.Layer layer) {
+            this.inputDimension = layer.inputDimension;
+            this.outputDimension = layer.outputDimension;
+            this.weights = layer.flatWeights();
+            this.bias = layer.bias.clone();
+        }
+
+        float activation(int node, float[] input, int inputOffset) {
+            int k = node * inputDimension;
+            float sum = 0;
+            for (int i = 0; i < inputDimension; i++) {
+                sum += weights[k + i] * input[inputOffset + i];
+            }
+            return sum + bias[node];
+        }
+    }
+
+    static final class QuantizedLayer {
+        final int inputDimension;
+        final int outputDimension;
+        // row major, weights of a node are consecutive.
+        final byte[] weights;
+        final float[] bias;
+        // converts integer dot product to float.
+        final float dequantizer;
+
+        QuantizedLayer(FeedForwardNetwork.Layer layer, float weightCutOffValue) {
+            this.inputDimension = layer.inputDimension;
+            this.outputDimension = layer.outputDimension;
+            float max = 0;
+            for (float[] nodeWeights : layer.weights) {
+                for (float w : nodeWeights) {
+                    max = Math.max(max, Math.min(Math.abs(w), weightCutOffValue));
+                }
+            }
+            float weightScale = max == 0 ? 1 : 127f / max;
+            this.weights = new byte[inputDimension * outputDimension];
+            for (int i = 0; i < outputDimension; i++) {
+                for (int j = 0; j < inputDimension; j++) {
+                    float w = Math.max(-weightCutOffValue, Math.min(weightCutOffValue, layer.weights[i][j]));
+                    weights[i * inputDimension + j] = (byte) Math.round(w * weightScale);
+                }
+            }
+            this.bias = layer.bias.clone();
+            this.dequantizer = 1f / (weightScale * ACTIVATION_LEVELS);
+        }
+
+        float activation(int node, byte[] input, int inputOffset) {
+            int k = node * inputDimension;
+            int sum = 0;
+            for (int i = 0; i < inputDimension; i++) {
+                sum += weights[k + i] * (input[inputOffset + i] & 0xff);
+            }
+            return sum * dequantizer + bias[node];
+        }
+    }
+
+    /**
+     * Keeps last hidden layer activations of all input vectors and calculates output nodes on request.
+     * Not thread safe.
+     */
+    final class LazyContext {
+        final int batchSize;
+        byte[] hidden = new byte[0];
+        int vectorCount;
+
+        LazyContext(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        void calculateUntilOutput(float[][] input) {
+            int dimension = outputLayer.inputDimension;
+            if (hidden.length < input.length * dimension) {
+                hidden = new byte[input.length * dimension];
+            }
+            Buffers buffers = new Buffers(batchSize);
+            for (int start = 0; start < input.length; start += batchSize) {
+                int count = Math.min(batchSize, input.length - start);
+                byte[] result = calculateHidden(input, start, count, buffers);
+                System.arraycopy(result, 0, hidden, start * dimension, count * dimension);
+            }
+            this.vectorCount = input.length;
+        }
+
+        /**
+         * Calculates scaled log likelihoods of all output nodes. Hidden activations of this context are not used.
+         */
+        float[][] calculateLogLikelihoods(float[][] input, float[] logPriors) {
+            return JavaQuantizedDnn.this.calculateLogLikelihoods(input, batchSize, logPriors);
+        }
+
+        /**
+         * Writes soft-max outputs of nodes with non zero mask values to the beginning of `output` in node order and
+         * returns their count. Soft-max is normalized over the calculated nodes only.
+         */
+        int calculateForOutputNodes(int vectorIndex, byte[] activeNodesMask, float[] output) {
+            if (vectorIndex >= vectorCount) {
+                throw new IllegalArgumentException("Vector index " + vectorIndex + " is out of range. Vector count = "
+                        + vectorCount);
+            }
+            if (output.length < outputDimension) {
+                throw new IllegalArgumentException("Output length must be at least " + outputDimension +
+                        ". But it is " + output.length);
+            }
+            int offset = vectorIndex * outputLayer.inputDimension;
+            int k = 0;
+            for (int node = 0; node < outputDimension; node++) {
+                if (activeNodesMask[node] != 0) {
+                    output[k++] = outputLayer.activation(node, hidden, offset);
+                }
+            }
+            FeedForwardNetwork.softMax(output, 0, k);
+            return k;
+        }
+    }
+}
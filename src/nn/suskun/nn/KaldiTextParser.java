@@ -0,0 +1,280 @@
+package suskun.nn;
+
+import suskun.core.text.AsciiNumbers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses Kaldi nnet1 text network and feature transform files. Files are memory mapped and numbers are parsed
+ * directly from bytes into preallocated weight arrays, so no lines or String objects are created.
+ * <p>
+ * Each layer starts with an `AffineTransform` tag, so layers of a network file can be parsed in parallel.
+ * Network file format:
+ * <pre>
+ * &lt;AffineTransform&gt; [output dimension] [input dimension]
+ * &lt;LearnRateCoef&gt; 1 &lt;BiasLearnRateCoef&gt; 1 [
+ *   weights of node 0
+ *   ...
+ *   weights of last node ]
+ *  [ bias values ]
+ * &lt;Sigmoid&gt; ...
+ * </pre>
+ */
+public final class KaldiTextParser {
+
+    static final byte[] AFFINE_TRANSFORM_TAG = "<AffineTransform>".getBytes(StandardCharsets.US_ASCII);
+
+    private KaldiTextParser() {
+    }
+
+    /**
+     * Parses affine transform layers of a network file. Layers are parsed with `threadCount` threads.
+     */
+    public static List<FeedForwardNetwork.Layer> parseLayers(Path networkFile, int threadCount) throws IOException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        }
+        ByteBuffer buffer = map(networkFile);
+        List<Integer> starts = new ArrayList<>();
+        for (int i = indexOf(buffer, AFFINE_TRANSFORM_TAG, 0); i >= 0;
+             i = indexOf(buffer, AFFINE_TRANSFORM_TAG, i + AFFINE_TRANSFORM_TAG.length)) {
+            starts.add(i);
+        }
+        starts.add(buffer.limit());
+        int layerCount = starts.size() - 1;
+        List<FeedForwardNetwork.Layer> layers = new ArrayList<>(layerCount);
+        if (threadCount == 1 || layerCount < 2) {
+            for (int i = 0; i < layerCount; i++) {
+                layers.add(parseLayer(new Tokenizer(buffer, starts.get(i), starts.get(i + 1))));
+            }
+            return layers;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, layerCount));
+        try {
+            List<Future<FeedForwardNetwork.Layer>> futures = new ArrayList<>(layerCount);
+            for (int i = 0; i < layerCount; i++) {
+                Tokenizer tokenizer = new Tokenizer(buffer, starts.get(i), starts.get(i + 1));
+                futures.add(executor.submit(() -> parseLayer(tokenizer)));
+            }
+            for (Future<FeedForwardNetwork.Layer> future : futures) {
+                layers.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Parsing is interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return layers;
+    }
+
+    /**
+     * Parses shift and scale vectors of a feature transform file. File contains either [shift] [scale] blocks or
+     * [splice] [shift] [scale] blocks. Splice block is ignored. Result is {shift vector, scale vector}
+     */
+    public static float[][] parseTransform(Path transformFile) throws IOException {
+        ByteBuffer buffer = map(transformFile);
+        Tokenizer tokenizer = new Tokenizer(buffer, 0, buffer.limit());
+        List<float[]> blocks = new ArrayList<>();
+        FloatList values = new FloatList();
+        while (tokenizer.next()) {
+            if (tokenizer.is('[')) {
+                values.size = 0;
+                while (tokenizer.next() && !tokenizer.is(']')) {
+                    values.add(tokenizer.parseFloat());
+                }
+                blocks.add(values.toArray());
+            }
+        }
+        if (blocks.size() == 3) {
+            blocks.remove(0);
+        }
+        if (blocks.size() != 2) {
+            throw new IllegalStateException("Unexpected feature transformation vector size : " + blocks.size());
+        }
+        return new float[][]{blocks.get(0), blocks.get(1)};
+    }
+
+    static FeedForwardNetwork.Layer parseLayer(Tokenizer tokenizer) {
+        tokenizer.expectNext();
+        if (!tokenizer.matches(AFFINE_TRANSFORM_TAG)) {
+            throw tokenizer.error("Expected " + new String(AFFINE_TRANSFORM_TAG, StandardCharsets.US_ASCII));
+        }
+        tokenizer.expectNext();
+        int outputDimension = tokenizer.parseInt();
+        tokenizer.expectNext();
+        int inputDimension = tokenizer.parseInt();
+        // skip learning rate tags and their values.
+        do {
+            tokenizer.expectNext();
+        } while (!tokenizer.is('['));
+        float[][] weights = new float[outputDimension][inputDimension];
+        for (float[] nodeWeights : weights) {
+            tokenizer.parseFloats(nodeWeights);
+        }
+        tokenizer.expect(']');
+        tokenizer.expect('[');
+        float[] bias = new float[outputDimension];
+        tokenizer.parseFloats(bias);
+        tokenizer.expect(']');
+        return new FeedForwardNetwork.Layer(weights, bias);
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("File " + path + " is larger than 2GB.");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    static int indexOf(ByteBuffer buffer, byte[] pattern, int from) {
+        int last = buffer.limit() - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (buffer.get(i) != pattern[0]) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && buffer.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits bytes in a range of a buffer to white space separated tokens. '[' and ']' are always single tokens.
+     * Uses absolute positions, so tokenizers of different ranges can share a buffer.
+     */
+    static final class Tokenizer {
+        final ByteBuffer buffer;
+        final int end;
+        int position;
+        int tokenStart;
+        int tokenEnd;
+
+        Tokenizer(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean next() {
+            while (position < end && AsciiNumbers.isWhiteSpace(buffer.get(position))) {
+                position++;
+            }
+            if (position == end) {
+                return false;
+            }
+            tokenStart = position;
+            byte b = buffer.get(position++);
+            if (b != '[' && b != ']') {
+                while (position < end) {
+                    b = buffer.get(position);
+                    if (AsciiNumbers.isWhiteSpace(b) || b == '[' || b == ']') {
+                        break;
+                    }
+                    position++;
+                }
+            }
+            tokenEnd = position;
+            return true;
+        }
+
+        void expectNext() {
+            if (!next()) {
+                throw error("Unexpected end of data");
+            }
+        }
+
+        void expect(char c) {
+            expectNext();
+            if (!is(c)) {
+                throw error("Expected " + c);
+            }
+        }
+
+        boolean is(char c) {
+            return tokenEnd - tokenStart == 1 && buffer.get(tokenStart) == c;
+        }
+
+        boolean matches(byte[] bytes) {
+            if (tokenEnd - tokenStart != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (buffer.get(tokenStart + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int parseInt() {
+            return AsciiNumbers.parseInt(buffer, tokenStart, tokenEnd);
+        }
+
+        float parseFloat() {
+            if (is(']') || is('[')) {
+                throw error("Expected a number");
+            }
+            return AsciiNumbers.parseFloat(buffer, tokenStart, tokenEnd);
+        }
+
+        void parseFloats(float[] values) {
+            for (int i = 0; i < values.length; i++) {
+                expectNext();
+                values[i] = parseFloat();
+            }
+        }
+
+        IllegalStateException error(String message) {
+            byte[] bytes = new byte[Math.min(tokenEnd - tokenStart, 50)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(tokenStart + i);
+            }
+            return new IllegalStateException(message + " at byte " + tokenStart + ". Token = [" +
+                    new String(bytes, StandardCharsets.US_ASCII) + "]");
+        }
+    }
+
+    private static final class FloatList {
+        float[] values = new float[64];
+        int size;
+
+        void add(float value) {
+            if (size == values.length) {
+                float[] expanded = new float[size * 2];
+                System.arraycopy(values, 0, expanded, 0, size);
+                values = expanded;
+            }
+            values[size++] = value;
+        }
+
+        float[] toArray() {
+            float[] result = new float[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package suskun.nn;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A feed forward network that memory maps its file and exposes weights as read only FloatBuffer views.
+ * Nothing is copied to the heap, so loading takes constant time and processes that map the same file share the
+ * operating system page cache.
+ * <p>
+ * File layout. Header values are ints, offsets are longs. Floats are in the byte order of the machine that wrote
+ * the file, the byte order mark tells which one it is:
+ * [magic][version][byte order mark = 1][alignment][layer count]
+ * [input dimension][output dimension][weights offset][bias offset]... (for each layer)
+ * [shift vector offset][scale vector offset]
+ * Weights are row major, weights of a node are consecutive. Every float array starts at an offset that is a
+ * multiple of alignment (64 bytes, a cache line).
+ */
+public class MappedNetwork {
+
+    static final Logger logger = LoggerFactory.getLogger(MappedNetwork.class);
+
+    static final int MAGIC = 0x534d4e4e; // "SMNN"
+    static final int VERSION = 1;
+    static final int ALIGNMENT = 64;
+    static final int HEADER_INT_COUNT = 5;
+
+    private final ByteBuffer buffer;
+    private final int[] inputDimensions;
+    private final int[] outputDimensions;
+    private final FloatBuffer[] weights;
+    private final FloatBuffer[] biases;
+    private final FloatBuffer shiftVector;
+    private final FloatBuffer scaleVector;
+
+    private MappedNetwork(ByteBuffer buffer) {
+        this.buffer = buffer;
+        // byte order mark is 1 in file byte order. Header is written in file byte order as well.
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        if (buffer.order(order).getInt(8) != 1) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        }
+        buffer.order(order);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a mapped network file.");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported mapped network version " + version +
+                    ". Expected version is " + VERSION);
+        }
+        if (order != ByteOrder.nativeOrder()) {
+            logger.warn("Network file byte order {} is not native byte order {}. Calculations will be slower.",
+                    order, ByteOrder.nativeOrder());
+        }
+        int layerCount = buffer.getInt(16);
+        this.inputDimensions = new int[layerCount];
+        this.outputDimensions = new int[layerCount];
+        this.weights = new FloatBuffer[layerCount];
+        this.biases = new FloatBuffer[layerCount];
+        int k = HEADER_INT_COUNT * 4;
+        for (int i = 0; i < layerCount; i++) {
+            inputDimensions[i] = buffer.getInt(k);
+            outputDimensions[i] = buffer.getInt(k + 4);
+            weights[i] = floatView(buffer.getLong(k + 8), inputDimensions[i] * outputDimensions[i]);
+            biases[i] = floatView(buffer.getLong(k + 16), outputDimensions[i]);
+            k += 24;
+        }
+        this.shiftVector = floatView(buffer.getLong(k), inputDimensions[0]);
+        this.scaleVector = floatView(buffer.getLong(k + 8), inputDimensions[0]);
+    }
+
+    private FloatBuffer floatView(long offset, int length) {
+        if (offset + length * 4L > buffer.capacity()) {
+            throw new IllegalStateException("Array at offset " + offset + " with length " + length +
+                    " exceeds file size " + buffer.capacity());
+        }
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.position((int) offset);
+        view.limit((int) (offset + length * 4L));
+        return view.slice().order(buffer.order()).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    public static MappedNetwork load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Network file " + path + " is larger than 2GB.");
+            }
+            return new MappedNetwork(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes network in mapped network format with native byte order.
+     */
+    public static void save(FeedForwardNetwork network, Path path) throws IOException {
+        int layerCount = network.layerCount();
+        long offset = HEADER_INT_COUNT * 4 + layerCount * 24L + 16;
+        List<float[]> arrays = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < layerCount; i++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(i);
+            arrays.add(layer.flatWeights());
+            arrays.add(layer.bias);
+        }
+        arrays.add(network.getShiftVector());
+        arrays.add(network.getScaleVector());
+        for (float[] array : arrays) {
+            offset = align(offset);
+            offsets.add(offset);
+            offset += array.length * 4L;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Network is too large for mapped network format.");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) offset).order(ByteOrder.nativeOrder());
+        out.putInt(MAGIC).putInt(VERSION).putInt(1).putInt(ALIGNMENT).putInt(layerCount);
+        for (int i = 0; i < layerCount; i++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(i);
+            out.putInt(layer.inputDimension)
+                    .putInt(layer.outputDimension)
+                    .putLong(offsets.get(i * 2))
+                    .putLong(offsets.get(i * 2 + 1));
+        }
+        out.putLong(offsets.get(layerCount * 2)).putLong(offsets.get(layerCount * 2 + 1));
+        for (int i = 0; i < arrays.size(); i++) {
+            out.position((int) (long) offsets.get(i));
+            out.asFloatBuffer().put(arrays.get(i));
+        }
+        out.position(0);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public int layerCount() {
+        return weights.length;
+    }
+
+    public int inputDimension(int layerIndex) {
+        return inputDimensions[layerIndex];
+    }
+
+    public int outputDimension(int layerIndex) {
+        return outputDimensions[layerIndex];
+    }
+
+    public ByteOrder byteOrder() {
+        return buffer.order();
+    }
+
+    /**
+     * Returns a read only view of the row major weights of a layer. Weight of input j for node i is at
+     * i * inputDimension + j. Each call returns a new view, views are not thread safe but cheap to create.
+     */
+    public FloatBuffer weights(int layerIndex) {
+        return weights[layerIndex].duplicate();
+    }
+
+    public FloatBuffer bias(int layerIndex) {
+        return biases[layerIndex].duplicate();
+    }
+
+    public FloatBuffer shiftVector() {
+        return shiftVector.duplicate();
+    }
+
+    public FloatBuffer scaleVector() {
+        return scaleVector.duplicate();
+    }
+
+    /**
+     * Calculates soft-max outputs of input vectors directly from mapped weights.
+     */
+    public float[][] calculate(float[][] input) {
+        int inputDimension = inputDimensions[0];
+        float[][] current = new float[input.length][];
+        for (int v = 0; v < input.length; v++) {
+            if (input[v].length != inputDimension) {
+                throw new IllegalArgumentException(String.format(
+                        "Input vector size %d must be equal with network input size %d",
+                        input[v].length, inputDimension));
+            }
+            current[v] = new float[inputDimension];
+            for (int i = 0; i < inputDimension; i++) {
+                current[v][i] = (input[v][i] + shiftVector.get(i)) * scaleVector.get(i);
+            }
+        }
+        for (int l = 0; l < weights.length; l++) {
+            FloatBuffer w = weights[l];
+            FloatBuffer b = biases[l];
+            int in = inputDimensions[l];
+            int out = outputDimensions[l];
+            float[][] next = new float[input.length][out];
+            for (int node = 0; node < out; node++) {
+                int k = node * in;
+                for (int v = 0; v < input.length; v++) {
+                    float[] x = current[v];
+                    float sum = 0;
+                    for (int i = 0; i < in; i++) {
+                        sum += w.get(k + i) * x[i];
+                    }
+                    next[v][node] = sum + b.get(node);
+                }
+            }
+            for (float[] vector : next) {
+                if (l < weights.length - 1) {
+                    FeedForwardNetwork.sigmoid(vector);
+                } else {
+                    FeedForwardNetwork.softMax(vector, 0, out);
+                }
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get("../../data/large-16khz");
+        FeedForwardNetwork network = FeedForwardNetwork.loadFromBinary(root.resolve("nnet.bin").toFile());
+        save(network, root.resolve("nnet.mapped"));
+        long start = System.nanoTime();
+        MappedNetwork mapped = load(root.resolve("nnet.mapped"));
+        logger.info("Mapped network with {} layers loaded in {} ms.",
+                mapped.layerCount(), (System.nanoTime() - start) / 1_000_000);
+    }
+}
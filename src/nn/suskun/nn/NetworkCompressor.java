@@ -0,0 +1,442 @@
+package suskun.nn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Offline compression of feed forward networks.
+ * <p>
+ * Node pruning removes hidden nodes with low saliency, which is the standard deviation of the node activation on
+ * sample inputs multiplied with the norm of its outgoing weights. Mean contribution of a removed node is added to
+ * the bias of the next layer. Pruned networks are regular networks, so all backends can run them.
+ * <p>
+ * Low rank factorization approximates hidden layer weights W [out x in] with U [out x rank] * V [rank x in] using
+ * subspace iteration. There is no linear layer in network files or in the quantized backends, so factorized layers
+ * are evaluated with this class only. Reports show the calculation cost and output divergence of both methods.
+ */
+public class NetworkCompressor {
+
+    final FeedForwardNetwork network;
+    // sample inputs used for activation statistics and divergence measurement.
+    final float[][] samples;
+
+    public NetworkCompressor(FeedForwardNetwork network, float[][] samples) {
+        if (samples.length == 0) {
+            throw new IllegalArgumentException("At least one sample is required.");
+        }
+        this.network = network;
+        this.samples = samples;
+    }
+
+    /**
+     * Removes low saliency nodes of hidden layers. Amount of kept nodes of a layer is `keepRatio` of its nodes,
+     * rounded up to a multiple of `alignment`, so aligned networks stay aligned.
+     */
+    public FeedForwardNetwork pruneNodes(float keepRatio, int alignment) {
+        if (keepRatio <= 0 || keepRatio > 1) {
+            throw new IllegalArgumentException("Keep ratio must be in (0, 1]. But it is " + keepRatio);
+        }
+        if (alignment <= 0) {
+            throw new IllegalArgumentException("Alignment must be positive. But it is " + alignment);
+        }
+        List<float[][]> activations = hiddenActivations(network, samples);
+        List<FeedForwardNetwork.Layer> layers = new ArrayList<>();
+        for (int l = 0; l < network.layerCount(); l++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(l);
+            layers.add(new FeedForwardNetwork.Layer(copy(layer.weights), layer.bias.clone()));
+        }
+        for (int l = 0; l < layers.size() - 1; l++) {
+            FeedForwardNetwork.Layer layer = layers.get(l);
+            FeedForwardNetwork.Layer nextLayer = layers.get(l + 1);
+            float[][] layerActivations = activations.get(l);
+            int nodeCount = layer.outputDimension;
+            int keepCount = Math.min(nodeCount,
+                    alignedSize((int) Math.ceil(nodeCount * keepRatio), alignment));
+
+            double[] mean = new double[nodeCount];
+            double[] saliency = new double[nodeCount];
+            for (int j = 0; j < nodeCount; j++) {
+                double sum = 0;
+                double squareSum = 0;
+                for (float[] sample : layerActivations) {
+                    sum += sample[j];
+                    squareSum += sample[j] * sample[j];
+                }
+                mean[j] = sum / layerActivations.length;
+                double variance = Math.max(0, squareSum / layerActivations.length - mean[j] * mean[j]);
+                double norm = 0;
+                for (float[] nodeWeights : nextLayer.weights) {
+                    norm += nodeWeights[j] * nodeWeights[j];
+                }
+                saliency[j] = Math.sqrt(variance) * Math.sqrt(norm);
+            }
+            int[] kept = topIndexes(saliency, keepCount);
+            boolean[] isKept = new boolean[nodeCount];
+            for (int j : kept) {
+                isKept[j] = true;
+            }
+
+            float[][] weights = new float[keepCount][];
+            float[] bias = new float[keepCount];
+            for (int k = 0; k < keepCount; k++) {
+                weights[k] = layer.weights[kept[k]];
+                bias[k] = layer.bias[kept[k]];
+            }
+            float[][] nextWeights = new float[nextLayer.outputDimension][keepCount];
+            float[] nextBias = nextLayer.bias.clone();
+            for (int i = 0; i < nextLayer.outputDimension; i++) {
+                float[] row = nextLayer.weights[i];
+                double removed = 0;
+                for (int j = 0; j < nodeCount; j++) {
+                    if (!isKept[j]) {
+                        removed += row[j] * mean[j];
+                    }
+                }
+                nextBias[i] += removed;
+                for (int k = 0; k < keepCount; k++) {
+                    nextWeights[i][k] = row[kept[k]];
+                }
+            }
+            layers.set(l, new FeedForwardNetwork.Layer(weights, bias));
+            layers.set(l + 1, new FeedForwardNetwork.Layer(nextWeights, nextBias));
+        }
+        return new FeedForwardNetwork(layers, network.getShiftVector().clone(), network.getScaleVector().clone());
+    }
+
+    /**
+     * Factorizes hidden layers with rank = `rankRatio` * min(input, output) of each layer. Layers that would not
+     * become cheaper are not factorized and their entry in the result is null. Output layer is never factorized.
+     */
+    public LowRankLayer[] factorize(float rankRatio, int iterations, Random random) {
+        if (rankRatio <= 0 || rankRatio > 1) {
+            throw new IllegalArgumentException("Rank ratio must be in (0, 1]. But it is " + rankRatio);
+        }
+        LowRankLayer[] result = new LowRankLayer[network.layerCount()];
+        for (int l = 0; l < network.layerCount() - 1; l++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(l);
+            int rank = Math.max(1, (int) Math.ceil(Math.min(layer.inputDimension, layer.outputDimension) * rankRatio));
+            if ((long) rank * (layer.inputDimension + layer.outputDimension) <
+                    (long) layer.inputDimension * layer.outputDimension) {
+                result[l] = LowRankLayer.factorize(layer, rank, iterations, random);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A layer with weights U * V. U is [output x rank], V is [rank x input].
+     */
+    public static final class LowRankLayer {
+        public final int rank;
+        public final float[][] u;
+        public final float[][] v;
+        public final float[] bias;
+        // Frobenius norm of (W - U * V) divided by Frobenius norm of W.
+        public final double relativeError;
+
+        LowRankLayer(float[][] u, float[][] v, float[] bias, double relativeError) {
+            this.rank = v.length;
+            this.u = u;
+            this.v = v;
+            this.bias = bias;
+            this.relativeError = relativeError;
+        }
+
+        /**
+         * Finds an orthonormal basis Q of the dominant column space of W with subspace iteration, then
+         * U = Q and V = Q^T * W.
+         */
+        static LowRankLayer factorize(FeedForwardNetwork.Layer layer, int rank, int iterations, Random random) {
+            int out = layer.outputDimension;
+            int in = layer.inputDimension;
+            float[][] w = layer.weights;
+            // basis vectors are kept as rows. q[r] has `out` values.
+            double[][] omega = new double[rank][in];
+            for (double[] row : omega) {
+                for (int i = 0; i < in; i++) {
+                    row[i] = random.nextGaussian();
+                }
+            }
+            double[][] q = multiply(w, omega, out);
+            orthonormalize(q);
+            for (int it = 0; it < iterations; it++) {
+                double[][] z = multiplyTransposed(w, q, in);
+                orthonormalize(z);
+                q = multiply(w, z, out);
+                orthonormalize(q);
+            }
+            // V = Q^T * W
+            double[][] v = multiplyTransposed(w, q, in);
+            float[][] uResult = new float[out][rank];
+            float[][] vResult = new float[rank][in];
+            for (int r = 0; r < rank; r++) {
+                for (int i = 0; i < out; i++) {
+                    uResult[i][r] = (float) q[r][i];
+                }
+                for (int j = 0; j < in; j++) {
+                    vResult[r][j] = (float) v[r][j];
+                }
+            }
+            double error = 0;
+            double norm = 0;
+            for (int i = 0; i < out; i++) {
+                for (int j = 0; j < in; j++) {
+                    double approximation = 0;
+                    for (int r = 0; r < rank; r++) {
+                        approximation += uResult[i][r] * vResult[r][j];
+                    }
+                    double d = w[i][j] - approximation;
+                    error += d * d;
+                    norm += w[i][j] * (double) w[i][j];
+                }
+            }
+            return new LowRankLayer(uResult, vResult, layer.bias.clone(),
+                    norm == 0 ? 0 : Math.sqrt(error / norm));
+        }
+
+        public int inputDimension() {
+            return v[0].length;
+        }
+
+        public int outputDimension() {
+            return u.length;
+        }
+
+        public long multiplyAddCount() {
+            return (long) rank * (inputDimension() + outputDimension());
+        }
+
+        float[] activations(float[] input) {
+            float[] t = new float[rank];
+            for (int r = 0; r < rank; r++) {
+                float sum = 0;
+                for (int j = 0; j < input.length; j++) {
+                    sum += v[r][j] * input[j];
+                }
+                t[r] = sum;
+            }
+            float[] result = new float[u.length];
+            for (int i = 0; i < u.length; i++) {
+                float sum = 0;
+                for (int r = 0; r < rank; r++) {
+                    sum += u[i][r] * t[r];
+                }
+                result[i] = sum + bias[i];
+            }
+            return result;
+        }
+
+        // rows of result are W * rows of x. x rows have W.inputDimension values.
+        private static double[][] multiply(float[][] w, double[][] x, int out) {
+            double[][] result = new double[x.length][out];
+            for (int r = 0; r < x.length; r++) {
+                for (int i = 0; i < out; i++) {
+                    double sum = 0;
+                    float[] row = w[i];
+                    for (int j = 0; j < row.length; j++) {
+                        sum += row[j] * x[r][j];
+                    }
+                    result[r][i] = sum;
+                }
+            }
+            return result;
+        }
+
+        // rows of result are W^T * rows of x. x rows have W.outputDimension values.
+        private static double[][] multiplyTransposed(float[][] w, double[][] x, int in) {
+            double[][] result = new double[x.length][in];
+            for (int r = 0; r < x.length; r++) {
+                double[] target = result[r];
+                for (int i = 0; i < w.length; i++) {
+                    double xi = x[r][i];
+                    float[] row = w[i];
+                    for (int j = 0; j < in; j++) {
+                        target[j] += row[j] * xi;
+                    }
+                }
+            }
+            return result;
+        }
+
+        // modified Gram-Schmidt, applied twice for numerical stability. Dependent vectors become zero.
+        private static void orthonormalize(double[][] vectors) {
+            for (int pass = 0; pass < 2; pass++) {
+                for (int r = 0; r < vectors.length; r++) {
+                    double[] vector = vectors[r];
+                    for (int p = 0; p < r; p++) {
+                        double dot = 0;
+                        for (int i = 0; i < vector.length; i++) {
+                            dot += vector[i] * vectors[p][i];
+                        }
+                        for (int i = 0; i < vector.length; i++) {
+                            vector[i] -= dot * vectors[p][i];
+                        }
+                    }
+                    double norm = 0;
+                    for (double value : vector) {
+                        norm += value * value;
+                    }
+                    norm = Math.sqrt(norm);
+                    double inverse = norm < 1e-10 ? 0 : 1 / norm;
+                    for (int i = 0; i < vector.length; i++) {
+                        vector[i] *= inverse;
+                    }
+                }
+            }
+        }
+    }
+
+    public static final class Report {
+        public final long originalMultiplyAdds;
+        public final long compressedMultiplyAdds;
+        // mean KL divergence of compressed network outputs from original outputs.
+        public final double meanKlDivergence;
+        // ratio of samples where both networks have the same highest scoring output.
+        public final double topOutputAgreement;
+
+        Report(long originalMultiplyAdds, long compressedMultiplyAdds, double meanKlDivergence,
+               double topOutputAgreement) {
+            this.originalMultiplyAdds = originalMultiplyAdds;
+            this.compressedMultiplyAdds = compressedMultiplyAdds;
+            this.meanKlDivergence = meanKlDivergence;
+            this.topOutputAgreement = topOutputAgreement;
+        }
+
+        public double flopReduction() {
+            return 1 - compressedMultiplyAdds / (double) originalMultiplyAdds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Multiply-adds %d -> %d (%.1f%% less), mean KL divergence = %.5f, " +
+                            "top output agreement = %.3f",
+                    originalMultiplyAdds, compressedMultiplyAdds, flopReduction() * 100, meanKlDivergence,
+                    topOutputAgreement);
+        }
+    }
+
+    public Report report(FeedForwardNetwork compressed) {
+        return report(multiplyAddCount(compressed), compressed.batchCalculator(64).calculate(samples));
+    }
+
+    public Report report(LowRankLayer[] factorized) {
+        long count = 0;
+        for (int l = 0; l < network.layerCount(); l++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(l);
+            count += factorized[l] == null ?
+                    (long) layer.inputDimension * layer.outputDimension : factorized[l].multiplyAddCount();
+        }
+        float[][] outputs = new float[samples.length][];
+        for (int s = 0; s < samples.length; s++) {
+            float[] x = shiftAndScale(network, samples[s]);
+            for (int l = 0; l < network.layerCount(); l++) {
+                x = factorized[l] == null ? network.getLayer(l).activations(x) : factorized[l].activations(x);
+                if (l < network.layerCount() - 1) {
+                    FeedForwardNetwork.sigmoid(x);
+                } else {
+                    FeedForwardNetwork.softMax(x, 0, x.length);
+                }
+            }
+            outputs[s] = x;
+        }
+        return report(count, outputs);
+    }
+
+    private Report report(long compressedMultiplyAdds, float[][] outputs) {
+        float[][] expected = network.batchCalculator(64).calculate(samples);
+        double kl = 0;
+        int agreement = 0;
+        for (int s = 0; s < samples.length; s++) {
+            for (int i = 0; i < expected[s].length; i++) {
+                double p = expected[s][i];
+                if (p > 0) {
+                    kl += p * (Math.log(p) - Math.log(Math.max(outputs[s][i], 1e-30)));
+                }
+            }
+            if (maxIndex(expected[s]) == maxIndex(outputs[s])) {
+                agreement++;
+            }
+        }
+        return new Report(multiplyAddCount(network), compressedMultiplyAdds, kl / samples.length,
+                agreement / (double) samples.length);
+    }
+
+    static long multiplyAddCount(FeedForwardNetwork network) {
+        long count = 0;
+        for (int l = 0; l < network.layerCount(); l++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(l);
+            count += (long) layer.inputDimension * layer.outputDimension;
+        }
+        return count;
+    }
+
+    // sigmoid activations of hidden layers for all samples. Result has one matrix per hidden layer.
+    static List<float[][]> hiddenActivations(FeedForwardNetwork network, float[][] samples) {
+        List<float[][]> result = new ArrayList<>();
+        for (int l = 0; l < network.layerCount() - 1; l++) {
+            result.add(new float[samples.length][]);
+        }
+        for (int s = 0; s < samples.length; s++) {
+            float[] x = shiftAndScale(network, samples[s]);
+            for (int l = 0; l < network.layerCount() - 1; l++) {
+                x = network.getLayer(l).activations(x);
+                FeedForwardNetwork.sigmoid(x);
+                result.get(l)[s] = x;
+            }
+        }
+        return result;
+    }
+
+    private static float[] shiftAndScale(FeedForwardNetwork network, float[] input) {
+        float[] shift = network.getShiftVector();
+        float[] scale = network.getScaleVector();
+        if (input.length != shift.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Input vector size %d must be equal with network input size %d", input.length, shift.length));
+        }
+        float[] result = new float[input.length];
+        for (int i = 0; i < input.length; i++) {
+            result[i] = (input[i] + shift[i]) * scale[i];
+        }
+        return result;
+    }
+
+    // indexes of the `count` largest values, in increasing index order.
+    private static int[] topIndexes(double[] values, int count) {
+        Integer[] indexes = new Integer[values.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, (a, b) -> Double.compare(values[b], values[a]));
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = indexes[i];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int maxIndex(float[] values) {
+        int index = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static int alignedSize(int size, int alignment) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    private static float[][] copy(float[][] matrix) {
+        float[][] result = new float[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            result[i] = matrix[i].clone();
+        }
+        return result;
+    }
+}
@@ -1,10 +1,14 @@
 package suskun.nn;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import suskun.core.io.NativeUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.Random;
 
 /**
  * This is an optimized feed-forward neural network implementation that uses native code.
@@ -22,10 +26,25 @@ import java.util.Locale;
  * Lazy processing: In the last layer, not all outputs are required to be calculated.
  * So, only required outputs are calculated. This requires communication with the call side.
  * <p>
+ * Backend: Calculations are done with the native library or with a pure Java implementation of the same algorithm.
+ * Default backend is native if the library can be loaded. It can be set with `suskun.nn.backend` system property
+ * (NATIVE or JAVA) or selected when loading.
  */
 public class QuantizedDnn {
 
+    static final Logger logger = LoggerFactory.getLogger(QuantizedDnn.class);
+
+    public enum Backend {
+        NATIVE,
+        JAVA
+    }
+
+    public static final String BACKEND_PROPERTY = "suskun.nn.backend";
+
+    static final boolean nativeLibraryLoaded;
+
     static {
+        boolean loaded = false;
         try {
             String osName = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
             if (osName.contains("windows")) {
@@ -35,14 +54,18 @@ public class QuantizedDnn {
             } else {
                 throw new IllegalStateException("There is no library for OS = " + osName);
             }
-        } catch (IOException e1) {
-            e1.printStackTrace();
+            loaded = true;
+        } catch (IOException | IllegalStateException | UnsatisfiedLinkError e) {
+            logger.warn("Native dnn library cannot be loaded, Java backend will be used. Reason: {}", e.toString());
         }
+        nativeLibraryLoaded = loaded;
     }
 
     private int inputDimension;
     private int outputDimension;
     private long nativeDnnHandle;
+    // not null if Java backend is used.
+    private JavaQuantizedDnn javaDnn;
 
 
     // generates the dnn network in native code from binary network file.
@@ -55,16 +78,50 @@ public class QuantizedDnn {
      * [-weightCutOffValue, weightCutOffValue] are trimmed.
      */
     public static QuantizedDnn loadFromFile(File dnnFile, float weightCutOffValue) {
+        return loadFromFile(dnnFile, weightCutOffValue, defaultBackend());
+    }
+
+    /**
+     * Creates a quantized dnn that uses given backend.
+     */
+    public static QuantizedDnn loadFromFile(File dnnFile, float weightCutOffValue, Backend backend) {
         if (weightCutOffValue <= 0) {
             throw new IllegalArgumentException("Weight cut off value must be positive. But it is " + weightCutOffValue);
         }
         QuantizedDnn dnn = new QuantizedDnn();
-        dnn.nativeDnnHandle = dnn.initialize(dnnFile.getAbsolutePath(), weightCutOffValue);
+        if (backend == Backend.JAVA) {
+            try {
+                dnn.javaDnn = JavaQuantizedDnn.loadFromFile(dnnFile, weightCutOffValue);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load network from " + dnnFile, e);
+            }
+        } else {
+            if (!nativeLibraryLoaded) {
+                throw new IllegalStateException("Native dnn library is not loaded.");
+            }
+            dnn.nativeDnnHandle = dnn.initialize(dnnFile.getAbsolutePath(), weightCutOffValue);
+        }
         dnn.inputDimension = dnn.inputDimension();
         dnn.outputDimension = dnn.outputDimension();
         return dnn;
     }
 
+    /**
+     * Returns the backend set with `suskun.nn.backend` system property. If it is not set, returns NATIVE if native
+     * library is loaded, JAVA otherwise.
+     */
+    public static Backend defaultBackend() {
+        String property = System.getProperty(BACKEND_PROPERTY);
+        if (property != null) {
+            return Backend.valueOf(property.trim().toUpperCase(Locale.ENGLISH));
+        }
+        return nativeLibraryLoaded ? Backend.NATIVE : Backend.JAVA;
+    }
+
+    public Backend getBackend() {
+        return javaDnn == null ? Backend.NATIVE : Backend.JAVA;
+    }
+
     /**
      * Creates a quantized dnn with weight cut-off value = 3
      */
@@ -77,26 +134,116 @@ public class QuantizedDnn {
         long handle;
         final int inputVectorCount;
         int currentVectorIndex;
+        // not null if Java backend is used.
+        final JavaQuantizedDnn.LazyContext javaContext;
 
         private LazyContext(QuantizedDnn dnn, long handle, int inputVectorCount) {
             this.dnn = dnn;
             this.handle = handle;
             this.inputVectorCount = inputVectorCount;
+            this.javaContext = null;
+        }
+
+        private LazyContext(QuantizedDnn dnn, JavaQuantizedDnn.LazyContext javaContext, int inputVectorCount) {
+            this.dnn = dnn;
+            this.javaContext = javaContext;
+            this.inputVectorCount = inputVectorCount;
+        }
+
+        public int getInputVectorCount() {
+            return inputVectorCount;
+        }
+
+        /**
+         * Returns true if this context can be reused for an input with `vectorCount` vectors. Java backend contexts
+         * accept any amount of vectors, native contexts only the amount they are created for.
+         */
+        public boolean canProcess(int vectorCount) {
+            return javaContext != null || vectorCount == inputVectorCount;
         }
 
+        /**
+         * Calculates hidden layers of the input. Output calculations start again from the first input vector,
+         * so a context can be reused for multiple inputs.
+         */
         public void calculateUntilOutput(float[][] input) {
-            dnn.calculateUntilOutput(handle, toVector(input));
+            if (!canProcess(input.length)) {
+                throw new IllegalArgumentException("Context is created for " + inputVectorCount +
+                        " vectors but input has " + input.length);
+            }
+            currentVectorIndex = 0;
+            if (javaContext != null) {
+                javaContext.calculateUntilOutput(input);
+            } else {
+                dnn.calculateUntilOutput(handle, toVector(input));
+            }
         }
 
         public float[] calculateForOutputNodes(byte[] activeNodesMask) {
+            if (javaContext != null) {
+                float[] output = new float[dnn.outputDimension];
+                return Arrays.copyOf(output, calculateForOutputNodes(activeNodesMask, output));
+            }
             // flat array containing activations. Length = [nodeIndexes.length * bufferSize]
-            float[] result = dnn.calculateLazy(handle, currentVectorIndex, activeNodesMask);
+            return dnn.calculateLazy(handle, currentVectorIndex++, activeNodesMask);
+        }
+
+        /**
+         * Writes activations of the nodes with non zero mask values to the beginning of `output` in node order
+         * and returns their count. Length of `output` must be at least the network output size.
+         * Java backend does not allocate memory.
+         */
+        public int calculateForOutputNodes(byte[] activeNodesMask, float[] output) {
+            int count;
+            if (javaContext != null) {
+                count = javaContext.calculateForOutputNodes(currentVectorIndex, activeNodesMask, output);
+            } else {
+                float[] result = dnn.calculateLazy(handle, currentVectorIndex, activeNodesMask);
+                System.arraycopy(result, 0, output, 0, result.length);
+                count = result.length;
+            }
             currentVectorIndex++;
+            return count;
+        }
+
+        /**
+         * Calculates scaled log likelihoods of all output nodes of the input, log(posterior_i) - logPriors[i],
+         * with the state of this context only. So contexts of the same network can calculate concurrently while
+         * the network itself is shared. Java backend results are the same as
+         * {@link QuantizedDnn#calculateLogLikelihoods(float[][], float[])}, native contexts calculate all output
+         * nodes lazily. Output calculations start again from the first input vector.
+         */
+        public float[][] calculateLogLikelihoods(float[][] input, float[] logPriors) {
+            if (logPriors.length != dnn.outputDimension) {
+                throw new IllegalArgumentException("Prior count " + logPriors.length +
+                        " must be equal with network output size " + dnn.outputDimension);
+            }
+            if (input.length == 0) {
+                return new float[0][0];
+            }
+            if (input[0].length != dnn.inputDimension) {
+                throw new IllegalArgumentException(
+                        String.format("Input vector size %d must be equal with network input size %d",
+                                input[0].length, dnn.inputDimension));
+            }
+            if (javaContext != null) {
+                return javaContext.calculateLogLikelihoods(input, logPriors);
+            }
+            calculateUntilOutput(input);
+            byte[] allNodes = new byte[dnn.outputDimension];
+            Arrays.fill(allNodes, (byte) 1);
+            float[][] result = new float[input.length][];
+            for (int i = 0; i < input.length; i++) {
+                result[i] = calculateForOutputNodes(allNodes);
+                Activations.toLogLikelihoods(result[i], logPriors);
+            }
             return result;
         }
 
         public void delete() {
-            dnn.deleteLazyContext(handle);
+            if (javaContext == null) {
+                dnn.deleteLazyContext(handle);
+            }
         }
     }
 
@@ -105,6 +252,9 @@ public class QuantizedDnn {
     }
 
     public LazyContext getNewLazyContext(int inputVectorCount, int batchSize) {
+        if (javaDnn != null) {
+            return new LazyContext(this, javaDnn.new LazyContext(batchSize), inputVectorCount);
+        }
         long handle = getContext(nativeDnnHandle, inputVectorCount, batchSize);
         return new LazyContext(this, handle, inputVectorCount);
     }
@@ -130,23 +280,25 @@ public class QuantizedDnn {
     private native int layerCount(long dnnHandle);
 
     public int inputDimension() {
-        return inputDimension(nativeDnnHandle);
+        return javaDnn != null ? javaDnn.inputDimension : inputDimension(nativeDnnHandle);
     }
 
     public int outputDimension() {
-        return outputDimension(nativeDnnHandle);
+        return javaDnn != null ? javaDnn.outputDimension : outputDimension(nativeDnnHandle);
     }
 
     public void delete() {
-        delete(nativeDnnHandle);
+        if (javaDnn == null) {
+            delete(nativeDnnHandle);
+        }
     }
 
     public int layerDimension(int layerIndex) {
-        return layerDimension(nativeDnnHandle, layerIndex);
+        return javaDnn != null ? javaDnn.layerDimension(layerIndex) : layerDimension(nativeDnnHandle, layerIndex);
     }
 
     public int layerCount() {
-        return layerCount(nativeDnnHandle);
+        return javaDnn != null ? javaDnn.layerCount() : layerCount(nativeDnnHandle);
     }
 
     public float[][] calculate(float[][] input) {
@@ -163,12 +315,43 @@ public class QuantizedDnn {
                             input[0].length, inputDimension));
         }
 
+        if (javaDnn != null) {
+            return javaDnn.calculate(input, batchSize);
+        }
         int dimension = input[0].length;
         float[] flattened = toVector(input);
         float[] res1d = calculate(nativeDnnHandle, flattened, input.length, dimension, batchSize);
         return toMatrix(res1d, input.length, outputDimension);
     }
 
+    /**
+     * Calculates scaled log likelihoods of input vectors, log(posterior_i) - logPriors[i]. Java backend converts
+     * output logits with a fused log soft-max. Native backend returns posteriors, they are converted in a single pass.
+     */
+    public float[][] calculateLogLikelihoods(float[][] input, float[] logPriors) {
+        return calculateLogLikelihoods(input, logPriors, 10);
+    }
+
+    public float[][] calculateLogLikelihoods(float[][] input, float[] logPriors, int batchSize) {
+        if (logPriors.length != outputDimension) {
+            throw new IllegalArgumentException("Prior count " + logPriors.length +
+                    " must be equal with network output size " + outputDimension);
+        }
+        if (javaDnn != null && input.length > 0) {
+            if (input[0].length != inputDimension) {
+                throw new IllegalArgumentException(
+                        String.format("Input vector size %d must be equal with network input size %d",
+                                input[0].length, inputDimension));
+            }
+            return javaDnn.calculateLogLikelihoods(input, batchSize, logPriors);
+        }
+        float[][] result = calculate(input, batchSize);
+        for (float[] vector : result) {
+            Activations.toLogLikelihoods(vector, logPriors);
+        }
+        return result;
+    }
+
     private static float[] toVector(float[][] arr2d) {
         int vecCount = arr2d.length;
         int dimension = arr2d[0].length;
@@ -193,4 +376,37 @@ public class QuantizedDnn {
                 + outputDimension();
     }
 
-}
\ No newline at end of file
+    /**
+     * Compares calculation speed of backends with random input.
+     */
+    public static void main(String[] args) {
+        File networkFile = new File("../../data/large-16khz/nnet.bin");
+        Random random = new Random(1);
+        for (Backend backend : Backend.values()) {
+            if (backend == Backend.NATIVE && !nativeLibraryLoaded) {
+                continue;
+            }
+            QuantizedDnn dnn = loadFromFile(networkFile, 3f, backend);
+            float[][] input = new float[1000][dnn.inputDimension()];
+            for (float[] vector : input) {
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = (float) random.nextGaussian();
+                }
+            }
+            // warm up.
+            for (int i = 0; i < 3; i++) {
+                dnn.calculate(input, 8);
+            }
+            int iterationCount = 10;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterationCount; i++) {
+                dnn.calculate(input, 8);
+            }
+            double elapsedMs = (System.nanoTime() - start) / 1e6 / iterationCount;
+            logger.info("Backend = {}, Topology = {}, {} vectors in {} ms, RTF = {}",
+                    backend, dnn.topology(), input.length, String.format("%.1f", elapsedMs),
+                    String.format("%.3f", elapsedMs / (input.length * 10)));
+            dnn.delete();
+        }
+    }
+}
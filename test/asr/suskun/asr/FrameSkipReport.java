@@ -0,0 +1,104 @@
+package suskun.asr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.asr.acoustic.DnnAcousticModel;
+import suskun.asr.acoustic.DnnAcousticScorer;
+import suskun.asr.acoustic.FeatureExtractor;
+import suskun.asr.acoustic.FeatureExtractors;
+import suskun.asr.decoder.FstDecoder;
+import suskun.asr.decoder.MappedGraph;
+import suskun.asr.language.WordLexicon;
+import suskun.audio.SpeechData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares frame skip settings on a directory of wav files. Hypotheses of full frame rate decoding are used as
+ * reference, so reported word error rates show the accuracy lost by frame skipping. Scoring time is acoustic model
+ * time only, search time is reported separately.
+ */
+public class FrameSkipReport {
+
+    static Logger logger = LoggerFactory.getLogger(FrameSkipReport.class);
+
+    public static void main(String[] args) throws IOException {
+        Path wavRoot = Paths.get(args.length > 0 ? args[0] : "test/data/wav");
+        Path modelRoot = Paths.get("../../data/large-16khz");
+
+        DnnAcousticModel acousticModel = DnnAcousticModel.loadFromDirectory(modelRoot);
+        MappedGraph graph = MappedGraph.loadFromDirectory(modelRoot.resolve("fst-bin"));
+        WordLexicon lexicon = WordLexicon.fromTextFileWithIndex(modelRoot.resolve("words.txt"));
+        FeatureExtractor extractor =
+                new FeatureExtractors.BatchWindowDeltaMfccExtractor(16000, acousticModel.getDnn().inputDimension());
+        DnnAcousticScorer scorer = acousticModel.getScorer();
+
+        List<Path> wavFiles;
+        try (Stream<Path> paths = Files.list(wavRoot)) {
+            wavFiles = paths.filter(p -> p.toString().endsWith(".wav")).sorted().collect(Collectors.toList());
+        }
+        List<SpeechData> features = new ArrayList<>();
+        for (Path wavFile : wavFiles) {
+            features.add(extractor.extract(SpeechData.fromWavfile(wavFile)));
+        }
+
+        List<List<String>> references = new ArrayList<>();
+        for (int frameSkip : new int[]{1, 2, 3}) {
+            for (boolean interpolate : new boolean[]{false, true}) {
+                if (frameSkip == 1 && interpolate) {
+                    continue;
+                }
+                FstDecoder decoder = FstDecoder.builder(graph, acousticModel, lexicon)
+                        .interpolateSkippedFrames(interpolate)
+                        .build();
+                long scoreNanos = 0;
+                long searchNanos = 0;
+                int errors = 0;
+                int referenceWords = 0;
+                for (int i = 0; i < features.size(); i++) {
+                    SpeechData utterance = features.get(i);
+                    long start = System.nanoTime();
+                    SpeechData scores = scorer.scoreSubsampled(utterance, frameSkip);
+                    long scored = System.nanoTime();
+                    FstDecoder.Result result = decoder.decode(scores, frameSkip, utterance.vectorCount());
+                    searchNanos += System.nanoTime() - scored;
+                    scoreNanos += scored - start;
+                    if (frameSkip == 1) {
+                        references.add(result.words);
+                    }
+                    errors += editDistance(references.get(i), result.words);
+                    referenceWords += references.get(i).size();
+                }
+                logger.info("Frame skip = {}, Interpolate = {}, Scoring = {} ms, Search = {} ms, WER = {}%",
+                        frameSkip, interpolate, scoreNanos / 1_000_000, searchNanos / 1_000_000,
+                        String.format("%.2f", referenceWords == 0 ? 0 : errors * 100.0 / referenceWords));
+            }
+        }
+    }
+
+    static int editDistance(List<String> reference, List<String> hypothesis) {
+        int[] previous = new int[hypothesis.size() + 1];
+        int[] current = new int[hypothesis.size() + 1];
+        for (int j = 0; j <= hypothesis.size(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= reference.size(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= hypothesis.size(); j++) {
+                int substitution = previous[j - 1] + (reference.get(i - 1).equals(hypothesis.get(j - 1)) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return previous[hypothesis.size()];
+    }
+}
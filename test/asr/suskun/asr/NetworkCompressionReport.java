@@ -0,0 +1,90 @@
+package suskun.asr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import suskun.asr.acoustic.FeatureExtractor;
+import suskun.asr.acoustic.FeatureExtractors;
+import suskun.audio.SpeechData;
+import suskun.audio.wav.WavReader;
+import suskun.nn.FeedForwardNetwork;
+import suskun.nn.NetworkCompressor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compresses the acoustic model network with node pruning and low rank factorization and reports the cost and
+ * output divergence of each setting. Activation statistics and divergence are measured on features of the wav
+ * files in a directory. Pruned networks are written to the output directory.
+ * Usage: NetworkCompressionReport [output directory] [wav directory]
+ */
+public class NetworkCompressionReport {
+
+    static Logger logger = LoggerFactory.getLogger(NetworkCompressionReport.class);
+
+    static final int MAX_SAMPLE_COUNT = 2000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: NetworkCompressionReport [output directory] [wav directory]");
+            return;
+        }
+        Path outputRoot = Paths.get(args[0]);
+        Path wavRoot = Paths.get(args.length > 1 ? args[1] : "test/data/wav");
+        Path modelRoot = Paths.get("../../data/large-16khz");
+
+        FeedForwardNetwork network = FeedForwardNetwork.loadFromBinary(modelRoot.resolve("nnet.bin").toFile());
+        float[][] samples = loadSamples(wavRoot, network.getShiftVector().length);
+        logger.info("{} feature vectors are loaded from {}", samples.length, wavRoot);
+
+        Random random = new Random(1);
+        NetworkCompressor compressor = new NetworkCompressor(network, samples);
+        for (float ratio : new float[]{0.25f, 0.5f}) {
+            logger.info("Rank ratio {} : {}", ratio, compressor.report(compressor.factorize(ratio, 2, random)));
+        }
+        Files.createDirectories(outputRoot);
+        for (float ratio : new float[]{0.5f, 0.75f}) {
+            FeedForwardNetwork pruned = compressor.pruneNodes(ratio, 16);
+            logger.info("Node keep ratio {} : {}", ratio, compressor.report(pruned));
+            File output = outputRoot.resolve("nnet-pruned-" + (int) (ratio * 100) + ".bin").toFile();
+            pruned.saveBinary(output);
+            logger.info("Pruned network is written to {}", output);
+        }
+    }
+
+    // feature vectors of all 16khz wav files. If there are too many, vectors are sampled with equal intervals.
+    static float[][] loadSamples(Path wavRoot, int featureSize) throws IOException {
+        List<Path> wavFiles;
+        try (Stream<Path> paths = Files.list(wavRoot)) {
+            wavFiles = paths.filter(p -> p.toString().endsWith(".wav")).sorted().collect(Collectors.toList());
+        }
+        FeatureExtractor extractor = new FeatureExtractors.BatchWindowDeltaMfccExtractor(16000, featureSize);
+        List<float[]> vectors = new ArrayList<>();
+        for (Path wavFile : wavFiles) {
+            if (new WavReader(wavFile, 0).getFormat().sampleRate != 16000) {
+                logger.info("Skipping {}, sampling rate is not 16khz.", wavFile);
+                continue;
+            }
+            for (float[] vector : extractor.extract(SpeechData.fromWavfile(wavFile)).getContentAsMatrix()) {
+                vectors.add(vector);
+            }
+        }
+        if (vectors.isEmpty()) {
+            throw new IllegalStateException("No features are extracted from " + wavRoot);
+        }
+        int step = Math.max(1, vectors.size() / MAX_SAMPLE_COUNT);
+        List<float[]> samples = new ArrayList<>();
+        for (int i = 0; i < vectors.size() && samples.size() < MAX_SAMPLE_COUNT; i += step) {
+            samples.add(vectors.get(i));
+        }
+        return samples.toArray(new float[samples.size()][]);
+    }
+}
@@ -5,6 +5,10 @@ import org.slf4j.LoggerFactory;
 import suskun.asr.acoustic.DnnAcousticModel;
 import suskun.asr.acoustic.FeatureExtractor;
 import suskun.asr.acoustic.FeatureExtractors;
+import suskun.asr.decoder.FstDecoder;
+import suskun.asr.decoder.MappedGraph;
+import suskun.asr.decoder.StreamingRecognizer;
+import suskun.asr.language.WordLexicon;
 import suskun.audio.SpeechData;
 
 import java.io.IOException;
@@ -18,6 +22,10 @@ public class TestOfflineRecognition {
         logger.info("Loading acoustic model.");
         DnnAcousticModel acousticModel = DnnAcousticModel.loadFromDirectory(Paths.get("../../data/large-16khz"));
 
+        logger.info("Loading decoding graph and lexicon.");
+        MappedGraph graph = MappedGraph.loadFromDirectory(Paths.get("../../data/large-16khz/fst-bin"));
+        WordLexicon lexicon = WordLexicon.fromTextFileWithIndex(Paths.get("../../data/large-16khz/words.txt"));
+
         logger.info("Loading wav data.");
         SpeechData wavSamples = SpeechData.fromWavfile(Paths.get("test/data/wav/16khz-16bit-mono.wav"));
 
@@ -31,9 +39,13 @@ public class TestOfflineRecognition {
         SpeechData acousticScores = acousticModel.getScorer().score(features);
 
         logger.info("Decode.");
-
-        // decode..
-
-
+        FstDecoder decoder = FstDecoder.builder(graph, acousticModel, lexicon).build();
+        FstDecoder.Result result = decoder.decode(acousticScores);
+        logger.info("Result = {}, RTF = {}", result, result.realTimeFactor);
+
+        logger.info("Decode in 100ms chunks.");
+        StreamingRecognizer recognizer = new StreamingRecognizer(decoder, 16000);
+        result = recognizer.recognize(Paths.get("test/data/wav/16khz-16bit-mono.wav"), 100);
+        logger.info("Streaming result = {}", result);
     }
 }
@@ -0,0 +1,124 @@
+package suskun.asr.acoustic;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suskun.audio.SpeechData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingAcousticScorerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBatching() throws Exception {
+        DnnAcousticModel model = SharedAcousticModelTest.createModel(temporaryFolder.newFile());
+        Random random = new Random(1);
+        List<SpeechData> utterances = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            utterances.add(SharedAcousticModelTest.features(random, 3 + i % 7));
+        }
+        BatchingAcousticScorer scorer = BatchingAcousticScorer.builder(model)
+                .maxBatchFrames(40)
+                .maxWaitMillis(200)
+                .build();
+        List<CompletableFuture<SpeechData>> futures = new ArrayList<>();
+        for (SpeechData utterance : utterances) {
+            futures.add(scorer.submit(utterance));
+        }
+        for (int i = 0; i < utterances.size(); i++) {
+            float[][] expected = model.getScorer().score(utterances.get(i)).getContentAsMatrix();
+            float[][] actual = futures.get(i).get().getContentAsMatrix();
+            Assert.assertEquals(expected.length, actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                Assert.assertArrayEquals(expected[j], actual[j], 0);
+            }
+        }
+        // a request larger than max batch frames is calculated alone.
+        Assert.assertEquals(50, scorer.score(SharedAcousticModelTest.features(random, 50)).vectorCount());
+        scorer.close();
+
+        BatchingAcousticScorer.Stats stats = scorer.stats();
+        Assert.assertEquals(21, stats.requestCount);
+        Assert.assertEquals(117 + 50, stats.frameCount);
+        // small requests are merged.
+        Assert.assertTrue(stats.batchCount < 21);
+        Assert.assertTrue(stats.batchCount >= 4);
+    }
+
+    @Test
+    public void testMaxWait() throws Exception {
+        DnnAcousticModel model = SharedAcousticModelTest.createModel(temporaryFolder.newFile());
+        BatchingAcousticScorer scorer = BatchingAcousticScorer.builder(model)
+                .maxBatchFrames(1000)
+                .maxWaitMillis(20)
+                .build();
+        // a single small request is calculated after max wait time even if batch is not full.
+        SpeechData result = scorer.score(SharedAcousticModelTest.features(new Random(2), 5));
+        Assert.assertEquals(5, result.vectorCount());
+        Assert.assertTrue(scorer.stats().maxLatencyMillis >= 15);
+
+        scorer.close();
+        try {
+            scorer.submit(SharedAcousticModelTest.features(new Random(3), 5));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testErrorStopsScorer() throws Exception {
+        DnnAcousticModel model = SharedAcousticModelTest.createModel(temporaryFolder.newFile());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        DnnAcousticScorer failingScorer = new DnnAcousticScorer(model.getDnn(), model.getLogAlignmentProbabilities()) {
+            @Override
+            float[][] score(float[][] input, int batchSize) {
+                started.countDown();
+                try {
+                    fail.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new LinkageError("test");
+            }
+        };
+        BatchingAcousticScorer scorer = new BatchingAcousticScorer.Builder(failingScorer)
+                .maxBatchFrames(5)
+                .maxWaitMillis(0)
+                .build();
+        Random random = new Random(4);
+        CompletableFuture<SpeechData> first = scorer.submit(SharedAcousticModelTest.features(random, 5));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        // queued while the first batch is calculated.
+        CompletableFuture<SpeechData> queued = scorer.submit(SharedAcousticModelTest.features(random, 5));
+        fail.countDown();
+        List<CompletableFuture<SpeechData>> futures = Arrays.asList(first, queued);
+        for (CompletableFuture<SpeechData> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof LinkageError);
+            }
+        }
+        try {
+            scorer.submit(SharedAcousticModelTest.features(random, 5));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof LinkageError);
+        }
+        scorer.close();
+    }
+}
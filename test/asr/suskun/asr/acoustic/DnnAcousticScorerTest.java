@@ -0,0 +1,30 @@
+package suskun.asr.acoustic;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suskun.audio.SpeechData;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class DnnAcousticScorerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testScoreSubsampled() throws IOException {
+        DnnAcousticScorer scorer = SharedAcousticModelTest.createModel(temporaryFolder.newFile()).getScorer();
+        SpeechData features = SharedAcousticModelTest.features(new Random(1), 10);
+        float[][] full = scorer.score(features).getContentAsMatrix();
+        for (int frameSkip : new int[]{1, 2, 3, 10, 11}) {
+            float[][] sampled = scorer.scoreSubsampled(features, frameSkip).getContentAsMatrix();
+            Assert.assertEquals((10 + frameSkip - 1) / frameSkip, sampled.length);
+            for (int i = 0; i < sampled.length; i++) {
+                Assert.assertArrayEquals(full[i * frameSkip], sampled[i], 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package suskun.asr.acoustic;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.audio.SpeechData;
+import suskun.core.FloatData;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FeatureExtractorsTest {
+
+    @Test
+    public void testLiveExtractorSameAsBatch() throws IOException {
+        SpeechData wav = SpeechData.fromWavfile(Paths.get("test/data/wav/16khz-16bit-mono.wav"));
+        float[] samples = wav.get(0).getCopyOfContent();
+
+        SpeechData expected = new FeatureExtractors.BatchWindowDeltaMfccExtractor(16000, 440).extract(wav);
+
+        FeatureExtractors.LiveWindowDeltaMfccExtractor extractor =
+                new FeatureExtractors.LiveWindowDeltaMfccExtractor(16000, 440);
+        // second run checks that extractor is reset after flush.
+        for (int chunkSize : new int[]{160, 1000, 4321}) {
+            List<FloatData> actual = new ArrayList<>();
+            for (int i = 0; i < samples.length; i += chunkSize) {
+                actual.addAll(extractor.process(
+                        Arrays.copyOfRange(samples, i, Math.min(samples.length, i + chunkSize))));
+            }
+            actual.addAll(extractor.flush());
+            Assert.assertEquals(expected.vectorCount(), actual.size());
+            for (int i = 0; i < actual.size(); i++) {
+                Assert.assertArrayEquals(expected.get(i).getData(), actual.get(i).getData(), 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void testLiveExtractorShortInput() {
+        FeatureExtractors.LiveWindowDeltaMfccExtractor extractor =
+                new FeatureExtractors.LiveWindowDeltaMfccExtractor(16000, 440);
+        // 25ms frame is 400 samples. Features of the single frame are available after flush.
+        Assert.assertTrue(extractor.process(new float[450]).isEmpty());
+        Assert.assertEquals(1, extractor.flush().size());
+        Assert.assertTrue(extractor.flush().isEmpty());
+    }
+}
@@ -0,0 +1,170 @@
+package suskun.asr.acoustic;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suskun.audio.SpeechData;
+import suskun.audio.SpeechSegment;
+import suskun.nn.FeedForwardNetwork;
+import suskun.nn.QuantizedDnn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SharedAcousticModelTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    static final int INPUT_SIZE = 12;
+    static final int PDF_COUNT = 6;
+
+    DnnAcousticModel createModel() throws IOException {
+        return createModel(temporaryFolder.newFile());
+    }
+
+    static DnnAcousticModel createModel(File file) throws IOException {
+        Random random = new Random(1);
+        int[] dims = {INPUT_SIZE, 16, PDF_COUNT};
+        List<FeedForwardNetwork.Layer> layers = new ArrayList<>();
+        for (int i = 0; i < dims.length - 1; i++) {
+            layers.add(new FeedForwardNetwork.Layer(
+                    randomMatrix(random, dims[i + 1], dims[i]), randomMatrix(random, 1, dims[i + 1])[0]));
+        }
+        float[] scale = new float[INPUT_SIZE];
+        Arrays.fill(scale, 1);
+        FeedForwardNetwork network = new FeedForwardNetwork(layers, new float[INPUT_SIZE], scale);
+        network.saveBinary(file);
+        QuantizedDnn dnn = QuantizedDnn.loadFromFile(file, 3f, QuantizedDnn.Backend.JAVA);
+        float[] counts = new float[PDF_COUNT];
+        Arrays.fill(counts, 1);
+        return new DnnAcousticModel(dnn, null, counts, new DnnAcousticModel.PdfInformation[0]);
+    }
+
+    static float[][] randomMatrix(Random random, int rows, int columns) {
+        float[][] result = new float[rows][columns];
+        for (float[] row : result) {
+            for (int i = 0; i < columns; i++) {
+                row[i] = (float) random.nextGaussian();
+            }
+        }
+        return result;
+    }
+
+    static SpeechData features(Random random, int frameCount) {
+        return new SpeechData(SpeechSegment.unknown("test"), randomMatrix(random, frameCount, INPUT_SIZE));
+    }
+
+    @Test
+    public void testConcurrentScoring() throws Exception {
+        DnnAcousticModel model = createModel();
+        Random random = new Random(2);
+        List<SpeechData> utterances = new ArrayList<>();
+        List<float[][]> expected = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            SpeechData features = features(random, 5 + i);
+            utterances.add(features);
+            expected.add(model.getScorer().score(features).getContentAsMatrix());
+        }
+
+        try (SharedAcousticModel shared = new SharedAcousticModel(model, 2)) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<float[][]>> futures = new ArrayList<>();
+            for (SpeechData utterance : utterances) {
+                futures.add(executor.submit(() -> shared.score(utterance).getContentAsMatrix()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                float[][] actual = futures.get(i).get();
+                for (int j = 0; j < actual.length; j++) {
+                    Assert.assertArrayEquals(expected.get(i)[j], actual[j], 0);
+                }
+            }
+            executor.shutdown();
+
+            SharedAcousticModel.Stats stats = shared.stats();
+            Assert.assertEquals(2, stats.poolSize);
+            Assert.assertEquals(16, stats.acquireCount);
+            Assert.assertEquals(0, stats.busyCount);
+            Assert.assertTrue(stats.maxWaitMillis >= stats.meanWaitMillis);
+            Assert.assertTrue(stats.utilization > 0 && stats.utilization <= 1);
+        }
+    }
+
+    @Test
+    public void testLazyScorerReusesContext() throws IOException {
+        DnnAcousticModel model = createModel();
+        Random random = new Random(3);
+        byte[] mask = new byte[PDF_COUNT];
+        Arrays.fill(mask, (byte) 1);
+        try (SharedAcousticModel shared = new SharedAcousticModel(model, 1)) {
+            for (int frameCount : new int[]{7, 3, 11}) {
+                SpeechData features = features(random, frameCount);
+                float[][] expected = model.getScorer().score(features).getContentAsMatrix();
+                LazyAcousticScorer scorer = shared.lazyScorer(features);
+                Assert.assertEquals(1, shared.stats().busyCount);
+                for (int i = 0; i < frameCount; i++) {
+                    Assert.assertArrayEquals(expected[i], scorer.nextFrame(mask), 0.001f);
+                }
+                scorer.release();
+                // second release does not return the slot again.
+                scorer.release();
+                Assert.assertEquals(0, shared.stats().busyCount);
+            }
+            // Java backend context is created once and reused.
+            Assert.assertEquals(1, shared.stats().contextCreateCount);
+        }
+    }
+
+    @Test
+    public void testLeakedLeaseIsReclaimed() throws Exception {
+        try (SharedAcousticModel shared = new SharedAcousticModel(createModel(), 1)) {
+            // lease is not closed and becomes unreachable.
+            shared.acquire();
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> waiting = executor.submit(() -> shared.acquire().close());
+            for (int i = 0; i < 50 && !waiting.isDone(); i++) {
+                System.gc();
+                Thread.sleep(SharedAcousticModel.RECLAIM_INTERVAL_MILLIS);
+            }
+            waiting.get(5, TimeUnit.SECONDS);
+            executor.shutdown();
+            Assert.assertEquals(0, shared.stats().busyCount);
+        }
+    }
+
+    @Test
+    public void testWaitAndClose() throws Exception {
+        SharedAcousticModel shared = new SharedAcousticModel(createModel(), 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> waiting;
+        SharedAcousticModel.Lease lease = shared.acquire();
+        try {
+            waiting = executor.submit(() -> shared.acquire().close());
+            Thread.sleep(50);
+            Assert.assertFalse(waiting.isDone());
+        } finally {
+            lease.close();
+        }
+        waiting.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        Assert.assertEquals(2, shared.stats().acquireCount);
+        Assert.assertTrue(shared.stats().maxWaitMillis >= 40);
+
+        shared.close();
+        try {
+            shared.acquire();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected.
+        }
+    }
+}
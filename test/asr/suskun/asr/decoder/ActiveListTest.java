@@ -134,5 +134,74 @@ public class ActiveListTest {
         Assert.assertEquals(1, list.getMin(), 0.01);
     }
 
+    @Test
+    public void testGetAndCanImprove() {
+        ActiveList list = ActiveList
+                .builder(10)
+                .minimumHypothesisCount(0)
+                .build();
+        Hypothesis h = new Hypothesis(null, 10, 5);
+        list.add(h);
+        Assert.assertSame(h, list.get(10));
+        Assert.assertNull(list.get(20));
+        Assert.assertTrue(list.canImprove(10, 6));
+        Assert.assertFalse(list.canImprove(10, 4));
+        Assert.assertTrue(list.canImprove(20, 4));
+        // out of beam.
+        Assert.assertFalse(list.canImprove(20, -6));
+    }
+
+    @Test
+    public void testHistogramPruning() {
+        ActiveList list = ActiveList
+                .builder(100)
+                .minimumHypothesisCount(0)
+                .maxActive(10)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            list.add(new Hypothesis(null, i, i % 50));
+        }
+        List<Hypothesis> active = list.getActiveHypotheses();
+        Assert.assertEquals(10, active.size());
+        for (Hypothesis hypothesis : active) {
+            Assert.assertEquals(49, hypothesis.score, 0.01);
+        }
+        // list is reused.
+        Assert.assertSame(active, list.getActiveHypotheses());
+    }
+
+    @Test
+    public void testHistogramPruningBeam() {
+        ActiveList list = ActiveList
+                .builder(5)
+                .minimumHypothesisCount(1000)
+                .maxActive(100)
+                .build();
+        for (int i = 0; i < 20; i++) {
+            list.add(new Hypothesis(null, i, i));
+        }
+        List<Hypothesis> active = list.getActiveHypotheses();
+        // only scores in [14, 19] are in beam.
+        Assert.assertEquals(6, active.size());
+    }
+
+    @Test
+    public void testEqualScores() {
+        ActiveList list = ActiveList
+                .builder(10)
+                .minimumHypothesisCount(0)
+                .maxActive(7)
+                .build();
+        ActiveList clusterList = ActiveList
+                .builder(10)
+                .minimumHypothesisCount(0)
+                .build();
+        for (int i = 0; i < 20; i++) {
+            list.add(new Hypothesis(null, i, 3));
+            clusterList.add(new Hypothesis(null, i, 3));
+        }
+        Assert.assertEquals(7, list.getActiveHypotheses().size());
+        Assert.assertEquals(20, clusterList.getActiveHypotheses().size());
+    }
 
 }
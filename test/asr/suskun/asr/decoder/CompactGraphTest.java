@@ -0,0 +1,93 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CompactGraphTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    MappedGraph createGraph(Iterable<String> lines) throws IOException {
+        Path fstPath = temporaryFolder.newFile().toPath();
+        Files.write(fstPath, lines, StandardCharsets.UTF_8);
+        Path binRoot = temporaryFolder.newFolder().toPath();
+        DecodingFst.convertRawBinary(fstPath, binRoot);
+        return MappedGraph.loadFromDirectory(binRoot);
+    }
+
+    static void assertSameGraph(DecodingGraph expected, DecodingGraph actual, float delta) {
+        Assert.assertEquals(expected.stateCount(), actual.stateCount());
+        Assert.assertEquals(expected.transitionCount(), actual.transitionCount());
+        DecodingGraph.ArcCursor e = expected.newCursor();
+        DecodingGraph.ArcCursor a = actual.newCursor();
+        for (int state = 0; state < expected.stateCount(); state++) {
+            Assert.assertEquals(expected.isFinal(state), actual.isFinal(state));
+            if (expected.isFinal(state)) {
+                Assert.assertEquals(expected.finalScore(state), actual.finalScore(state), delta);
+            }
+            e.reset(state);
+            a.reset(state);
+            while (e.next()) {
+                Assert.assertTrue(a.next());
+                Assert.assertEquals(e.targetState(), a.targetState());
+                Assert.assertEquals(e.transitionId(), a.transitionId());
+                Assert.assertEquals(e.wordId(), a.wordId());
+                Assert.assertEquals(e.score(), a.score(), delta);
+            }
+            Assert.assertFalse(a.next());
+        }
+    }
+
+    @Test
+    public void testSmallGraph() throws IOException {
+        MappedGraph graph = createGraph(Arrays.asList(MappedGraphTest.FST_LINES));
+        for (CompactGraph.WeightEncoding encoding : CompactGraph.WeightEncoding.values()) {
+            Path out = temporaryFolder.newFolder().toPath();
+            CompactGraph.convert(graph, out, encoding, 1);
+            CompactGraph compact = CompactGraph.loadFromDirectory(out);
+            Assert.assertEquals(encoding, compact.getWeightEncoding());
+            assertSameGraph(graph, compact, encoding == CompactGraph.WeightEncoding.LINEAR8 ? 0.01f : 0.0001f);
+        }
+    }
+
+    @Test
+    public void testRandomGraph() throws IOException {
+        MappedGraph graph = createGraph(FstTextCompilerTest.randomFst(new Random(1), 3000));
+        Path out = temporaryFolder.newFolder().toPath();
+        CompactGraph.convert(graph, out, CompactGraph.WeightEncoding.FLOAT);
+        // use small segments so that blocks are spread to multiple segments.
+        CompactGraph compact = CompactGraph.loadFromDirectory(out, 1000);
+        assertSameGraph(graph, compact, 0);
+
+        long compactSize = Files.size(out.resolve(CompactGraph.DATA_FILE_NAME));
+        Assert.assertTrue(compactSize < graph.transitionCount() * MappedGraph.TRANSITION_BYTE_LENGTH / 2);
+
+        for (CompactGraph.WeightEncoding encoding : new CompactGraph.WeightEncoding[]{
+                CompactGraph.WeightEncoding.LINEAR16, CompactGraph.WeightEncoding.LINEAR8}) {
+            out = temporaryFolder.newFolder().toPath();
+            CompactGraph.convert(graph, out, encoding);
+            // weights are in [0, 10] range.
+            float maxError = encoding == CompactGraph.WeightEncoding.LINEAR8 ? 10f / 255 / 2 : 10f / 65535 / 2;
+            assertSameGraph(graph, CompactGraph.loadFromDirectory(out, 1000), maxError * 1.01f);
+        }
+    }
+
+    @Test
+    public void testZigZag() {
+        for (long value : new long[]{0, 1, -1, 2, -2, Integer.MAX_VALUE, Integer.MIN_VALUE, -Integer.MAX_VALUE}) {
+            Assert.assertEquals(value, CompactGraph.unZigZag(CompactGraph.zigZag(value)));
+        }
+        Assert.assertEquals(1, CompactGraph.zigZag(-1));
+        Assert.assertEquals(2, CompactGraph.zigZag(1));
+    }
+}
@@ -0,0 +1,209 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suskun.asr.acoustic.DnnAcousticModel;
+import suskun.asr.acoustic.LazyAcousticScorer;
+import suskun.asr.acoustic.Phone;
+import suskun.asr.language.WordLexicon;
+import suskun.audio.SpeechData;
+import suskun.audio.SpeechSegment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class FstDecoderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // A small graph for two one word sentences. Word "alpha" uses pdf 0 then pdf 1,
+    // word "beta" uses only pdf 1. Transition id 1 -> pdf 0, transition id 2 -> pdf 1
+    static final String[] FST_LINES = {
+            "0\t1\t1\t1\t0.5",
+            "0\t3\t2\t2\t0.5",
+            "1\t1\t1\t0",
+            "1\t2\t2\t0",
+            "2\t2\t2\t0",
+            "2\t4\t0\t0\t0.1",
+            "3\t3\t2\t0",
+            "3\t4\t0\t0",
+            "4\t0"
+    };
+
+    FstDecoder decoder;
+    DnnAcousticModel model;
+    WordLexicon lexicon;
+    Path binRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        Path fstPath = temporaryFolder.newFile("graph.fst.txt").toPath();
+        Files.write(fstPath, Arrays.asList(FST_LINES), StandardCharsets.UTF_8);
+        binRoot = temporaryFolder.newFolder("fst-bin").toPath();
+        DecodingFst.convertRawBinary(fstPath, binRoot);
+
+        Path wordsPath = temporaryFolder.newFile("words.txt").toPath();
+        Files.write(wordsPath, Arrays.asList("<eps> 0", "alpha 1", "beta 2"), StandardCharsets.UTF_8);
+
+        Phone phone = new Phone("a", 1, false, false, false);
+        DnnAcousticModel.PdfInformation[] pdfLookup = {
+                new DnnAcousticModel.PdfInformation(phone, -1, 0),
+                new DnnAcousticModel.PdfInformation(phone, 0, 0),
+                new DnnAcousticModel.PdfInformation(phone, 1, 1)
+        };
+        model = new DnnAcousticModel(null, null, new float[]{1, 1}, pdfLookup);
+        lexicon = WordLexicon.fromTextFileWithIndex(wordsPath);
+        decoder = FstDecoder.builder(MappedGraph.loadFromDirectory(binRoot), model, lexicon)
+                .featureExtractor(input -> input)
+                .acousticScale(1)
+                .tracebackCompactionInterval(2)
+                .build();
+    }
+
+    static SpeechData scores(int pdf0FrameCount, int pdf1FrameCount) {
+        float[][] scores = new float[pdf0FrameCount + pdf1FrameCount][];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = i < pdf0FrameCount ? new float[]{0, -5} : new float[]{-5, 0};
+        }
+        return new SpeechData(SpeechSegment.unknown("test"), scores);
+    }
+
+    @Test
+    public void testDecode() {
+        FstDecoder.Result result = decoder.decode(scores(3, 3));
+        Assert.assertEquals(Arrays.asList("alpha"), result.words);
+        Assert.assertEquals(6, result.frameCount);
+
+        result = decoder.decode(scores(0, 6));
+        Assert.assertEquals(Arrays.asList("beta"), result.words);
+        Assert.assertEquals(-0.5f, result.score, 0.0001f);
+    }
+
+    @Test
+    public void testCompactGraph() throws IOException {
+        Path compactRoot = temporaryFolder.newFolder("fst-compact").toPath();
+        CompactGraph.convert(MappedGraph.loadFromDirectory(binRoot), compactRoot, CompactGraph.WeightEncoding.LINEAR16);
+        FstDecoder compactDecoder = FstDecoder.builder(CompactGraph.loadFromDirectory(compactRoot), model, lexicon)
+                .featureExtractor(input -> input)
+                .acousticScale(1)
+                .build();
+        Assert.assertEquals(Arrays.asList("alpha"), compactDecoder.decode(scores(3, 3)).words);
+        Assert.assertEquals(Arrays.asList("beta"), compactDecoder.decode(scores(0, 6)).words);
+    }
+
+    /**
+     * Returns NaN for pdfs that are not requested, so decoding fails if they are used.
+     */
+    static class TestLazyScorer implements LazyAcousticScorer {
+        final float[][] scores;
+        final float[] frameScores;
+        int frame;
+        long calculatedCount;
+
+        TestLazyScorer(SpeechData speechData) {
+            this.scores = speechData.getContentAsMatrix();
+            // there is an extra pdf that is not used in graph.
+            this.frameScores = new float[scores[0].length + 1];
+        }
+
+        @Override
+        public int frameCount() {
+            return scores.length;
+        }
+
+        @Override
+        public int pdfCount() {
+            return frameScores.length;
+        }
+
+        @Override
+        public float[] nextFrame(byte[] activePdfMask) {
+            for (int i = 0; i < frameScores.length; i++) {
+                if (activePdfMask[i] != 0) {
+                    frameScores[i] = scores[frame][i];
+                    calculatedCount++;
+                } else {
+                    frameScores[i] = Float.NaN;
+                }
+            }
+            frame++;
+            return frameScores;
+        }
+
+        @Override
+        public long calculatedCount() {
+            return calculatedCount;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    @Test
+    public void testLazyScoring() {
+        FstDecoder.Result result = decoder.decode(new TestLazyScorer(scores(3, 3)));
+        Assert.assertEquals(Arrays.asList("alpha"), result.words);
+        // the extra pdf is never calculated.
+        Assert.assertTrue(result.skippedOutputRatio > 0.33f);
+
+        result = decoder.decode(new TestLazyScorer(scores(0, 6)));
+        Assert.assertEquals(Arrays.asList("beta"), result.words);
+        Assert.assertEquals(-0.5f, result.score, 0.0001f);
+    }
+
+    static SpeechData subsample(SpeechData scores, int frameSkip) {
+        float[][] matrix = scores.getContentAsMatrix();
+        float[][] result = new float[(matrix.length + frameSkip - 1) / frameSkip][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matrix[i * frameSkip];
+        }
+        return new SpeechData(SpeechSegment.unknown("test"), result);
+    }
+
+    @Test
+    public void testFrameSkip() throws IOException {
+        FstDecoder.Result full = decoder.decode(scores(4, 4));
+        // calculated frames are repeated, so scores of all frames are same with full scores.
+        FstDecoder.Result result = decoder.decode(subsample(scores(4, 4), 2), 2, 8);
+        Assert.assertEquals(Arrays.asList("alpha"), result.words);
+        Assert.assertEquals(8, result.frameCount);
+        Assert.assertEquals(full.score, result.score, 0.0001f);
+
+        // last calculated frame covers a single frame.
+        result = decoder.decode(subsample(scores(0, 7), 3), 3, 7);
+        Assert.assertEquals(Arrays.asList("beta"), result.words);
+        Assert.assertEquals(7, result.frameCount);
+
+        FstDecoder interpolating = FstDecoder.builder(MappedGraph.loadFromDirectory(binRoot), model, lexicon)
+                .featureExtractor(input -> input)
+                .acousticScale(1)
+                .frameSkip(2)
+                .interpolateSkippedFrames(true)
+                .build();
+        // frame 3 is between a pdf 0 and a pdf 1 frame, it gets -2.5 for both pdfs instead of 0.
+        result = interpolating.decode(subsample(scores(3, 3), 2), 2, 6);
+        Assert.assertEquals(Arrays.asList("alpha"), result.words);
+        Assert.assertEquals(full.score - 2.5f, result.score, 0.0001f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrameSkipFrameCount() {
+        decoder.decode(subsample(scores(4, 4), 2), 2, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrameSkipWithLazyScoring() throws IOException {
+        FstDecoder.builder(MappedGraph.loadFromDirectory(binRoot), model, lexicon)
+                .lazyScoring(true)
+                .frameSkip(2)
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class FstTextCompilerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    static List<String> randomFst(Random random, int stateCount) {
+        List<String> lines = new ArrayList<>();
+        for (int state = 0; state < stateCount; state++) {
+            int arcCount = random.nextInt(8);
+            for (int i = 0; i < arcCount; i++) {
+                int target = random.nextInt(stateCount);
+                int transitionId = random.nextInt(1000);
+                int wordId = random.nextInt(3) == 0 ? random.nextInt(100) : 0;
+                if (random.nextBoolean()) {
+                    lines.add(String.format(Locale.ENGLISH, "%d\t%d\t%d\t%d\t%.5f",
+                            state, target, transitionId, wordId, random.nextFloat() * 10));
+                } else {
+                    lines.add(state + "\t" + target + "\t" + transitionId + "\t" + wordId);
+                }
+            }
+            if (arcCount == 0 || random.nextInt(10) == 0) {
+                lines.add(random.nextBoolean() ? state + "" : state + "\t" + random.nextFloat());
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testSameAsRawBinary() throws IOException {
+        Path fstPath = temporaryFolder.newFile("graph.fst.txt").toPath();
+        Files.write(fstPath, randomFst(new Random(1), 2000), StandardCharsets.UTF_8);
+
+        Path expected = temporaryFolder.newFolder("expected").toPath();
+        DecodingFst.convertRawBinary(fstPath, expected);
+
+        // small chunks so that there are many chunk boundaries.
+        for (int chunkSize : new int[]{1, 100, 1000, 1 << 20}) {
+            Path actual = temporaryFolder.newFolder("actual-" + chunkSize).toPath();
+            FstTextCompiler.compile(fstPath, actual, 4, chunkSize);
+            Assert.assertArrayEquals(
+                    Files.readAllBytes(expected.resolve("offsets.bin")),
+                    Files.readAllBytes(actual.resolve("offsets.bin")));
+            Assert.assertArrayEquals(
+                    Files.readAllBytes(expected.resolve("data.bin")),
+                    Files.readAllBytes(actual.resolve("data.bin")));
+        }
+    }
+
+    @Test
+    public void testMissingStates() throws IOException {
+        Path fstPath = temporaryFolder.newFile("graph.fst.txt").toPath();
+        // state 1 and 3 does not appear in the file. There is an empty line and no new line at the end.
+        Files.write(fstPath, "0\t2\t1\t0\n\n2\t4\t3\t5\t1.5\n2\t0\t0\t0\n4\t0.5".getBytes(StandardCharsets.UTF_8));
+        Path out = temporaryFolder.newFolder("out").toPath();
+        FstTextCompiler.compile(fstPath, out, 2, 8);
+
+        MappedGraph graph = MappedGraph.loadFromDirectory(out);
+        Assert.assertEquals(5, graph.stateCount());
+        Assert.assertEquals(4, graph.transitionCount());
+        int[] expectedCounts = {1, 0, 2, 0, 1};
+        for (int i = 0; i < expectedCounts.length; i++) {
+            Assert.assertEquals(expectedCounts[i], graph.transitionCount(i));
+        }
+        Assert.assertEquals(0.5f, graph.finalScore(4), 0.0001f);
+        MappedGraph.ArcCursor cursor = graph.newCursor();
+        cursor.reset(2);
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(4, cursor.targetState());
+        Assert.assertEquals(3, cursor.transitionId());
+        Assert.assertEquals(5, cursor.wordId());
+        Assert.assertEquals(1.5f, cursor.score(), 0.0001f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsorted() throws IOException {
+        Path fstPath = temporaryFolder.newFile("graph.fst.txt").toPath();
+        Files.write(fstPath, Arrays.asList("1\t0\t1\t0", "0\t1\t1\t0"), StandardCharsets.UTF_8);
+        FstTextCompiler.compile(fstPath, temporaryFolder.newFolder("out").toPath(), 2, 4);
+    }
+}
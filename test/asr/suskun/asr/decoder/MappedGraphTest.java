@@ -0,0 +1,82 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class MappedGraphTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    static final String[] FST_LINES = {
+            "0\t1\t2\t0",
+            "0\t2\t3\t5\t1.5",
+            "1\t2\t4\t0\t0.25",
+            "1",
+            "2\t0\t0\t7\t2",
+            "2\t3\t5\t0",
+            "2\t1\t6\t0\t0.5",
+            "3\t0.75"
+    };
+
+    Path createGraph() throws IOException {
+        Path fstPath = temporaryFolder.newFile("graph.fst.txt").toPath();
+        Files.write(fstPath, Arrays.asList(FST_LINES), StandardCharsets.UTF_8);
+        Path binRoot = temporaryFolder.newFolder("fst-bin").toPath();
+        DecodingFst.convertRawBinary(fstPath, binRoot);
+        return binRoot;
+    }
+
+    @Test
+    public void testArcs() throws IOException {
+        // map with 2 transitions per segment so that segment boundaries are crossed.
+        MappedGraph graph = MappedGraph.loadFromDirectory(createGraph(), 1);
+        Assert.assertEquals(4, graph.stateCount());
+        Assert.assertEquals(8, graph.transitionCount());
+
+        MappedGraph.ArcCursor cursor = graph.newCursor();
+        cursor.reset(0);
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(1, cursor.targetState());
+        Assert.assertEquals(2, cursor.transitionId());
+        Assert.assertEquals(0, cursor.wordId());
+        Assert.assertEquals(0, cursor.score(), 0.0001f);
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(2, cursor.targetState());
+        Assert.assertEquals(3, cursor.transitionId());
+        Assert.assertEquals(5, cursor.wordId());
+        Assert.assertEquals(1.5f, cursor.score(), 0.0001f);
+        Assert.assertFalse(cursor.next());
+
+        cursor.reset(2);
+        int count = 0;
+        while (cursor.next()) {
+            count++;
+        }
+        Assert.assertEquals(3, count);
+
+        // final weight transitions are not iterated.
+        cursor.reset(3);
+        Assert.assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testFinalStates() throws IOException {
+        MappedGraph graph = MappedGraph.loadFromDirectory(createGraph());
+        Assert.assertFalse(graph.isFinal(0));
+        Assert.assertTrue(graph.isFinal(1));
+        Assert.assertEquals(0, graph.finalScore(1), 0.0001f);
+        Assert.assertFalse(graph.isFinal(2));
+        Assert.assertEquals(0.75f, graph.finalScore(3), 0.0001f);
+        Assert.assertEquals(Float.POSITIVE_INFINITY, graph.finalScore(0), 0.0001f);
+        Assert.assertEquals(2, graph.transitionCount(1));
+    }
+}
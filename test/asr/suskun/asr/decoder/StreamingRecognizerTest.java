@@ -0,0 +1,67 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suskun.asr.acoustic.FeatureExtractors;
+import suskun.audio.SpeechData;
+import suskun.core.FloatData;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public class StreamingRecognizerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // pdf 0 is likely for the first 20 frames, pdf 1 for the rest. Frame indexes are feature ids.
+    static final UnaryOperator<SpeechData> SCORER = features -> {
+        List<FloatData> scores = new ArrayList<>();
+        for (FloatData feature : features.getContent()) {
+            scores.add(feature.copyFor(feature.id < 20 ? new float[]{0, -5} : new float[]{-5, 0}));
+        }
+        return new SpeechData(features.getSegment(), scores);
+    };
+
+    @Test
+    public void testStreaming() throws IOException {
+        FstDecoderTest decoderTest = new FstDecoderTest();
+        decoderTest.temporaryFolder = temporaryFolder;
+        decoderTest.setUp();
+        FstDecoder decoder = decoderTest.decoder;
+
+        SpeechData wav = SpeechData.fromWavfile(Paths.get("test/data/wav/16khz-16bit-mono.wav"));
+        float[] samples = wav.get(0).getCopyOfContent();
+        FstDecoder.Result expected = decoder.decode(SCORER.apply(
+                new FeatureExtractors.BatchWindowDeltaMfccExtractor(16000, 440).extract(wav)));
+        Assert.assertEquals(Arrays.asList("alpha"), expected.words);
+
+        StreamingRecognizer recognizer = new StreamingRecognizer(
+                decoder, new FeatureExtractors.LiveWindowDeltaMfccExtractor(16000, 440), SCORER);
+        // two streams with the same recognizer.
+        for (int k = 0; k < 2; k++) {
+            int chunkSize = 1600;
+            boolean partialFound = false;
+            for (int i = 0; i < samples.length; i += chunkSize) {
+                FstDecoder.Result partial = recognizer.accept(
+                        Arrays.copyOfRange(samples, i, Math.min(samples.length, i + chunkSize)));
+                // word is on the first arc of the graph, so it is available before the end of the stream.
+                if (partial.frameCount > 0 && partial.frameCount < expected.frameCount) {
+                    Assert.assertEquals(Arrays.asList("alpha"), partial.words);
+                    partialFound = true;
+                }
+            }
+            Assert.assertTrue(partialFound);
+            FstDecoder.Result result = recognizer.finish();
+            Assert.assertEquals(expected.words, result.words);
+            Assert.assertEquals(expected.frameCount, result.frameCount);
+            Assert.assertEquals(expected.score, result.score, 0.0001f);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenListTest {
+
+    @Test
+    public void testAddAndMerge() {
+        TokenList list = new TokenList(10, 4, 0);
+        Assert.assertEquals(0, list.add(10, 1, 100));
+        Assert.assertEquals(1, list.add(20, 2, 200));
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(1, list.getMin(), 0.0001f);
+        Assert.assertEquals(2, list.getMax(), 0.0001f);
+
+        // worse token for the same state is not added.
+        Assert.assertEquals(-1, list.add(20, 1.5f, 300));
+        Assert.assertEquals(200, list.backPointers[list.indexOf(20)]);
+
+        // better token replaces the old one.
+        Assert.assertEquals(1, list.add(20, 3, 400));
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(3, list.scores[1], 0.0001f);
+        Assert.assertEquals(400, list.backPointers[1]);
+
+        Assert.assertEquals(-1, list.indexOf(30));
+        Assert.assertTrue(list.canImprove(30, 1));
+        Assert.assertFalse(list.canImprove(10, 0.5f));
+        // out of beam.
+        Assert.assertFalse(list.canImprove(30, -20));
+        Assert.assertEquals(-1, list.add(30, -20, 0));
+    }
+
+    @Test
+    public void testExpandAndClear() {
+        TokenList list = new TokenList(1000, 4, 0);
+        for (int i = 0; i < 100; i++) {
+            list.add(i * 7, i, i);
+        }
+        Assert.assertEquals(100, list.size());
+        Assert.assertTrue(list.capacity() >= 200);
+        for (int i = 0; i < 100; i++) {
+            int index = list.indexOf(i * 7);
+            Assert.assertEquals(i, list.states[index] / 7);
+            Assert.assertEquals(i, list.scores[index], 0.0001f);
+        }
+        int capacity = list.capacity();
+        list.clear();
+        Assert.assertEquals(0, list.size());
+        Assert.assertEquals(capacity, list.capacity());
+        Assert.assertEquals(-1, list.indexOf(7));
+        Assert.assertEquals(Float.NEGATIVE_INFINITY, list.getMax(), 0.0001f);
+        Assert.assertEquals(0, list.add(7, 5, 0));
+    }
+
+    @Test
+    public void testThreshold() {
+        TokenList list = new TokenList(5, 16, 0);
+        for (int i = 0; i < 10; i++) {
+            list.add(i, i, 0);
+        }
+        // beam threshold.
+        Assert.assertEquals(4, list.threshold(100), 0.0001f);
+        // histogram threshold is the score of the 3rd best.
+        Assert.assertEquals(7, list.threshold(3), 0.0001f);
+    }
+}
@@ -0,0 +1,47 @@
+package suskun.asr.decoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TracebackArenaTest {
+
+    @Test
+    public void testCompact() {
+        TracebackArena arena = new TracebackArena(2);
+        int a = arena.add(1, 0, -1);
+        int b = arena.add(2, 1, a);   // dead
+        int c = arena.add(3, 2, a);
+        int d = arena.add(4, 3, -1);  // dead
+        int e = arena.add(5, 4, c);
+        Assert.assertEquals(5, arena.size());
+
+        int[] roots = {e, -1, c};
+        arena.compact(roots, roots.length);
+        Assert.assertEquals(3, arena.size());
+
+        // e -> c -> a
+        int r = roots[0];
+        Assert.assertEquals(5, arena.wordId(r));
+        Assert.assertEquals(4, arena.frame(r));
+        r = arena.parent(r);
+        Assert.assertEquals(roots[2], r);
+        Assert.assertEquals(3, arena.wordId(r));
+        r = arena.parent(r);
+        Assert.assertEquals(1, arena.wordId(r));
+        Assert.assertEquals(-1, arena.parent(r));
+        Assert.assertEquals(-1, roots[1]);
+
+        // new records are added after compacted ones.
+        Assert.assertEquals(3, arena.add(6, 5, roots[0]));
+    }
+
+    @Test
+    public void testCompactAll() {
+        TracebackArena arena = new TracebackArena();
+        for (int i = 0; i < 100; i++) {
+            arena.add(i, i, i - 1);
+        }
+        arena.compact(new int[0], 0);
+        Assert.assertEquals(0, arena.size());
+    }
+}
@@ -0,0 +1,84 @@
+package suskun.core.text;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class AsciiNumbersTest {
+
+    static ByteBuffer buffer(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static int parseInt(String s) {
+        return AsciiNumbers.parseInt(buffer(s), 0, s.length());
+    }
+
+    static float parseFloat(String s) {
+        return AsciiNumbers.parseFloat(buffer(s), 0, s.length());
+    }
+
+    @Test
+    public void testParseInt() {
+        Assert.assertEquals(0, parseInt("0"));
+        Assert.assertEquals(123, parseInt("123"));
+        Assert.assertEquals(-45, parseInt("-45"));
+        Assert.assertEquals(Integer.MAX_VALUE, parseInt("2147483647"));
+        Assert.assertEquals(Integer.MIN_VALUE, parseInt("-2147483648"));
+        ByteBuffer b = buffer("12\t345\t6");
+        Assert.assertEquals(345, AsciiNumbers.parseInt(b, 3, 6));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseIntOverflow() {
+        parseInt("2147483648");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseIntInvalid() {
+        parseInt("12a");
+    }
+
+    @Test
+    public void testParseFloat() {
+        String[] values = {"0", "-0", "1", "1.5", "-2.25", "0.000123", "3.4028235E38", "1.4E-45", "1e-5",
+                "6.02214076e+23", "12345678901234567890", ".5", "5.", "Infinity", "-Infinity", "+7.125"};
+        for (String value : values) {
+            Assert.assertEquals(value, Float.parseFloat(value), parseFloat(value), 0);
+        }
+    }
+
+    @Test
+    public void testParseFloatRandom() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            float f = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10));
+            String s = Float.toString(f);
+            Assert.assertEquals(s, f, parseFloat(s), 0);
+            s = String.format("%.6f", f);
+            Assert.assertEquals(s, Float.parseFloat(s), parseFloat(s), 0);
+        }
+    }
+
+    @Test
+    public void testParseFloatSameBits() {
+        Random random = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            double d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+            String[] values = {String.format("%.7f", d), String.format("%.9e", d), String.format("%.3e", d),
+                    Double.toString(d), Integer.toString(random.nextInt(1 << 25)) + "e-" + random.nextInt(12)};
+            for (String value : values) {
+                Assert.assertEquals(value,
+                        Float.floatToIntBits(Float.parseFloat(value)), Float.floatToIntBits(parseFloat(value)));
+            }
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseFloatInvalid() {
+        parseFloat("1.2.3");
+    }
+}
@@ -0,0 +1,54 @@
+package suskun.dsp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.core.FloatData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class EnergySpectrumTest {
+
+    @Test
+    public void testProcessAllSameAsProcess() {
+        Random random = new Random(1);
+        for (boolean applyLog : new boolean[]{false, true}) {
+            EnergySpectrum spectrum = new EnergySpectrum(new FastFourierTransform(512), applyLog);
+            // odd count, last frame is calculated alone.
+            List<FloatData> frames = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                frames.add(new FloatData(i, RealFastFourierTransformTest.randomFrame(random, 400, 400)));
+            }
+            List<FloatData> actual = spectrum.processAll(frames);
+            Assert.assertEquals(frames.size(), actual.size());
+            for (int i = 0; i < frames.size(); i++) {
+                float[] expected = spectrum.process(frames.get(i).copy()).getData();
+                Assert.assertEquals(i, actual.get(i).id);
+                Assert.assertEquals(400, frames.get(i).length());
+                float[] values = actual.get(i).getData();
+                Assert.assertEquals(expected.length, values.length);
+                for (int j = 0; j < expected.length; j++) {
+                    float tolerance = applyLog ? 1e-3f : Math.max(Math.abs(expected[j]) * 1e-4f, 1e-2f);
+                    Assert.assertEquals("Mismatch in frame " + i + " bin " + j, expected[j], values[j], tolerance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSilenceAndSine() {
+        EnergySpectrum spectrum = new EnergySpectrum(new FastFourierTransform(64));
+        float[] silence = new float[64];
+        float[] sine = new float[64];
+        for (int i = 0; i < sine.length; i++) {
+            sine[i] = (float) Math.sin(2 * Math.PI * 8 * i / 64);
+        }
+        float[][] result = spectrum.process(new float[][]{silence, sine});
+        for (int j = 0; j < result[0].length; j++) {
+            Assert.assertEquals(0, result[0][j], 1e-6f);
+            // all energy of the sine is in bin 8. (32 * 32)
+            Assert.assertEquals(j == 8 ? 1024 : 0, result[1][j], 1e-2f);
+        }
+    }
+}
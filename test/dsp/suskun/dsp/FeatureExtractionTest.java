@@ -93,4 +93,38 @@ public class FeatureExtractionTest {
         }
     }
 
+    @Test
+    public void testKaldiLogMelWithRealFft() throws IOException {
+        // same as testKaldiLogMel but spectrum is calculated with RealFastFourierTransform.
+        SpeechData kaldiLogMelFeats = SpeechData.loadFromKaldiTxt(
+                Paths.get("test/data/feature/kaldi-log-mel-40-16khz.feat.text")).get(0);
+
+        Path wavPath = Paths.get("test/data/wav/16khz-16bit-mono.wav");
+        FloatData allInput = new FloatData(new WavReader(wavPath, 0).loadAll());
+
+        FrameGenerator generator = FrameGenerator.forTime(16000, 25, 10);
+        List<FloatData> frames = generator.getFrames(allInput);
+        Assert.assertEquals(kaldiLogMelFeats.vectorCount(), frames.size());
+
+        Preprocessor preprocessor =
+                Preprocessor.builder(generator.frameSampleSize)
+                        .ditherMultiplier(0)
+                        .windowFunctionType(WindowFunction.Function.HAMMING)
+                        .build();
+
+        RealFastFourierTransform fft = new RealFastFourierTransform(preprocessor.paddedSize);
+        MelFilter filter = new MelFilter(16000, 256, 133, 6855, 40);
+        float[] padded = new float[preprocessor.paddedSize];
+        float[] power = new float[preprocessor.paddedSize / 2 + 1];
+        float[] logMel = new float[40];
+
+        for (int i = 0; i < frames.size(); i++) {
+            preprocessor.process(frames.get(i), padded);
+            fft.powerSpectrum(padded, power);
+            filter.apply(power, logMel);
+            FloatData kaldi = kaldiLogMelFeats.get(i);
+            Assert.assertArrayEquals("Mismatch in frame index " + i, kaldi.getData(), logMel, 0.001f);
+        }
+    }
+
 }
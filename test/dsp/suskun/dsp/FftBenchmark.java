@@ -0,0 +1,62 @@
+package suskun.dsp;
+
+import java.util.Random;
+
+/**
+ * Compares power spectrum calculation speed of FastFourierTransform with EnergySpectrum, batch EnergySpectrum that
+ * calculates two frames per transform and RealFastFourierTransform.
+ */
+public class FftBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int frameCount = 1000;
+        Random random = new Random(1);
+        float[][] frames = new float[frameCount][];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = RealFastFourierTransformTest.randomFrame(random, size, size * 25 / 32);
+        }
+        FastFourierTransform fft = new FastFourierTransform(size);
+        EnergySpectrum spectrum = new EnergySpectrum(fft);
+        RealFastFourierTransform realFft = new RealFastFourierTransform(size);
+        float[] data = new float[size];
+        float[] power = new float[size / 2 + 1];
+        int repeat = 200;
+
+        for (int k = 0; k < 5; k++) {
+            long start = System.nanoTime();
+            double check = 0;
+            for (int r = 0; r < repeat; r++) {
+                for (float[] frame : frames) {
+                    spectrum.energy(fft.realFft(frame), power);
+                    check += power[1];
+                }
+            }
+            report("FastFourierTransform", frameCount * repeat, System.nanoTime() - start, check);
+
+            start = System.nanoTime();
+            check = 0;
+            for (int r = 0; r < repeat; r++) {
+                for (float[] energy : spectrum.process(frames)) {
+                    check += energy[1];
+                }
+            }
+            report("EnergySpectrum batch", frameCount * repeat, System.nanoTime() - start, check);
+
+            start = System.nanoTime();
+            check = 0;
+            for (int r = 0; r < repeat; r++) {
+                for (float[] frame : frames) {
+                    System.arraycopy(frame, 0, data, 0, size);
+                    realFft.powerSpectrum(data, power);
+                    check += power[1];
+                }
+            }
+            report("RealFastFourierTransform", frameCount * repeat, System.nanoTime() - start, check);
+        }
+    }
+
+    private static void report(String name, long frameCount, long nanos, double check) {
+        System.out.println(String.format("%s : %.0f frames/sec (check = %.1f)", name, frameCount * 1e9 / nanos, check));
+    }
+}
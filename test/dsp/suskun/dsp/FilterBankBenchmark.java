@@ -0,0 +1,54 @@
+package suskun.dsp;
+
+import suskun.core.FloatData;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares per frame mel filter bank and cepstrum calculation with block calculation.
+ */
+public class FilterBankBenchmark {
+
+    public static void main(String[] args) {
+        int frameCount = 10000;
+        List<FloatData> spectra = MelFilterTest.randomSpectra(new Random(1), frameCount, 257);
+        float[] spectraBlock = new float[frameCount * 257];
+        for (int i = 0; i < frameCount; i++) {
+            System.arraycopy(spectra.get(i).getData(), 0, spectraBlock, i * 257, 257);
+        }
+        MelFilter filter = MelFilter.KALDI_DEFAULT_16KHZ;
+        MelCepstrum cepstrum = new MelCepstrum(13, 23, 22);
+        float[] melBlock = new float[frameCount * 23];
+        float[] cepstrumBlock = new float[frameCount * 13];
+        float[] mel = new float[23];
+        float[] mfcc = new float[13];
+        int repeat = 20;
+
+        for (int k = 0; k < 5; k++) {
+            long start = System.nanoTime();
+            double check = 0;
+            for (int r = 0; r < repeat; r++) {
+                for (int i = 0; i < frameCount; i++) {
+                    filter.apply(spectra.get(i).getData(), mel);
+                    cepstrum.apply(mel, mfcc);
+                    check += mfcc[1];
+                }
+            }
+            report("Per frame", frameCount * repeat, System.nanoTime() - start, check);
+
+            start = System.nanoTime();
+            check = 0;
+            for (int r = 0; r < repeat; r++) {
+                filter.applyBlock(spectraBlock, 257, frameCount, melBlock);
+                cepstrum.applyBlock(melBlock, frameCount, cepstrumBlock);
+                check += cepstrumBlock[1];
+            }
+            report("Block", frameCount * repeat, System.nanoTime() - start, check * frameCount);
+        }
+    }
+
+    private static void report(String name, long frameCount, long nanos, double check) {
+        System.out.println(String.format("%s : %.0f frames/sec (check = %.1f)", name, frameCount * 1e9 / nanos, check));
+    }
+}
@@ -0,0 +1,48 @@
+package suskun.dsp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.core.FloatData;
+
+import java.util.List;
+import java.util.Random;
+
+public class MelCepstrumTest {
+
+    @Test
+    public void testProcessAllSameAsProcess() {
+        Random random = new Random(1);
+        for (int liftering : new int[]{0, 22}) {
+            MelCepstrum cepstrum = new MelCepstrum(13, 23, liftering);
+            List<FloatData> melSpectra = MelFilterTest.randomSpectra(random, MelCepstrum.BLOCK_SIZE + 7, 23);
+            List<FloatData> actual = cepstrum.processAll(melSpectra);
+            Assert.assertEquals(melSpectra.size(), actual.size());
+            for (int i = 0; i < melSpectra.size(); i++) {
+                float[] expected = cepstrum.process(melSpectra.get(i)).getData();
+                Assert.assertEquals(i, actual.get(i).id);
+                // liftering is folded into the cosine matrix, so there can be small rounding differences.
+                Assert.assertArrayEquals(expected, actual.get(i).getData(), 0.01f);
+            }
+        }
+    }
+
+    @Test
+    public void testApplyBlockWithoutLiftering() {
+        // without liftering multiply-add order is the same, so results are identical.
+        MelCepstrum cepstrum = new MelCepstrum(13, 40, 0);
+        List<FloatData> melSpectra = MelFilterTest.randomSpectra(new Random(2), 3, 40);
+        float[] block = new float[3 * 40];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(melSpectra.get(i).getData(), 0, block, i * 40, 40);
+        }
+        float[] output = new float[3 * 13];
+        cepstrum.applyBlock(block, 3, output);
+        float[] expected = new float[13];
+        for (int i = 0; i < 3; i++) {
+            cepstrum.apply(melSpectra.get(i).getData(), expected);
+            for (int j = 0; j < 13; j++) {
+                Assert.assertEquals(expected[j], output[i * 13 + j], 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package suskun.dsp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.core.FloatData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MelFilterTest {
+
+    static List<FloatData> randomSpectra(Random random, int count, int size) {
+        List<FloatData> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] spectrum = new float[size];
+            for (int j = 0; j < size; j++) {
+                spectrum[j] = random.nextFloat() * 1000;
+            }
+            result.add(new FloatData(i, spectrum));
+        }
+        return result;
+    }
+
+    @Test
+    public void testProcessAllSameAsProcess() {
+        Random random = new Random(1);
+        MelFilter filter = MelFilter.KALDI_DEFAULT_16KHZ;
+        // more than one block and a partial block.
+        List<FloatData> spectra = randomSpectra(random, MelFilter.BLOCK_SIZE * 2 + 13, 257);
+        List<FloatData> actual = filter.processAll(spectra);
+        Assert.assertEquals(spectra.size(), actual.size());
+        for (int i = 0; i < spectra.size(); i++) {
+            Assert.assertEquals(i, actual.get(i).id);
+            Assert.assertArrayEquals(filter.process(spectra.get(i)).getData(), actual.get(i).getData(), 0);
+        }
+        Assert.assertTrue(filter.processAll(new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void testApplyBlockStride() {
+        Random random = new Random(2);
+        MelFilter filter = new MelFilter(16000, 256, 133, 6855, 40);
+        List<FloatData> spectra = randomSpectra(random, 5, 300);
+        float[] block = new float[5 * 300];
+        for (int i = 0; i < 5; i++) {
+            System.arraycopy(spectra.get(i).getData(), 0, block, i * 300, 300);
+        }
+        float[] output = new float[5 * 40];
+        filter.applyBlock(block, 300, 5, output);
+        float[] expected = new float[40];
+        for (int i = 0; i < 5; i++) {
+            filter.apply(spectra.get(i).getData(), expected);
+            for (int j = 0; j < 40; j++) {
+                Assert.assertEquals(expected[j], output[i * 40 + j], 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package suskun.dsp;
+
+import com.sun.management.ThreadMXBean;
+import suskun.audio.wav.WavReader;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+
+/**
+ * Compares frames per second and allocated bytes per frame of the processor chain and MfccFrontEnd.
+ * Audio is fed in 20ms chunks.
+ */
+public class MfccFrontEndBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        float[] samples = new WavReader(
+                Paths.get(args.length > 0 ? args[0] : "test/data/wav/16khz-16bit-mono.wav"), 0).loadAll();
+        int chunkSize = 320;
+        int repeat = 200;
+        ThreadMXBean bean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int k = 0; k < 3; k++) {
+            long allocated = bean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long frameCount = 0;
+            for (int r = 0; r < repeat; r++) {
+                frameCount += MfccFrontEndTest.expectedMfcc(samples).length;
+            }
+            report("Processor chain", frameCount, System.nanoTime() - start,
+                    bean.getThreadAllocatedBytes(threadId) - allocated);
+
+            MfccFrontEnd frontEnd = MfccFrontEnd.builder(16000).build();
+            float[] mfcc = new float[frontEnd.getCepstrumSize()];
+            allocated = bean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            frameCount = 0;
+            for (int r = 0; r < repeat; r++) {
+                for (int i = 0; i < samples.length; i += chunkSize) {
+                    frontEnd.accept(samples, i, Math.min(chunkSize, samples.length - i));
+                    while (frontEnd.nextFrame(mfcc)) {
+                        frameCount++;
+                    }
+                }
+                frontEnd.reset();
+            }
+            report("MfccFrontEnd", frameCount, System.nanoTime() - start,
+                    bean.getThreadAllocatedBytes(threadId) - allocated);
+        }
+    }
+
+    private static void report(String name, long frameCount, long nanos, long allocatedBytes) {
+        System.out.println(String.format("%s : %d frames, %.0f frames/sec, %.1f bytes/frame",
+                name, frameCount, frameCount * 1e9 / nanos, allocatedBytes / (double) frameCount));
+    }
+}
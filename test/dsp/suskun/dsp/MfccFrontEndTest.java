@@ -0,0 +1,86 @@
+package suskun.dsp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.audio.wav.WavReader;
+import suskun.core.FloatData;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+public class MfccFrontEndTest {
+
+    static float[] loadSamples() throws IOException {
+        return new WavReader(Paths.get("test/data/wav/16khz-16bit-mono.wav"), 0).loadAll();
+    }
+
+    static float[][] expectedMfcc(float[] samples) {
+        FrameGenerator generator = FrameGenerator.forTime(16000, 25, 10);
+        List<FloatData> frames = generator.getFrames(new FloatData(samples.clone()));
+        Preprocessor preprocessor = Preprocessor.builder(generator.frameSampleSize)
+                .ditherMultiplier(0)
+                .windowFunctionType(WindowFunction.Function.POVEY)
+                .build();
+        EnergySpectrum spectrogram = new EnergySpectrum(new FastFourierTransform(preprocessor.paddedSize), false);
+        MelFilter filter = new MelFilter(16000, 256, 20, 8000, 23);
+        MelCepstrum cepstrum = new MelCepstrum(13, 23, 22);
+        float[][] result = new float[frames.size()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cepstrum.process(filter.process(
+                    spectrogram.process(preprocessor.process(frames.get(i)).data))).getData();
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameAsProcessorChain() throws IOException {
+        float[] samples = loadSamples();
+        float[][] expected = expectedMfcc(samples);
+
+        MfccFrontEnd frontEnd = MfccFrontEnd.builder(16000).build();
+        Assert.assertEquals(13, frontEnd.getCepstrumSize());
+        Random random = new Random(1);
+        // run twice to check reset.
+        for (int k = 0; k < 2; k++) {
+            float[] mfcc = new float[frontEnd.getCepstrumSize()];
+            int frameIndex = 0;
+            int offset = 0;
+            while (offset < samples.length) {
+                int length = Math.min(samples.length - offset, 1 + random.nextInt(1000));
+                frontEnd.accept(samples, offset, length);
+                offset += length;
+                int available = frontEnd.availableFrameCount();
+                while (frontEnd.nextFrame(mfcc)) {
+                    Assert.assertArrayEquals("Mismatch in frame " + frameIndex, expected[frameIndex], mfcc, 0);
+                    frameIndex++;
+                    available--;
+                }
+                Assert.assertEquals(0, available);
+                Assert.assertEquals(frameIndex, frontEnd.getFrameCounter());
+            }
+            Assert.assertEquals(expected.length, frameIndex);
+            frontEnd.reset();
+        }
+    }
+
+    @Test
+    public void testNextFrames() throws IOException {
+        float[] samples = loadSamples();
+        float[][] expected = expectedMfcc(samples);
+
+        MfccFrontEnd frontEnd = MfccFrontEnd.builder(16000).build();
+        // input larger than internal buffer.
+        frontEnd.accept(samples);
+        // output row count limits the calculated frames.
+        float[][] first = new float[5][13];
+        Assert.assertEquals(5, frontEnd.nextFrames(first, 0));
+        float[][] actual = new float[expected.length + 2][13];
+        Assert.assertEquals(expected.length - 5, frontEnd.nextFrames(actual, 5));
+        System.arraycopy(first, 0, actual, 0, 5);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertArrayEquals(expected[i], actual[i], 0);
+        }
+    }
+}
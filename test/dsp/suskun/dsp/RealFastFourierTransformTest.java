@@ -0,0 +1,75 @@
+package suskun.dsp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.core.FloatData;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RealFastFourierTransformTest {
+
+    static float[] randomFrame(Random random, int size, int length) {
+        float[] result = new float[size];
+        for (int i = 0; i < length; i++) {
+            result[i] = (float) random.nextGaussian() * 1000;
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameAsFastFourierTransform() {
+        Random random = new Random(1);
+        for (int size = 4; size <= 2048; size *= 2) {
+            FastFourierTransform fft = new FastFourierTransform(size);
+            RealFastFourierTransform realFft = new RealFastFourierTransform(size);
+            for (int k = 0; k < 10; k++) {
+                float[] data = randomFrame(random, size, size - random.nextInt(size / 2));
+                float[] expected = fft.realFft(data);
+                realFft.transform(data);
+                float max = 0;
+                for (float v : expected) {
+                    max = Math.max(max, Math.abs(v));
+                }
+                Assert.assertArrayEquals("Mismatch for size " + size, expected, data, max * 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void testPowerSpectrum() {
+        Random random = new Random(2);
+        for (int size = 4; size <= 1024; size *= 2) {
+            EnergySpectrum spectrum = new EnergySpectrum(new FastFourierTransform(size));
+            RealFastFourierTransform realFft = new RealFastFourierTransform(size);
+            float[] power = new float[size / 2 + 1];
+            for (int k = 0; k < 10; k++) {
+                float[] data = randomFrame(random, size, size);
+                float[] expected = spectrum.process(new FloatData(data.clone())).getData();
+                realFft.powerSpectrum(data, power);
+                float max = 0;
+                for (float v : expected) {
+                    max = Math.max(max, v);
+                }
+                Assert.assertArrayEquals("Mismatch for size " + size, expected, power, max * 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void testImpulse() {
+        RealFastFourierTransform realFft = new RealFastFourierTransform(16);
+        float[] data = new float[16];
+        data[0] = 1;
+        float[] power = new float[9];
+        realFft.powerSpectrum(data, power);
+        float[] expected = new float[9];
+        Arrays.fill(expected, 1);
+        Assert.assertArrayEquals(expected, power, 1e-6f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeMismatch() {
+        new RealFastFourierTransform(16).transform(new float[12]);
+    }
+}
@@ -0,0 +1,119 @@
+package suskun.dsp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.core.FloatData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class StreamingFrameGeneratorTest {
+
+    @Test
+    public void testChunks() {
+        StreamingFrameGenerator generator = StreamingFrameGenerator.forTime(10, 500, 200);
+        Assert.assertEquals(5, generator.frameSampleSize);
+        Assert.assertEquals(2, generator.shiftSampleSize);
+
+        generator.accept(new float[]{1, 2, 3, 4, 5, 6, 7, 8});
+        Assert.assertEquals(2, generator.availableFrameCount());
+        List<FloatData> frames = generator.getFrames();
+        Assert.assertEquals(2, frames.size());
+        Assert.assertArrayEquals(new float[]{1, 2, 3, 4, 5}, frames.get(0).getData(), 0);
+        Assert.assertArrayEquals(new float[]{3, 4, 5, 6, 7}, frames.get(1).getData(), 0);
+        Assert.assertEquals(1, frames.get(1).id);
+
+        generator.accept(new float[]{9, 10, 11});
+        float[] frame = new float[5];
+        Assert.assertTrue(generator.nextFrame(frame));
+        Assert.assertArrayEquals(new float[]{5, 6, 7, 8, 9}, frame, 0);
+        Assert.assertTrue(generator.nextFrame(frame));
+        Assert.assertArrayEquals(new float[]{7, 8, 9, 10, 11}, frame, 0);
+        Assert.assertFalse(generator.nextFrame(frame));
+        Assert.assertEquals(4, generator.getFrameCounter());
+    }
+
+    @Test
+    public void testSameAsFrameGenerator() {
+        Random random = new Random(1);
+        float[] samples = new float[16000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextFloat();
+        }
+        List<FloatData> expected = FrameGenerator.forTime(16000, 25, 10).getFrames(new FloatData(samples.clone()));
+
+        StreamingFrameGenerator generator = StreamingFrameGenerator.forTime(16000, 25, 10);
+        List<FloatData> actual = new ArrayList<>();
+        int offset = 0;
+        while (offset < samples.length) {
+            // chunks are sometimes larger than the initial buffer.
+            int length = Math.min(samples.length - offset, 1 + random.nextInt(random.nextInt(10) == 0 ? 5000 : 300));
+            generator.accept(samples, offset, length);
+            offset += length;
+            int available = generator.availableFrameCount();
+            int count = generator.nextFrames((index, data, start) -> {
+                float[] frame = new float[generator.frameSampleSize];
+                System.arraycopy(data, start, frame, 0, frame.length);
+                actual.add(new FloatData(index, frame));
+            });
+            Assert.assertEquals(available, count);
+            Assert.assertEquals(actual.size(), generator.getFrameCounter());
+        }
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(i, actual.get(i).id);
+            Assert.assertArrayEquals(expected.get(i).getData(), actual.get(i).getData(), 0);
+        }
+    }
+
+    @Test
+    public void testPcmChunks() {
+        Random random = new Random(2);
+        short[] values = new short[1000];
+        byte[] bytes = new byte[values.length * 2];
+        float[] samples = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (short) random.nextInt();
+            bytes[2 * i] = (byte) values[i];
+            bytes[2 * i + 1] = (byte) (values[i] >> 8);
+            samples[i] = values[i];
+        }
+        StreamingFrameGenerator floatGenerator = StreamingFrameGenerator.forTime(1000, 30, 10);
+        floatGenerator.accept(samples);
+        List<FloatData> expected = floatGenerator.getFrames();
+
+        StreamingFrameGenerator generator = StreamingFrameGenerator.forTime(1000, 30, 10);
+        List<FloatData> actual = new ArrayList<>();
+        int offset = 0;
+        while (offset < bytes.length) {
+            // odd lengths split samples between chunks.
+            int length = Math.min(bytes.length - offset, 1 + random.nextInt(41));
+            generator.acceptPcm16(bytes, offset, length);
+            offset += length;
+            actual.addAll(generator.getFrames());
+        }
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i).getData(), actual.get(i).getData(), 0);
+        }
+    }
+
+    @Test
+    public void testShiftLargerThanFrame() {
+        StreamingFrameGenerator generator = StreamingFrameGenerator.forTime(10, 200, 300);
+        generator.accept(new float[]{1, 2, 3, 4});
+        List<FloatData> frames = generator.getFrames();
+        Assert.assertEquals(1, frames.size());
+        generator.accept(new float[]{5, 6, 7, 8, 9});
+        frames = generator.getFrames();
+        Assert.assertEquals(2, frames.size());
+        Assert.assertArrayEquals(new float[]{4, 5}, frames.get(0).getData(), 0);
+        Assert.assertArrayEquals(new float[]{7, 8}, frames.get(1).getData(), 0);
+
+        generator.reset();
+        Assert.assertEquals(0, generator.getFrameCounter());
+        generator.accept(new float[]{1, 2});
+        Assert.assertArrayEquals(new float[]{1, 2}, generator.getFrames().get(0).getData(), 0);
+    }
+}
@@ -8,6 +8,8 @@ import suskun.core.FloatData;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class WindowFeaturesTest {
@@ -102,5 +104,24 @@ public class WindowFeaturesTest {
         }
     }
 
+    @Test
+    public void testLiveMode() {
+        float[][] f = {{1, 2}, {3, 4}, {5, 6}, {7, 8}, {9, 10}};
+        List<FloatData> data = FloatData.fromArrays(f);
+        List<FloatData> expected = WindowFeatures.builder(2, 1).build().get(data);
 
+        WindowFeatures features = WindowFeatures.builder(2, 1).setLiveMode(true).build();
+        List<FloatData> result = new ArrayList<>();
+        for (FloatData d : data) {
+            result.addAll(features.get(Collections.singletonList(d)));
+        }
+        // last frame requires a future frame.
+        Assert.assertEquals(data.size() - 1, result.size());
+        result.addAll(features.flush());
+        Assert.assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i).getData(), result.get(i).getData(), 0.0001f);
+        }
+        Assert.assertTrue(features.flush().isEmpty());
+    }
 }
@@ -0,0 +1,50 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ActivationsTest {
+
+    @Test
+    public void testSigmoidTable() {
+        for (float x = -20; x <= 20; x += 0.0013f) {
+            double expected = 1 / (1 + Math.exp(-x));
+            Assert.assertEquals(expected, Activations.sigmoid(x), 1e-6);
+        }
+    }
+
+    @Test
+    public void testExpTable() {
+        for (float x = 0; x >= -40; x -= 0.0017f) {
+            double expected = Math.exp(x);
+            Assert.assertEquals(expected, Activations.expNegative(x), expected * 2e-6 + 1e-13);
+        }
+    }
+
+    @Test
+    public void testLogSoftMax() {
+        Random random = new Random(1);
+        float[] logits = FeedForwardNetworkTest.randomArray(random, 50);
+        float[] priors = FeedForwardNetworkTest.randomArray(random, 50);
+        float[] posteriors = logits.clone();
+        FeedForwardNetwork.softMax(posteriors);
+
+        float[] actual = logits.clone();
+        Activations.logSoftMax(actual, 0, actual.length, priors);
+        float[] expected = posteriors.clone();
+        Activations.toLogLikelihoods(expected, priors);
+        Assert.assertArrayEquals(expected, actual, 1e-5f);
+
+        // with an offset and no priors.
+        float[] values = new float[60];
+        System.arraycopy(logits, 0, values, 5, 50);
+        Activations.logSoftMax(values, 5, 50, null);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(Math.log(posteriors[i]), values[i + 5], 1e-5);
+        }
+        Assert.assertEquals(0, values[0], 0);
+        Assert.assertEquals(0, values[55], 0);
+    }
+}
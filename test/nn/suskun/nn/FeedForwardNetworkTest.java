@@ -0,0 +1,144 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Test;
+import suskun.core.FloatData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FeedForwardNetworkTest {
+
+    @Test
+    public void testGemm() {
+        Random random = new Random(1);
+        int[][] sizes = {{1, 1, 1}, {4, 4, 4}, {7, 70, 300}, {13, 5, 3}, {8, 130, 520}};
+        for (int[] size : sizes) {
+            int rows = size[0];
+            int columns = size[1];
+            int k = size[2];
+            float[] x = randomArray(random, rows * k);
+            float[] w = randomArray(random, columns * k);
+            float[] bias = randomArray(random, columns);
+            float[] out = new float[rows * columns];
+            BlockedGemm.multiplyTransposed(x, rows, w, columns, k, bias, out);
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    double expected = bias[c];
+                    for (int i = 0; i < k; i++) {
+                        expected += x[r * k + i] * w[c * k + i];
+                    }
+                    Assert.assertEquals(expected, out[r * columns + c], 0.001);
+                }
+            }
+        }
+    }
+
+    static float[] randomArray(Random random, int size) {
+        float[] result = new float[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (float) random.nextGaussian();
+        }
+        return result;
+    }
+
+    @Test
+    public void testBatchCalculator() {
+        Random random = new Random(2);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 43, 70, 66, 29);
+        float[][] input = JavaQuantizedDnnTest.randomInput(random, 23, 43);
+
+        List<FloatData> floatInput = new ArrayList<>();
+        for (float[] vector : input) {
+            floatInput.add(new FloatData(vector.clone()));
+        }
+        List<FloatData> expected = network.calculate(floatInput);
+
+        for (int batchSize : new int[]{1, 5, 8, 100}) {
+            FeedForwardNetwork.BatchCalculator calculator = network.batchCalculator(batchSize);
+            float[][] actual = calculator.calculate(input);
+            for (int i = 0; i < input.length; i++) {
+                Assert.assertArrayEquals(expected.get(i).getData(), actual[i], 0.0001f);
+            }
+        }
+
+        // row major input with an offset.
+        FeedForwardNetwork.BatchCalculator calculator = network.batchCalculator(4);
+        float[] matrix = new float[input.length * 43];
+        for (int i = 0; i < input.length; i++) {
+            System.arraycopy(input[i], 0, matrix, i * 43, 43);
+        }
+        float[] output = calculator.calculate(matrix, 10, 3);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 29; j++) {
+                Assert.assertEquals(expected.get(10 + i).getData()[j], output[i * 29 + j], 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void testLogLikelihoods() {
+        Random random = new Random(3);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 20, 30, 17);
+        float[] priors = randomArray(random, 17);
+        float[][] input = JavaQuantizedDnnTest.randomInput(random, 6, 20);
+        float[] matrix = new float[6 * 20];
+        for (int i = 0; i < input.length; i++) {
+            System.arraycopy(input[i], 0, matrix, i * 20, 20);
+        }
+        FeedForwardNetwork.BatchCalculator calculator = network.batchCalculator(6);
+        float[] posteriors = calculator.calculate(matrix, 0, 6).clone();
+        float[] actual = calculator.calculateLogLikelihoods(matrix, 0, 6, priors);
+        for (int i = 0; i < 6 * 17; i++) {
+            Assert.assertEquals(Math.log(posteriors[i]) - priors[i % 17], actual[i], 1e-4);
+        }
+    }
+
+    @Test
+    public void testSparseOutput() {
+        Random random = new Random(4);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 20, 30, 25, 40);
+        float[][] input = JavaQuantizedDnnTest.randomInput(random, 5, 20);
+        float[] matrix = new float[5 * 20];
+        for (int i = 0; i < input.length; i++) {
+            System.arraycopy(input[i], 0, matrix, i * 20, 20);
+        }
+        FeedForwardNetwork.BatchCalculator calculator = network.batchCalculator(8);
+        float[] logSoftMax = calculator.calculateLogLikelihoods(matrix, 0, 5, null).clone();
+
+        calculator.calculateHidden(matrix, 0, 5);
+        int[] nodes = {39, 0, 17, 3};
+        byte[] mask = new byte[40];
+        for (int node : nodes) {
+            mask[node] = 1;
+        }
+        float[] selected = new float[nodes.length];
+        float[] masked = new float[40];
+        for (int v = 0; v < 5; v++) {
+            float logSum = calculator.logSumExp(v);
+            calculator.outputLogits(v, nodes, nodes.length, selected);
+            for (int i = 0; i < nodes.length; i++) {
+                Assert.assertEquals(logSoftMax[v * 40 + nodes[i]], selected[i] - logSum, 1e-4);
+            }
+            calculator.outputLogits(v, mask, masked);
+            for (int node : nodes) {
+                Assert.assertEquals(logSoftMax[v * 40 + node], masked[node] - logSum, 1e-4);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSparseOutputWithoutHidden() {
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(new Random(5), 4, 6, 3);
+        FeedForwardNetwork.BatchCalculator calculator = network.batchCalculator(2);
+        calculator.calculate(new float[8], 0, 2);
+        calculator.outputLogits(0, new int[]{1}, 1, new float[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchTooLarge() {
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(new Random(3), 4, 8, 2);
+        network.batchCalculator(2).calculate(new float[12], 0, 3);
+    }
+}
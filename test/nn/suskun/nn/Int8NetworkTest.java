@@ -0,0 +1,77 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Int8NetworkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testQuantization() {
+        Random random = new Random(1);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 40, 64, 64, 30);
+        Int8Network quantized = Int8Network.quantize(network);
+        Assert.assertEquals(40, quantized.inputDimension());
+        Assert.assertEquals(30, quantized.outputDimension());
+        Assert.assertEquals(40 * 64 + 64 * 64 + 64 * 30, quantized.weightByteCount());
+
+        List<Int8Network.LayerReport> reports = quantized.weightErrors(network);
+        Assert.assertEquals(3, reports.size());
+        for (int l = 0; l < reports.size(); l++) {
+            Int8Network.LayerReport report = reports.get(l);
+            // error of a weight is at most half of its row quantization step.
+            float maxStep = 0;
+            for (float scale : quantized.layers[l].rowScales) {
+                maxStep = Math.max(maxStep, 1 / scale);
+            }
+            Assert.assertTrue(report.maxWeightError <= maxStep / 2 + 1e-6f);
+            Assert.assertTrue(report.meanWeightError <= report.maxWeightError);
+            Assert.assertTrue(report.relativeWeightError > 0 && report.relativeWeightError < 0.02f);
+        }
+
+        float[][] input = JavaQuantizedDnnTest.randomInput(random, 20, 40);
+        float[][] expected = network.batchCalculator(8).calculate(input);
+        float[][] actual = quantized.calculate(input, 3);
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertArrayEquals(expected[i], actual[i], 0.02f);
+        }
+        Assert.assertTrue(quantized.meanOutputError(network, input) < 0.02f);
+    }
+
+    @Test
+    public void testRowScales() {
+        // second row has much smaller weights, it still uses all levels.
+        float[][] weights = {{10f, -4f}, {0.01f, -0.02f}};
+        Int8Network.Layer layer = Int8Network.Layer.quantize(new FeedForwardNetwork.Layer(weights, new float[2]));
+        Assert.assertEquals(127, layer.weights[0]);
+        Assert.assertEquals(-51, layer.weights[1]);
+        Assert.assertEquals(64, layer.weights[2]);
+        Assert.assertEquals(-127, layer.weights[3]);
+        Assert.assertEquals(0.01f, layer.weight(1, 0), 0.0001f);
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        Random random = new Random(2);
+        Int8Network quantized = Int8Network.quantize(JavaQuantizedDnnTest.randomNetwork(random, 20, 32, 10));
+        File file = temporaryFolder.newFile();
+        quantized.save(file);
+        Int8Network loaded = Int8Network.load(file);
+        float[][] input = JavaQuantizedDnnTest.randomInput(random, 5, 20);
+        float[][] expected = quantized.calculate(input);
+        float[][] actual = loaded.calculate(input);
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertArrayEquals(expected[i], actual[i], 0);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suskun.core.FloatData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class JavaQuantizedDnnTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    static FeedForwardNetwork randomNetwork(Random random, int... dimensions) {
+        List<FeedForwardNetwork.Layer> layers = new ArrayList<>();
+        for (int l = 0; l < dimensions.length - 1; l++) {
+            float[][] weights = new float[dimensions[l + 1]][dimensions[l]];
+            float[] bias = new float[dimensions[l + 1]];
+            for (float[] nodeWeights : weights) {
+                for (int j = 0; j < nodeWeights.length; j++) {
+                    nodeWeights[j] = (float) random.nextGaussian() * 0.3f;
+                }
+            }
+            for (int j = 0; j < bias.length; j++) {
+                bias[j] = (float) random.nextGaussian() * 0.1f;
+            }
+            layers.add(new FeedForwardNetwork.Layer(weights, bias));
+        }
+        float[] shift = new float[dimensions[0]];
+        float[] scale = new float[dimensions[0]];
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = (float) random.nextGaussian() * 0.1f;
+            scale[i] = 1 + random.nextFloat();
+        }
+        return new FeedForwardNetwork(layers, shift, scale);
+    }
+
+    static float[][] randomInput(Random random, int count, int dimension) {
+        float[][] input = new float[count][dimension];
+        for (float[] vector : input) {
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        return input;
+    }
+
+    QuantizedDnn createDnn(FeedForwardNetwork network) throws IOException {
+        File file = temporaryFolder.newFile();
+        network.saveBinary(file);
+        return QuantizedDnn.loadFromFile(file, 3f, QuantizedDnn.Backend.JAVA);
+    }
+
+    @Test
+    public void testSameAsFloatNetwork() throws IOException {
+        Random random = new Random(1);
+        FeedForwardNetwork network = randomNetwork(random, 40, 64, 64, 30);
+        QuantizedDnn dnn = createDnn(network);
+        Assert.assertEquals(QuantizedDnn.Backend.JAVA, dnn.getBackend());
+        Assert.assertEquals(40, dnn.inputDimension());
+        Assert.assertEquals(30, dnn.outputDimension());
+        Assert.assertEquals("40-2x64-30", dnn.topology());
+
+        float[][] input = randomInput(random, 21, 40);
+        float[][] actual = dnn.calculate(input, 8);
+
+        List<FloatData> floatInput = new ArrayList<>();
+        for (float[] vector : input) {
+            floatInput.add(new FloatData(vector.clone()));
+        }
+        List<FloatData> expected = network.calculate(floatInput);
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertArrayEquals(expected.get(i).getData(), actual[i], 0.01f);
+        }
+
+        // batch size does not change the result.
+        float[][] single = dnn.calculate(input, 1);
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertArrayEquals(single[i], actual[i], 0);
+        }
+    }
+
+    @Test
+    public void testLazyContext() throws IOException {
+        Random random = new Random(2);
+        QuantizedDnn dnn = createDnn(randomNetwork(random, 20, 32, 16));
+        float[][] input = randomInput(random, 5, 20);
+        float[][] full = dnn.calculate(input);
+
+        QuantizedDnn.LazyContext context = dnn.getNewLazyContext(input.length, 2);
+        context.calculateUntilOutput(input);
+        byte[] mask = new byte[16];
+        mask[1] = 1;
+        mask[4] = 1;
+        mask[15] = 1;
+        for (float[] expected : full) {
+            float[] result = context.calculateForOutputNodes(mask);
+            Assert.assertEquals(3, result.length);
+            // soft-max is normalized over active nodes.
+            float sum = expected[1] + expected[4] + expected[15];
+            Assert.assertArrayEquals(
+                    new float[]{expected[1] / sum, expected[4] / sum, expected[15] / sum}, result, 0.0001f);
+        }
+
+        // same activations are written to the beginning of a caller buffer.
+        context.calculateUntilOutput(input);
+        QuantizedDnn.LazyContext other = dnn.getNewLazyContext(input.length, 2);
+        other.calculateUntilOutput(input);
+        float[] buffer = new float[16];
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertEquals(3, other.calculateForOutputNodes(mask, buffer));
+            Assert.assertArrayEquals(context.calculateForOutputNodes(mask), Arrays.copyOf(buffer, 3), 0);
+        }
+        other.delete();
+        context.delete();
+    }
+
+    @Test
+    public void testLogLikelihoods() throws IOException {
+        Random random = new Random(4);
+        QuantizedDnn dnn = createDnn(randomNetwork(random, 20, 32, 16));
+        float[][] input = randomInput(random, 7, 20);
+        float[] priors = FeedForwardNetworkTest.randomArray(random, 16);
+        float[][] posteriors = dnn.calculate(input);
+        float[][] actual = dnn.calculateLogLikelihoods(input, priors);
+        for (int i = 0; i < input.length; i++) {
+            for (int j = 0; j < 16; j++) {
+                Assert.assertEquals(Math.log(posteriors[i][j]) - priors[j], actual[i][j], 1e-4);
+            }
+        }
+
+        // contexts give the same result.
+        QuantizedDnn.LazyContext context = dnn.getNewLazyContext(input.length);
+        float[][] fromContext = context.calculateLogLikelihoods(input, priors);
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertArrayEquals(actual[i], fromContext[i], 0);
+        }
+        context.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongInputSize() throws IOException {
+        QuantizedDnn dnn = createDnn(randomNetwork(new Random(3), 20, 32, 16));
+        dnn.calculate(new float[][]{new float[21]});
+    }
+
+    @Test
+    public void testWeightCutOff() {
+        float[][] weights = {{0.5f, -10f}, {1f, 2f}};
+        FeedForwardNetwork.Layer layer = new FeedForwardNetwork.Layer(weights, new float[2]);
+        JavaQuantizedDnn.QuantizedLayer quantized = new JavaQuantizedDnn.QuantizedLayer(layer, 2f);
+        Assert.assertEquals(Arrays.toString(new byte[]{32, -127, 64, 127}), Arrays.toString(quantized.weights));
+    }
+}
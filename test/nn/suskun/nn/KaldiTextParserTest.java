@@ -0,0 +1,113 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class KaldiTextParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    static String toKaldiText(FeedForwardNetwork network) {
+        StringBuilder sb = new StringBuilder("<Nnet>\n");
+        for (int l = 0; l < network.layerCount(); l++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(l);
+            sb.append("<AffineTransform> ").append(layer.outputDimension).append(' ')
+                    .append(layer.inputDimension).append('\n');
+            sb.append("<LearnRateCoef> 1 <BiasLearnRateCoef> 1 <MaxNorm> 0  [\n");
+            for (int i = 0; i < layer.outputDimension; i++) {
+                sb.append(' ');
+                for (float w : layer.weights[i]) {
+                    sb.append(' ').append(w);
+                }
+                sb.append(i == layer.outputDimension - 1 ? " ]\n" : "\n");
+            }
+            sb.append(" [");
+            for (float b : layer.bias) {
+                sb.append(' ').append(b);
+            }
+            sb.append(" ]\n");
+            sb.append(l == network.layerCount() - 1 ? "<Softmax> " : "<Sigmoid> ")
+                    .append(layer.outputDimension).append(' ').append(layer.outputDimension).append('\n');
+        }
+        return sb.append("</Nnet>\n").toString();
+    }
+
+    static String vector(float[] values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (float value : values) {
+            sb.append(' ').append(value);
+        }
+        return sb.append(" ]").toString();
+    }
+
+    @Test
+    public void testNetwork() throws IOException {
+        Random random = new Random(1);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 13, 20, 20, 20, 7);
+        Path networkFile = temporaryFolder.newFile("nnet.txt").toPath();
+        Files.write(networkFile, toKaldiText(network).getBytes(StandardCharsets.US_ASCII));
+        Path transformFile = temporaryFolder.newFile("transform.txt").toPath();
+        List<String> transformLines = Arrays.asList(
+                "<Nnet>",
+                "<Splice> 13 13",
+                "[ 0 ]",
+                "<AddShift> 13 13",
+                "<LearnRateCoef> 0 " + vector(network.getShiftVector()),
+                "<Rescale> 13 13",
+                "<LearnRateCoef> 0 " + vector(network.getScaleVector()),
+                "</Nnet>");
+        Files.write(transformFile, transformLines, StandardCharsets.US_ASCII);
+
+        for (int threadCount : new int[]{1, 3}) {
+            FeedForwardNetwork loaded = FeedForwardNetwork.loadFromTextFile(networkFile, transformFile, threadCount);
+            Assert.assertEquals(network.layerCount(), loaded.layerCount());
+            for (int l = 0; l < network.layerCount(); l++) {
+                FeedForwardNetwork.Layer expected = network.getLayer(l);
+                FeedForwardNetwork.Layer actual = loaded.getLayer(l);
+                for (int i = 0; i < expected.outputDimension; i++) {
+                    Assert.assertArrayEquals(expected.weights[i], actual.weights[i], 0);
+                }
+                Assert.assertArrayEquals(expected.bias, actual.bias, 0);
+            }
+            Assert.assertArrayEquals(network.getShiftVector(), loaded.getShiftVector(), 0);
+            Assert.assertArrayEquals(network.getScaleVector(), loaded.getScaleVector(), 0);
+        }
+    }
+
+    @Test
+    public void testTokenizer() {
+        byte[] bytes = "<Tag> 12\t[1.5,\n-2e-3]]".getBytes(StandardCharsets.US_ASCII);
+        KaldiTextParser.Tokenizer tokenizer =
+                new KaldiTextParser.Tokenizer(java.nio.ByteBuffer.wrap(bytes), 0, bytes.length);
+        String[] expected = {"<Tag>", "12", "[", "1.5,", "-2e-3", "]", "]"};
+        for (String token : expected) {
+            Assert.assertTrue(tokenizer.next());
+            Assert.assertEquals(token, new String(bytes, tokenizer.tokenStart,
+                    tokenizer.tokenEnd - tokenizer.tokenStart, StandardCharsets.US_ASCII));
+        }
+        Assert.assertFalse(tokenizer.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingWeights() throws IOException {
+        Path networkFile = temporaryFolder.newFile("nnet.txt").toPath();
+        Files.write(networkFile, Arrays.asList(
+                "<AffineTransform> 2 2",
+                "<LearnRateCoef> 1 [",
+                " 1 2",
+                " 3 ]",
+                " [ 1 2 ]"), StandardCharsets.US_ASCII);
+        KaldiTextParser.parseLayers(networkFile, 1);
+    }
+}
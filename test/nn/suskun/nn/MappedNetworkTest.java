@@ -0,0 +1,97 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class MappedNetworkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        Random random = new Random(1);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 13, 33, 17, 9);
+        Path path = temporaryFolder.getRoot().toPath().resolve("nnet.mapped");
+        MappedNetwork.save(network, path);
+        MappedNetwork mapped = MappedNetwork.load(path);
+
+        Assert.assertEquals(ByteOrder.nativeOrder(), mapped.byteOrder());
+        Assert.assertEquals(3, mapped.layerCount());
+        for (int l = 0; l < network.layerCount(); l++) {
+            FeedForwardNetwork.Layer layer = network.getLayer(l);
+            Assert.assertEquals(layer.inputDimension, mapped.inputDimension(l));
+            Assert.assertEquals(layer.outputDimension, mapped.outputDimension(l));
+            Assert.assertArrayEquals(layer.flatWeights(), toArray(mapped.weights(l)), 0);
+            Assert.assertArrayEquals(layer.bias, toArray(mapped.bias(l)), 0);
+        }
+        Assert.assertArrayEquals(network.getShiftVector(), toArray(mapped.shiftVector()), 0);
+        Assert.assertArrayEquals(network.getScaleVector(), toArray(mapped.scaleVector()), 0);
+
+        float[][] input = JavaQuantizedDnnTest.randomInput(random, 7, 13);
+        float[][] expected = network.batchCalculator(4).calculate(input);
+        float[][] actual = mapped.calculate(input);
+        for (int i = 0; i < input.length; i++) {
+            Assert.assertArrayEquals(expected[i], actual[i], 1e-5f);
+        }
+    }
+
+    @Test
+    public void testAlignmentAndReadOnly() throws IOException {
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(new Random(2), 5, 7, 3);
+        Path path = temporaryFolder.getRoot().toPath().resolve("nnet.mapped");
+        MappedNetwork.save(network, path);
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.nativeOrder());
+        // offsets of 2 layers with weights and bias, shift and scale vectors.
+        int k = MappedNetwork.HEADER_INT_COUNT * 4;
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(0, bytes.getLong(k + 8) % MappedNetwork.ALIGNMENT);
+            Assert.assertEquals(0, bytes.getLong(k + 16) % MappedNetwork.ALIGNMENT);
+            k += 24;
+        }
+        Assert.assertEquals(0, bytes.getLong(k) % MappedNetwork.ALIGNMENT);
+        Assert.assertEquals(0, bytes.getLong(k + 8) % MappedNetwork.ALIGNMENT);
+
+        MappedNetwork mapped = MappedNetwork.load(path);
+        try {
+            mapped.weights(0).put(0, 1f);
+            Assert.fail();
+        } catch (ReadOnlyBufferException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testVersionCheck() throws IOException {
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(new Random(3), 5, 7, 3);
+        Path path = temporaryFolder.getRoot().toPath().resolve("nnet.mapped");
+        MappedNetwork.save(network, path);
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder()).putInt(4, MappedNetwork.VERSION + 1);
+        Files.write(path, bytes);
+        try {
+            MappedNetwork.load(path);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    private static float[] toArray(FloatBuffer buffer) {
+        float[] result = new float[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+package suskun.nn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class NetworkCompressorTest {
+
+    @Test
+    public void testPruneConstantNodes() {
+        Random random = new Random(1);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 10, 32, 32, 8);
+        // half of the nodes of first hidden layer do not depend on input, so removing them changes nothing.
+        FeedForwardNetwork.Layer first = network.getLayer(0);
+        for (int i = 0; i < 32; i += 2) {
+            first.weights[i] = new float[10];
+            first.bias[i] = (float) random.nextGaussian();
+        }
+        float[][] samples = JavaQuantizedDnnTest.randomInput(random, 50, 10);
+        NetworkCompressor compressor = new NetworkCompressor(network, samples);
+        FeedForwardNetwork pruned = compressor.pruneNodes(0.5f, 8);
+
+        Assert.assertEquals(16, pruned.getLayer(0).outputDimension);
+        Assert.assertEquals(16, pruned.getLayer(1).inputDimension);
+        Assert.assertEquals(16, pruned.getLayer(1).outputDimension);
+        Assert.assertEquals(8, pruned.getLayer(2).outputDimension);
+        // remaining nodes of first layer are the input dependent ones.
+        for (int i = 0; i < 16; i++) {
+            Assert.assertArrayEquals(first.weights[i * 2 + 1], pruned.getLayer(0).weights[i], 0);
+        }
+
+        // keeping all nodes does not change the network.
+        FeedForwardNetwork unchanged = compressor.pruneNodes(1f, 8);
+        NetworkCompressor.Report report = compressor.report(unchanged);
+        Assert.assertEquals(0, report.meanKlDivergence, 1e-6);
+        Assert.assertEquals(0, report.flopReduction(), 0);
+
+        report = compressor.report(pruned);
+        Assert.assertEquals(10 * 32 + 32 * 32 + 32 * 8, report.originalMultiplyAdds);
+        Assert.assertEquals(10 * 16 + 16 * 16 + 16 * 8, report.compressedMultiplyAdds);
+        Assert.assertTrue(report.flopReduction() > 0.5);
+        Assert.assertTrue(report.meanKlDivergence >= 0);
+    }
+
+    @Test
+    public void testPrunedConstantNodesOnly() {
+        Random random = new Random(2);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 10, 16, 8);
+        FeedForwardNetwork.Layer first = network.getLayer(0);
+        for (int i = 8; i < 16; i++) {
+            first.weights[i] = new float[10];
+        }
+        float[][] samples = JavaQuantizedDnnTest.randomInput(random, 30, 10);
+        NetworkCompressor compressor = new NetworkCompressor(network, samples);
+        // mean contribution of removed constant nodes is moved to output layer bias.
+        FeedForwardNetwork pruned = compressor.pruneNodes(0.5f, 4);
+        Assert.assertEquals(8, pruned.getLayer(0).outputDimension);
+        float[][] expected = network.batchCalculator(8).calculate(samples);
+        float[][] actual = pruned.batchCalculator(8).calculate(samples);
+        for (int i = 0; i < samples.length; i++) {
+            Assert.assertArrayEquals(expected[i], actual[i], 1e-5f);
+        }
+    }
+
+    @Test
+    public void testAlignment() {
+        Random random = new Random(3);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 10, 48, 8);
+        NetworkCompressor compressor = new NetworkCompressor(network, JavaQuantizedDnnTest.randomInput(random, 20, 10));
+        // 0.3 * 48 = 14.4, rounded up to 16.
+        Assert.assertEquals(16, compressor.pruneNodes(0.3f, 16).getLayer(0).outputDimension);
+    }
+
+    @Test
+    public void testFactorize() {
+        Random random = new Random(4);
+        FeedForwardNetwork network = JavaQuantizedDnnTest.randomNetwork(random, 40, 40, 40, 8);
+        // make second layer weights rank 4.
+        FeedForwardNetwork.Layer layer = network.getLayer(1);
+        float[][] a = new float[40][4];
+        float[][] b = new float[4][40];
+        for (int i = 0; i < 40; i++) {
+            for (int r = 0; r < 4; r++) {
+                a[i][r] = (float) random.nextGaussian();
+                b[r][i] = (float) random.nextGaussian();
+            }
+        }
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                float sum = 0;
+                for (int r = 0; r < 4; r++) {
+                    sum += a[i][r] * b[r][j];
+                }
+                layer.weights[i][j] = sum * 0.1f;
+            }
+        }
+        NetworkCompressor compressor = new NetworkCompressor(network, JavaQuantizedDnnTest.randomInput(random, 30, 40));
+        NetworkCompressor.LowRankLayer[] factorized = compressor.factorize(0.1f, 2, random);
+        Assert.assertNull(factorized[2]);
+        Assert.assertEquals(4, factorized[1].rank);
+        Assert.assertEquals(0, factorized[1].relativeError, 1e-4);
+        // first layer has full rank, its approximation has error.
+        Assert.assertTrue(factorized[0].relativeError > 0.1);
+
+        NetworkCompressor.Report report = compressor.report(factorized);
+        Assert.assertEquals(40 * 40 * 2 + 40 * 8, report.originalMultiplyAdds);
+        Assert.assertEquals(4 * 80 * 2 + 40 * 8, report.compressedMultiplyAdds);
+        Assert.assertTrue(report.topOutputAgreement > 0);
+    }
+}